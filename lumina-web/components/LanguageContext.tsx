@@ -312,7 +312,9 @@ const translations = {
         random: '随机 (Random)',
         failover: '故障转移 (Failover)',
         weighted: '加权 (Weighted)',
-        sapr: '自适应 (SAPR)'
+        sapr: '自适应 (SAPR)',
+        latency: '延迟优先 (Latency)',
+        p2c: '最少在途 (P2C)'
       }
     },
     pricing: {
@@ -854,7 +856,9 @@ const translations = {
         random: 'Random',
         failover: 'Failover',
         weighted: 'Weighted',
-        sapr: 'SAPR'
+        sapr: 'SAPR',
+        latency: 'Latency-aware',
+        p2c: 'Least Outstanding (P2C)'
       }
     },
     pricing: {
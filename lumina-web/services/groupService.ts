@@ -30,6 +30,8 @@ const MODE_MAP_TO_FRONTEND: Record<number, LoadBalanceMode> = {
   3: LoadBalanceMode.WEIGHTED,
   4: LoadBalanceMode.FAILOVER,
   5: LoadBalanceMode.SAPR,
+  6: LoadBalanceMode.LATENCY,
+  7: LoadBalanceMode.P2C,
 };
 
 const MODE_MAP_TO_BACKEND: Record<string, number> = {
@@ -38,6 +40,8 @@ const MODE_MAP_TO_BACKEND: Record<string, number> = {
   [LoadBalanceMode.WEIGHTED]: 3,
   [LoadBalanceMode.FAILOVER]: 4,
   [LoadBalanceMode.SAPR]: 5,
+  [LoadBalanceMode.LATENCY]: 6,
+  [LoadBalanceMode.P2C]: 7,
 };
 
 export interface GroupPageResponse {
@@ -5,6 +5,8 @@ export enum LoadBalanceMode {
   FAILOVER = 'Failover',
   WEIGHTED = 'Weighted',
   SAPR = 'SAPR',
+  LATENCY = 'Latency',
+  P2C = 'P2C',
 }
 
 export enum ProviderType {
@@ -99,6 +99,26 @@ public class CircuitBreakerConfig {
      */
     private int maxConcurrentRequestsPerProvider = 50;
 
+    /**
+     * 是否启用自适应并发上限，启用后 maxConcurrentRequestsPerProvider 仅作为天花板
+     */
+    private boolean adaptiveConcurrencyEnabled = false;
+
+    /**
+     * 自适应并发上限的下限
+     */
+    private int adaptiveConcurrencyMinLimit = 2;
+
+    /**
+     * 允许的 RTT 膨胀倍数，近期 RTT 超过长期基线的该倍数时收缩上限
+     */
+    private double adaptiveConcurrencyRttTolerance = 2.0;
+
+    /**
+     * 上游限流（429）或超时时上限的收缩比例
+     */
+    private double adaptiveConcurrencyBackoffRatio = 0.9;
+
     // ========== 滑动窗口配置 ==========
 
     /**
@@ -45,6 +45,27 @@ public class CircuitBreakerConfigResolver {
             String providerId,
             OverrideCircuitBreakerConfig providerOverride,
             int requestHash
+    ) {
+        boolean applyGroup = groupOverride != null && groupOverride.isEffectivelyEnabled()
+                && groupOverride.shouldApplyGrayscale(requestHash);
+        boolean applyProvider = providerOverride != null && providerOverride.isEffectivelyEnabled()
+                && providerOverride.shouldApplyGrayscale(requestHash);
+        return resolve(groupId, groupOverride, applyGroup, providerId, providerOverride, applyProvider);
+    }
+
+    /**
+     * 解析生效配置（灰度命中结果已确定）
+     * 供路由表在编译期预先生成各灰度组合下的配置
+     * @param applyGroup 是否应用 Group 级别覆盖
+     * @param applyProvider 是否应用 Provider 级别覆盖
+     */
+    public EffectiveCircuitBreakerConfig resolve(
+            String groupId,
+            OverrideCircuitBreakerConfig groupOverride,
+            boolean applyGroup,
+            String providerId,
+            OverrideCircuitBreakerConfig providerOverride,
+            boolean applyProvider
     ) {
         // 从全局配置开始
         EffectiveCircuitBreakerConfig.EffectiveCircuitBreakerConfigBuilder builder =
@@ -71,16 +92,14 @@ public class CircuitBreakerConfigResolver {
         String sourceLevel = "global";
 
         // 应用 Group 级别覆盖
-        if (groupOverride != null && groupOverride.isEffectivelyEnabled()
-                && groupOverride.shouldApplyGrayscale(requestHash)) {
+        if (applyGroup && groupOverride != null) {
             applyOverride(builder, groupOverride);
             sourceLevel = "group";
             log.debug("应用 Group 级别配置覆盖: groupId={}", groupId);
         }
 
         // 应用 Provider 级别覆盖（优先级更高）
-        if (providerOverride != null && providerOverride.isEffectivelyEnabled()
-                && providerOverride.shouldApplyGrayscale(requestHash)) {
+        if (applyProvider && providerOverride != null) {
             applyOverride(builder, providerOverride);
             sourceLevel = "provider";
             log.debug("应用 Provider 级别配置覆盖: providerId={}", providerId);
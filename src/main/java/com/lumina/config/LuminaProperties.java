@@ -59,6 +59,11 @@ public class LuminaProperties {
      */
     private Failover failover = new Failover();
 
+    /**
+     * 响应缓存配置
+     */
+    private ResponseCache responseCache = new ResponseCache();
+
     @Data
     public static class Proxy {
         private String url;
@@ -83,6 +88,9 @@ public class LuminaProperties {
     public static class RateLimit {
         private boolean enabled = false;
         private int requestsPerMinute = 1000;
+        private int tokensPerMinute = 0; // 每个 API Key 默认 TPM 上限，0 表示不限制
+        private double leaseRatio = 0.05; // 每次从 Redis 租借的令牌数占每分钟上限的比例
+        private long leaseTtlMs = 5000; // 本地租约有效期，过期未用完的令牌作废
     }
 
     @Data
@@ -108,6 +116,13 @@ public class LuminaProperties {
         private int groupConfigTtlSeconds = 60;
         private int apiKeyTtlSeconds = 60;
         private int modelPriceTtlSeconds = 300;
+        private int groupConfigMaxEntries = 1000;
+        private int apiKeyMaxEntries = 10000; // 有效与无效 Key 共用，无效 Key 按访问频率淘汰
+        private int modelPriceMaxEntries = 2000;
+        private double refreshAheadRatio = 0.8; // 条目存活超过 TTL 的该比例后，命中时在后台预刷新
+        private boolean apiKeyFilterEnabled = true; // 鉴权前用有效 Key 的 Bloom 过滤器拒绝一定无效的 Key
+        private int apiKeyFilterRebuildSeconds = 600; // 过滤器定时兜底重建间隔
+        private boolean warmUpEnabled = true; // 启动时与整体失效后批量预热分组配置、API Key 与模型价格
     }
 
     @Data
@@ -120,6 +135,21 @@ public class LuminaProperties {
         private int maxIdleTimeSeconds = 60;
         private int maxLifeTimeSeconds = 300;
         private int maxInMemorySizeMb = 100;
+        private Coalescing coalescing = new Coalescing();
+    }
+
+    @Data
+    public static class Coalescing {
+        private boolean enabled = false; // 合并并发的相同非流式请求，共享一次上游调用
+        private boolean deterministicOnly = true; // 仅合并 temperature 为 0 的请求
+    }
+
+    @Data
+    public static class ResponseCache {
+        private int maxEntries = 10000; // 内存层最大条目数
+        private int maxEntryBytes = 262_144; // 单条响应上限（字符），超出不缓存
+        private boolean deterministicOnly = true; // 仅缓存 temperature 为 0 的请求
+        private boolean redisEnabled = false; // 启用 Redis 共享层
     }
 
     @Data
@@ -128,6 +158,7 @@ public class LuminaProperties {
         private int batchSize = 100;
         private int flushIntervalMs = 500;
         private double successPayloadSampleRate = 1.0;
+        private int responseCaptureMaxChars = 1_048_576; // 流式响应内存捕获上限（字符），超出部分截断
     }
 
     @Data
@@ -135,5 +166,45 @@ public class LuminaProperties {
         private int topK = 3;
         private double softmaxT = 10.0;
         private double halfOpenWeightFactor = 0.5;
+        private int expectedOutputTokens = 512; // 延迟感知选路假定的输出长度，请求声明的 max_tokens 更小时取后者
+        private long latencyMinSamples = 10; // 延迟画像样本不足时，延迟感知选路退化为总耗时 EMA
+        private long rateLimitCooldownMs = 1000; // 上游 429 未携带 Retry-After 等提示时的冷却时间
+        private long rateLimitMaxCooldownMs = 60_000; // 按上游响应头冷却的上限
+        private Hedge hedge = new Hedge();
+        private BulkheadQueue bulkheadQueue = new BulkheadQueue();
+        private RetryBudget retryBudget = new RetryBudget();
+        private PrefixAffinity prefixAffinity = new PrefixAffinity();
+    }
+
+    @Data
+    public static class PrefixAffinity {
+        private boolean enabled = false; // SAPR 选路按提示词前缀优先选择同一 Provider，提高上游提示词缓存命中
+        private int prefixChars = 8192; // 参与亲和哈希的前缀长度（字符）
+        private int minPrefixChars = 4096; // 前缀短于该长度时上游不缓存，不做亲和
+        private double scoreTolerance = 10.0; // 亲和 Provider 的选路分数落后最优者超过该值时放弃亲和
+        private int virtualNodes = 32; // 一致性哈希环上每个 Provider 的虚拟节点数
+    }
+
+    @Data
+    public static class RetryBudget {
+        private boolean enabled = true;
+        private double ratio = 0.2; // Failover 重试次数占首次请求数的比例上限，分组与全局分别计算
+        private int groupMaxTokens = 20; // 每个分组的重试预算最大积累量，允许低流量时少量突发重试
+        private int globalMaxTokens = 100; // 全局重试预算最大积累量
+    }
+
+    @Data
+    public static class BulkheadQueue {
+        private long maxWaitMs = 0; // 舱壁已满时排队等待许可的最长时间，0 表示不排队、立即 Failover
+        private int maxDepth = 50; // 每个 Provider 的排队上限
+    }
+
+    @Data
+    public static class Hedge {
+        private double delayPercentile = 0.95; // 主请求超过其近期该分位延迟仍未返回时发起对冲
+        private long minDelayMs = 200; // 对冲等待下限
+        private long minSamples = 20; // Provider 延迟样本不足时不对冲
+        private double budgetRatio = 0.1; // 对冲请求数占正常请求数的比例上限
+        private int budgetMaxTokens = 10; // 对冲预算最大积累量
     }
 }
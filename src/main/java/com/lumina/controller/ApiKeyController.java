@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.lumina.dto.ApiKeyQuotaUpdateRequest;
+import com.lumina.dto.ApiKeyRateLimitUpdateRequest;
 import com.lumina.dto.ApiKeyUsageDto;
 import com.lumina.dto.ApiResponse;
 import com.lumina.entity.ApiKey;
@@ -134,6 +135,16 @@ public class ApiKeyController {
         return ApiResponse.success(apiKey);
     }
 
+    @PutMapping("/{id}/rate-limit")
+    public ApiResponse<ApiKey> updateApiKeyRateLimit(
+            @PathVariable Long id,
+            @RequestBody(required = false) ApiKeyRateLimitUpdateRequest request) {
+        ApiKey apiKey = apiKeyService.updateRateLimit(id,
+                request != null ? request.getRateLimitRpm() : null,
+                request != null ? request.getRateLimitTpm() : null);
+        return ApiResponse.success(apiKey);
+    }
+
     @GetMapping("/usage")
     public ApiResponse<List<ApiKeyUsageDto>> getApiKeyUsageList() {
         List<ApiKeyUsageDto> usageList = apiKeyMapper.selectApiKeyUsageList();
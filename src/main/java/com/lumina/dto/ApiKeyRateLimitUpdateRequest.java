@@ -0,0 +1,9 @@
+package com.lumina.dto;
+
+import lombok.Data;
+
+@Data
+public class ApiKeyRateLimitUpdateRequest {
+    private Integer rateLimitRpm;
+    private Integer rateLimitTpm;
+}
@@ -16,6 +16,26 @@ public class ModelGroupConfig {
 
     private Integer firstTokenTimeout;
 
+    /**
+     * 分组每分钟 Token 数上限，null 表示不限制
+     */
+    private Integer tpmLimit;
+
+    /**
+     * 是否启用对冲请求：主请求超过其近期延迟分位仍未返回时，向次优 Provider 发起备份请求
+     */
+    private Boolean hedgeEnabled;
+
+    /**
+     * 是否启用流式续传：传输中途失败时携带已下发内容向下一个 Provider 续写
+     */
+    private Boolean streamResumeEnabled;
+
+    /**
+     * 响应缓存有效期（秒），为空或 0 表示不缓存
+     */
+    private Integer responseCacheTtlSeconds;
+
     private List<ModelGroupConfigItem> items;
 
     /**
@@ -1,7 +1,13 @@
 package com.lumina.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.lumina.config.OverrideCircuitBreakerConfig;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 import java.util.List;
 
@@ -27,4 +33,24 @@ public class ModelGroupConfigItem {
      * 优先级高于 Group 级别配置
      */
     private OverrideCircuitBreakerConfig circuitBreakerConfig;
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient volatile ProviderKey providerKey;
+
+    /**
+     * Provider 身份标识，首次访问时计算并缓存（配置项加载后不再修改）
+     */
+    @JsonIgnore
+    public ProviderKey getProviderKey() {
+        ProviderKey key = providerKey;
+        if (key == null) {
+            key = ProviderKey.of(this);
+            providerKey = key;
+        }
+        return key;
+    }
 }
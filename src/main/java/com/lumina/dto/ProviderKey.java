@@ -0,0 +1,25 @@
+package com.lumina.dto;
+
+import com.lumina.converter.ProtocolType;
+
+/**
+ * Provider 身份标识
+ *
+ * 在 ModelGroupConfigItem 加载后首次使用时计算一次并缓存在该对象上，
+ * 运行态注册表、熔断指标、运行态持久化与 WebClient 缓存都以它为键，热路径上不再拼接字符串。
+ *
+ * @param id        运行态 ID（baseUrl_apiKeyHash_modelName），与 provider_runtime_stats.provider_id 保持一致
+ * @param clientKey WebClient 缓存键（baseUrl|apiKey|protocolType）
+ */
+public record ProviderKey(String id, String clientKey) {
+
+    public static ProviderKey of(ModelGroupConfigItem item) {
+        String id = item.getBaseUrl()
+                + "_" + (item.getApiKey() != null ? item.getApiKey().hashCode() : "null")
+                + "_" + item.getModelName();
+        String clientKey = item.getBaseUrl()
+                + "|" + item.getApiKey()
+                + "|" + ProtocolType.fromCode(item.getProviderType()).getCode();
+        return new ProviderKey(id.intern(), clientKey);
+    }
+}
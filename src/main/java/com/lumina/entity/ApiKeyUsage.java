@@ -0,0 +1,18 @@
+package com.lumina.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@TableName("api_key_usage")
+public class ApiKeyUsage {
+    @TableId(type = IdType.INPUT)
+    private String apiKey;
+    private BigDecimal totalCost;
+    private LocalDateTime updatedAt;
+}
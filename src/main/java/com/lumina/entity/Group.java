@@ -14,6 +14,10 @@ public class Group {
     private Integer balanceMode;
     private String matchRegex;
     private Integer firstTokenTimeout;
+    private Integer tpmLimit;
+    private Boolean hedgeEnabled;
+    private Boolean streamResumeEnabled;
+    private Integer responseCacheTtlSeconds;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
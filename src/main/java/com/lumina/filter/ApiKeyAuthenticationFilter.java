@@ -1,5 +1,6 @@
 package com.lumina.filter;
 
+import com.lumina.service.ApiKeyBloomFilter;
 import com.lumina.service.ApiKeyService;
 import com.lumina.service.SystemFlagService;
 import lombok.extern.slf4j.Slf4j;
@@ -27,6 +28,9 @@ public class ApiKeyAuthenticationFilter implements WebFilter {
     @Autowired
     private SystemFlagService systemFlagService;
 
+    @Autowired
+    private ApiKeyBloomFilter apiKeyBloomFilter;
+
     private static final String BEARER_PREFIX = "Bearer ";
 
     // 常见的 API Key 请求头名称列表（按优先级顺序）
@@ -66,6 +70,12 @@ public class ApiKeyAuthenticationFilter implements WebFilter {
             return unauthorized(exchange, "Missing API key");
         }
 
+        // 一定无效的 Key 直接拒绝，不查询缓存与数据库；扫描流量量大，只记 debug 日志
+        if (!apiKeyBloomFilter.mightBeValid(apiKey)) {
+            log.debug("Rejected unknown API key for path: {}", path);
+            return writeError(exchange, HttpStatus.UNAUTHORIZED, "invalid_request_error", "Invalid API key");
+        }
+
         return apiKeyService.validateApiKey(apiKey)
                 .onErrorResume(e -> {
                     log.error("Error validating API key for path: {}", path, e);
@@ -1,10 +1,13 @@
 package com.lumina.filter;
 
 import com.lumina.config.LuminaProperties;
+import com.lumina.entity.ApiKey;
+import com.lumina.ratelimit.LeasedRateLimiter;
+import com.lumina.ratelimit.RateLimitDecision;
+import com.lumina.service.HotPathCacheService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
-import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
@@ -14,8 +17,6 @@ import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
-import java.time.Instant;
 
 @Slf4j
 @Component
@@ -26,14 +27,13 @@ public class RateLimitFilter implements WebFilter {
     private LuminaProperties luminaProperties;
 
     @Autowired
-    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    private LeasedRateLimiter leasedRateLimiter;
+
+    @Autowired
+    private HotPathCacheService hotPathCacheService;
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
-        if (!luminaProperties.getRateLimit().isEnabled()) {
-            return chain.filter(exchange);
-        }
-
         String path = exchange.getRequest().getPath().value();
         if (!path.startsWith("/v1/") && !path.startsWith("/v1beta/")) {
             return chain.filter(exchange);
@@ -44,36 +44,39 @@ public class RateLimitFilter implements WebFilter {
             return chain.filter(exchange);
         }
 
-        int limit = luminaProperties.getRateLimit().getRequestsPerMinute();
+        int limit = resolveLimit(apiKey);
         if (limit <= 0) {
             return chain.filter(exchange);
         }
 
-        long currentMinute = Instant.now().getEpochSecond() / 60;
-        String redisKey = "rate_limit:" + apiKey + ":" + currentMinute;
-
-        return reactiveStringRedisTemplate.opsForValue().increment(redisKey)
-                .flatMap(count -> {
-                    if (count == 1) {
-                        return reactiveStringRedisTemplate.expire(redisKey, Duration.ofSeconds(60))
-                                .thenReturn(count);
-                    }
-                    return Mono.just(count);
-                })
-                .flatMap(count -> {
-                    if (count > limit) {
-                        log.warn("Rate limit exceeded for API key. Limit: {}, Count: {}", limit, count);
-                        return tooManyRequests(exchange);
-                    }
-                    return chain.filter(exchange);
-                })
+        return leasedRateLimiter.tryAcquire("rpm:" + apiKey, limit, 1)
                 .onErrorResume(e -> {
                     log.error("Error during rate limiting check", e);
                     // Fallback to allow request if Redis fails
+                    return Mono.just(RateLimitDecision.failOpen(limit));
+                })
+                .flatMap(decision -> {
+                    decision.applyHeaders(exchange.getResponse().getHeaders(), "requests");
+                    if (!decision.allowed()) {
+                        log.warn("Rate limit exceeded for API key. Limit: {}, Retry after: {}ms", limit, decision.retryAfterMs());
+                        return tooManyRequests(exchange);
+                    }
                     return chain.filter(exchange);
                 });
     }
 
+    /**
+     * Key 单独配置的上限优先（ApiKeyAuthenticationFilter 已将其加载进缓存），否则使用全局默认值
+     */
+    private int resolveLimit(String apiKey) {
+        ApiKey key = hotPathCacheService.getCachedApiKeyQuota(apiKey);
+        if (key != null && key.getRateLimitRpm() != null) {
+            return key.getRateLimitRpm();
+        }
+        LuminaProperties.RateLimit config = luminaProperties.getRateLimit();
+        return config.isEnabled() ? config.getRequestsPerMinute() : 0;
+    }
+
     private Mono<Void> tooManyRequests(ServerWebExchange exchange) {
         exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
         exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
@@ -3,6 +3,7 @@ package com.lumina.logging;
 import com.lumina.config.LuminaProperties;
 import com.lumina.entity.RequestLog;
 import com.lumina.service.RequestLogService;
+import com.lumina.stats.ApiKeySpendLedger;
 import com.lumina.stats.StatsAccumulator;
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
@@ -13,8 +14,10 @@ import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Executors;
@@ -30,6 +33,7 @@ public class LogWriter {
     private final LuminaProperties.Logging loggingProperties;
     private final MeterRegistry meterRegistry;
     private final StatsAccumulator statsAccumulator;
+    private final ApiKeySpendLedger apiKeySpendLedger;
     private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
     private final LongAdder droppedLogs = new LongAdder();
     private final DistributionSummary batchSizeSummary;
@@ -38,11 +42,13 @@ public class LogWriter {
     private LinkedBlockingQueue<RequestLog> queue;
 
     public LogWriter(RequestLogService requestLogService, LuminaProperties luminaProperties,
-                     MeterRegistry meterRegistry, StatsAccumulator statsAccumulator) {
+                     MeterRegistry meterRegistry, StatsAccumulator statsAccumulator,
+                     ApiKeySpendLedger apiKeySpendLedger) {
         this.requestLogService = requestLogService;
         this.loggingProperties = luminaProperties.getLogging();
         this.meterRegistry = meterRegistry;
         this.statsAccumulator = statsAccumulator;
+        this.apiKeySpendLedger = apiKeySpendLedger;
         this.batchSizeSummary = DistributionSummary.builder("lumina_log_batch_size")
                 .description("Number of request logs written in a batch")
                 .register(meterRegistry);
@@ -103,9 +109,27 @@ public class LogWriter {
 
         batchSizeSummary.record(batch.size());
         requestLogService.saveBatchLogs(batch);
+        apiKeySpendLedger.recordWritten(batch);
         statsAccumulator.accumulate(batch);
     }
 
+    /**
+     * 在写入线程上执行任务并等待完成，期间不会写入请求日志
+     */
+    public void runExclusive(Runnable task) {
+        try {
+            executor.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待请求日志写入线程被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     private RequestLog convert(RequestLogContext ctx) {
         RequestLog logEntry = new RequestLog();
         logEntry.setId(ctx.getId());
@@ -129,9 +153,12 @@ public class LogWriter {
         logEntry.setErrorMessage(ctx.getErrorMessage());
         logEntry.setRetryCount(ctx.getRetryCount());
         logEntry.setApiKey(ctx.getApiKey());
+        logEntry.setCoalesced(ctx.isCoalesced());
+        logEntry.setCacheHit(ctx.isCacheHit());
 
         boolean keepPayloads = shouldKeepPayloads(ctx);
-        logEntry.setRequestContent(keepPayloads ? ctx.getRequestContent() : null);
+        byte[] requestBody = ctx.getRequestBody();
+        logEntry.setRequestContent(keepPayloads && requestBody != null ? new String(requestBody, StandardCharsets.UTF_8) : null);
         logEntry.setResponseContent(keepPayloads ? ctx.getResponseContent() : null);
 
         return logEntry;
@@ -141,6 +168,13 @@ public class LogWriter {
         if (!"SUCCESS".equalsIgnoreCase(ctx.getStatus())) {
             return true;
         }
+        return ctx.isPayloadSampled();
+    }
+
+    /**
+     * 请求开始时决定成功请求是否保留载荷，未抽中的请求不再生成响应内容字符串
+     */
+    public boolean samplePayload() {
         return ThreadLocalRandom.current().nextDouble() < loggingProperties.getSuccessPayloadSampleRate();
     }
 
@@ -2,6 +2,7 @@ package com.lumina.logging;
 
 import lombok.Data;
 import java.math.BigDecimal;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Data
@@ -38,11 +39,45 @@ public class RequestLogContext {
 
     private Integer retryCount = 0;
 
-    private String requestContent;
+    // 请求体只序列化一次，同时用于上游写出和日志；仅在日志保留载荷时才转成字符串
+    private byte[] requestBody;
     private String responseContent;
 
+    // 成功请求是否保留载荷，在请求开始时按 successPayloadSampleRate 抽样决定
+    private boolean payloadSampled;
+
     private String apiKey;
 
+    // 合并到相同在途请求的 follower，未产生上游调用
+    private boolean coalesced;
+    // 由响应缓存返回，未产生上游调用
+    private boolean cacheHit;
+
+    // 以下字段仅用于限流修正、Provider 延迟画像与提示词缓存统计，不落库
+    private String modelGroup;
+    private Long estimatedTokens;
+    private Integer cacheReadTokens;
+    private String runtimeProviderId;
+
     private AtomicBoolean firstTokenArrived = new AtomicBoolean(false);
-    private StringBuilder responseBuffer = new StringBuilder();
+    // 流式响应内容捕获，未抽样保留载荷时为 disabled，不做拷贝
+    private ResponseCapture responseCapture = ResponseCapture.disabled();
+
+    /**
+     * 未经过执行器、由网关本地返回的请求（合并、缓存命中），Token 与费用记为 0
+     */
+    public static RequestLogContext localResponse(String id, String requestType, String requestModel, String apiKey, boolean stream) {
+        RequestLogContext ctx = new RequestLogContext();
+        ctx.setId(id);
+        ctx.setRequestId(UUID.randomUUID().toString());
+        ctx.setStartNano(System.nanoTime());
+        ctx.setRequestTime(System.currentTimeMillis() / 1000);
+        ctx.setRequestType(requestType);
+        ctx.setRequestModel(requestModel);
+        ctx.setStream(stream);
+        ctx.setApiKey(apiKey);
+        ctx.setInputTokens(0);
+        ctx.setOutputTokens(0);
+        return ctx;
+    }
 }
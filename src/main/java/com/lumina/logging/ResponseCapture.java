@@ -0,0 +1,78 @@
+package com.lumina.logging;
+
+/**
+ * 流式响应内容捕获缓冲区
+ *
+ * 内存中最多保留 maxChars 个字符，超出后丢弃后续内容，只记录被截断的字符数，
+ * 捕获全程不做文件 I/O，可以直接在事件循环线程上追加。
+ * 未被抽样保留载荷的请求使用 disabled()，不做任何拷贝。
+ */
+public class ResponseCapture {
+
+    private static final ResponseCapture DISABLED = new ResponseCapture(0, false);
+
+    private final int maxChars;
+    private final boolean enabled;
+
+    private StringBuilder buffer;
+    private long droppedChars;
+
+    private ResponseCapture(int maxChars, boolean enabled) {
+        this.maxChars = maxChars;
+        this.enabled = enabled;
+    }
+
+    public static ResponseCapture create(int maxChars) {
+        return new ResponseCapture(Math.max(0, maxChars), true);
+    }
+
+    public static ResponseCapture disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void append(String data) {
+        if (!enabled || data == null || data.isEmpty()) {
+            return;
+        }
+        if (buffer == null) {
+            buffer = new StringBuilder(Math.min(data.length() * 4, Math.max(maxChars, 16)));
+        }
+        if (buffer.length() + data.length() <= maxChars) {
+            buffer.append(data);
+            return;
+        }
+        int room = maxChars - buffer.length();
+        if (room > 0) {
+            buffer.append(data, 0, room);
+        }
+        droppedChars += data.length() - Math.max(room, 0);
+    }
+
+    /**
+     * 取出捕获的全部内容
+     */
+    public String content() {
+        if (!enabled) {
+            return null;
+        }
+        if (buffer == null) {
+            return "";
+        }
+        if (droppedChars > 0) {
+            buffer.append("\n...[truncated ").append(droppedChars).append(" chars]");
+            droppedChars = 0;
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * 丢弃捕获内容（请求取消或失败时调用）
+     */
+    public void discard() {
+        buffer = null;
+    }
+}
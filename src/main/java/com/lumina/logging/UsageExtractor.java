@@ -0,0 +1,201 @@
+package com.lumina.logging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+
+/**
+ * 用量提取器
+ *
+ * 基于 JsonParser 顺序扫描响应，只关注 model / modelVersion / usage / usageMetadata 字段，
+ * 其余对象和数组（choices、delta、content、candidates 等）直接跳过，不构建 JsonNode 树。
+ * 兼容以下格式：
+ * - OpenAI Chat / Anthropic：顶层 usage
+ * - Anthropic message_start：message.usage
+ * - OpenAI /v1/responses：response.usage
+ * - Gemini：顶层 usageMetadata
+ * 同时提取命中上游提示词缓存的输入 Token 数（cached_tokens / cache_read_input_tokens / cachedContentTokenCount）
+ */
+@Slf4j
+public final class UsageExtractor {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    // usage 与 usageMetadata 共同的前缀
+    private static final String USAGE_FIELD = "usage";
+
+    private UsageExtractor() {
+    }
+
+    /**
+     * 从一个 SSE data 片段中提取用量
+     */
+    public static void extract(RequestLogContext ctx, String data) {
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+        // 模型已识别且片段中不含 usage / usageMetadata 时无需解析（绝大多数内容增量）
+        if (ctx.getActualModel() != null && !data.contains(USAGE_FIELD)) {
+            return;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+            extract(ctx, parser);
+        } catch (IOException e) {
+            log.debug("解析用量失败，忽略该片段: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从已解析的响应中提取用量（非流式）
+     */
+    public static void extract(RequestLogContext ctx, JsonNode node) {
+        if (node == null) {
+            return;
+        }
+        try (JsonParser parser = node.traverse()) {
+            extract(ctx, parser);
+        } catch (IOException e) {
+            log.debug("解析用量失败: {}", e.getMessage());
+        }
+    }
+
+    private static void extract(RequestLogContext ctx, JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return;
+        }
+        boolean modelFound = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "model", "modelVersion" -> modelFound = readModel(ctx, parser, value, field, modelFound);
+                case "usage" -> readUsage(ctx, parser, value);
+                case "usageMetadata" -> readUsageMetadata(ctx, parser, value);
+                case "message", "response" -> modelFound = readEnvelope(ctx, parser, value, modelFound);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * message / response 包装对象内只读取 model 与 usage
+     */
+    private static boolean readEnvelope(RequestLogContext ctx, JsonParser parser, JsonToken value, boolean modelFound) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return modelFound;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken child = parser.nextToken();
+            if ("model".equals(field)) {
+                modelFound = readModel(ctx, parser, child, field, modelFound);
+            } else if ("usage".equals(field)) {
+                readUsage(ctx, parser, child);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return modelFound;
+    }
+
+    /**
+     * model 优先于 modelVersion，同一片段内只取第一个 model
+     */
+    private static boolean readModel(RequestLogContext ctx, JsonParser parser, JsonToken value, String field, boolean modelFound) throws IOException {
+        if (!value.isScalarValue() || value == JsonToken.VALUE_NULL) {
+            parser.skipChildren();
+            return modelFound;
+        }
+        if (!modelFound) {
+            ctx.setActualModel(parser.getValueAsString());
+        }
+        return modelFound || "model".equals(field);
+    }
+
+    private static void readUsage(RequestLogContext ctx, JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken child = parser.nextToken();
+            if (child == JsonToken.START_OBJECT
+                    && ("prompt_tokens_details".equals(field) || "input_tokens_details".equals(field))) {
+                readInputTokenDetails(ctx, parser);
+                continue;
+            }
+            if (!child.isNumeric()) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                // 兼容旧版 OpenAI 字段 与 新版 /responses 接口、Anthropic 字段
+                case "prompt_tokens", "input_tokens" -> setInputIfAbsent(ctx, parser.getIntValue());
+                case "completion_tokens", "output_tokens" -> setOutputIfAbsent(ctx, parser.getIntValue());
+                case "cache_read_input_tokens" -> setCacheReadIfAbsent(ctx, parser.getIntValue());
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static void readUsageMetadata(RequestLogContext ctx, JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken child = parser.nextToken();
+            if (!child.isNumeric()) {
+                parser.skipChildren();
+                continue;
+            }
+            if ("promptTokenCount".equals(field)) {
+                setInputIfAbsent(ctx, parser.getIntValue());
+            } else if ("candidatesTokenCount".equals(field)) {
+                setOutputIfAbsent(ctx, parser.getIntValue());
+            } else if ("cachedContentTokenCount".equals(field)) {
+                setCacheReadIfAbsent(ctx, parser.getIntValue());
+            }
+        }
+    }
+
+    /**
+     * OpenAI prompt_tokens_details / input_tokens_details 中只读取 cached_tokens
+     */
+    private static void readInputTokenDetails(RequestLogContext ctx, JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken child = parser.nextToken();
+            if ("cached_tokens".equals(field) && child.isNumeric()) {
+                setCacheReadIfAbsent(ctx, parser.getIntValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void setInputIfAbsent(RequestLogContext ctx, int tokens) {
+        if (ctx.getInputTokens() == null || ctx.getInputTokens() == 0) {
+            ctx.setInputTokens(tokens);
+        }
+    }
+
+    private static void setCacheReadIfAbsent(RequestLogContext ctx, int tokens) {
+        if (ctx.getCacheReadTokens() == null || ctx.getCacheReadTokens() == 0) {
+            ctx.setCacheReadTokens(tokens);
+        }
+    }
+
+    private static void setOutputIfAbsent(RequestLogContext ctx, int tokens) {
+        if (ctx.getOutputTokens() == null || ctx.getOutputTokens() == 0) {
+            ctx.setOutputTokens(tokens);
+        }
+    }
+}
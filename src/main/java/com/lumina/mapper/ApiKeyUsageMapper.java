@@ -0,0 +1,24 @@
+package com.lumina.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.lumina.entity.ApiKeyUsage;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface ApiKeyUsageMapper extends BaseMapper<ApiKeyUsage> {
+
+    /**
+     * 累加写入消费增量（total_cost 为增量而非覆盖值）
+     */
+    int upsertIncrementBatch(@Param("usageList") List<ApiKeyUsage> usageList);
+
+    /**
+     * 从 request_logs 全量重算每个 Key 的累计消费
+     */
+    int rebuildFromRequestLogs();
+
+    void deleteAll();
+}
@@ -7,6 +7,8 @@ import com.lumina.entity.Group;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
+
 @Mapper
 public interface GroupMapper extends BaseMapper<Group> {
     /**
@@ -16,6 +18,12 @@ public interface GroupMapper extends BaseMapper<Group> {
      */
     ModelGroupConfig getModelGroupByName(String modelGroupName);
 
+    /**
+     * 获取全部模型分组，用于缓存预热
+     * @return
+     */
+    List<ModelGroupConfig> listModelGroupConfigs();
+
     /**
      * 获取模型分组列表
      * @param page
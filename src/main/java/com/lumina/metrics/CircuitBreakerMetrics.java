@@ -25,6 +25,9 @@ import java.util.concurrent.ConcurrentHashMap;
  * - lumina_consecutive_failures: 连续失败次数
  * - lumina_bulkhead_concurrent: 当前并发数
  * - lumina_bulkhead_max: 最大并发数
+ * - lumina_bulkhead_limit: 实际并发上限（自适应）
+ * - lumina_bulkhead_queue_depth: 排队等待许可的请求数
+ * - lumina_upstream_cooldown_ms: 上游限流冷却剩余时间
  * - lumina_bulkhead_rejected_total: 被拒绝的请求总数
  * - lumina_provider_score: Provider 评分
  * - lumina_latency_ema_ms: 延迟 EMA
@@ -132,6 +135,25 @@ public class CircuitBreakerMetrics {
                 .description("Maximum concurrent requests")
                 .register(meterRegistry);
 
+        // 实际并发上限（启用自适应上限时随 RTT 与限流调整）
+        Gauge.builder("lumina_bulkhead_limit", state, s -> s.getBulkhead().getLimit())
+                .tags(tags)
+                .description("Effective concurrency limit (adaptive, capped by maximum)")
+                .register(meterRegistry);
+
+        // 排队等待许可的请求数
+        Gauge.builder("lumina_bulkhead_queue_depth", state, s -> s.getBulkhead().getQueueDepth())
+                .tags(tags)
+                .description("Requests waiting for a bulkhead permit")
+                .register(meterRegistry);
+
+        // 上游限流冷却剩余时间
+        Gauge.builder("lumina_upstream_cooldown_ms", state,
+                        s -> Math.max(0, s.getUpstreamRateLimit().getBlockedUntil() - System.currentTimeMillis()))
+                .tags(tags)
+                .description("Remaining cooldown derived from upstream rate limit headers")
+                .register(meterRegistry);
+
         // 被拒绝的请求总数
         Gauge.builder("lumina_bulkhead_rejected_total", state, s -> s.getBulkhead().getRejectedCount())
                 .tags(tags)
@@ -2,8 +2,11 @@ package com.lumina.metrics;
 
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.TimeUnit;
+
 @Component
 public class RelayMetrics {
 
@@ -50,6 +53,20 @@ public class RelayMetrics {
                 .increment();
     }
 
+    /**
+     * 舱壁排队等待耗时（含无需等待直接获得许可的请求）
+     * @param acquired 是否获得许可，否则为等待超时或队列已满
+     */
+    public void recordBulkheadWait(boolean stream, boolean acquired, long waitNanos) {
+        Timer.builder("lumina_bulkhead_wait")
+                .description("Time spent waiting for a provider bulkhead permit")
+                .tag("stream", Boolean.toString(stream))
+                .tag("outcome", acquired ? "acquired" : "rejected")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
     public void recordMaxFailoverExceeded(boolean stream) {
         meterRegistry.counter("lumina_failover_terminated_total",
                 "stream", Boolean.toString(stream),
@@ -64,6 +81,57 @@ public class RelayMetrics {
                 .increment();
     }
 
+    /**
+     * 重试预算耗尽，请求不再 Failover 直接返回当前错误
+     * @param scope group-分组预算，global-全局预算
+     */
+    public void recordRetryBudgetExhausted(boolean stream, String scope) {
+        meterRegistry.counter("lumina_retry_budget_exhausted_total",
+                "stream", Boolean.toString(stream),
+                "scope", scope)
+                .increment();
+    }
+
+    /**
+     * SAPR 选路的提示词前缀亲和结果
+     * @param result hit-选中亲和 Provider，score-分数落后放弃，bulkhead-舱壁已满放弃，unavailable-环上无可选 Provider
+     */
+    public void recordPrefixAffinity(String result) {
+        meterRegistry.counter("lumina_prefix_affinity_total", "result", result).increment();
+    }
+
+    /**
+     * 上游返回的输入 Token 及其中命中提示词缓存的部分，用于观察前缀亲和带来的缓存收益
+     */
+    public void recordPromptTokens(String provider, int inputTokens, int cacheReadTokens) {
+        String providerTag = provider != null ? provider : "unknown";
+        meterRegistry.counter("lumina_prompt_tokens_total", "provider", providerTag, "type", "input")
+                .increment(inputTokens);
+        if (cacheReadTokens > 0) {
+            meterRegistry.counter("lumina_prompt_tokens_total", "provider", providerTag, "type", "cache_read")
+                    .increment(cacheReadTokens);
+        }
+    }
+
+    /**
+     * 非流式请求合并
+     * @param role leader-发起上游调用，follower-共享在途请求的结果
+     */
+    public void recordCoalescing(String role) {
+        meterRegistry.counter("lumina_coalesced_requests_total", "role", role).increment();
+    }
+
+    /**
+     * 对冲请求结果
+     * @param outcome fired-已发起，won-对冲先返回，lost-主请求先返回，skipped_budget/skipped_bulkhead/skipped_no_provider-未发起
+     */
+    public void recordHedge(boolean stream, String outcome) {
+        meterRegistry.counter("lumina_hedge_total",
+                "stream", Boolean.toString(stream),
+                "outcome", outcome)
+                .increment();
+    }
+
     public void recordFailoverDepth(int depth) {
         failoverDepthSummary.record(Math.max(0, depth));
     }
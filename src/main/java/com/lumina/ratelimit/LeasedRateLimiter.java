@@ -0,0 +1,217 @@
+package com.lumina.ratelimit;
+
+import com.lumina.config.LuminaProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 租约式令牌桶限流器
+ *
+ * 全局令牌桶保存在 Redis（Lua 脚本原子补充/扣减，按每分钟上限平滑补充，不存在固定窗口边界的双倍突发），
+ * 各节点按 leaseRatio 一次租借一批令牌到本地，租约内的请求只扣本地计数，不访问 Redis。
+ * 租约过期未用完的令牌直接作废，宁可少放行也不超发。
+ * 同一个桶同时只有一个租借请求在途，期间本地不足的请求等待其结果后再从本地扣减，不各自访问 Redis。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LeasedRateLimiter {
+
+    private static final String REDIS_KEY_PREFIX = "rate_limit:bucket:";
+
+    // 返回 {本次授予令牌数, 授予后桶内剩余令牌数, 令牌不足时需等待的毫秒数}
+    private static final RedisScript<List> LEASE_SCRIPT = RedisScript.of("""
+            local capacity = tonumber(ARGV[1])
+            local rate = tonumber(ARGV[2])
+            local requested = tonumber(ARGV[3])
+            local minimum = tonumber(ARGV[4])
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1])
+            local ts = tonumber(state[2])
+            if tokens == nil or ts == nil then
+                tokens = capacity
+                ts = now
+            end
+            tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)
+            local granted = math.min(requested, math.floor(tokens))
+            local wait = 0
+            if granted < minimum then
+                granted = 0
+                wait = math.ceil((minimum - tokens) / rate)
+            end
+            tokens = tokens - granted
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now))
+            redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate) + 1000)
+            return {granted, math.floor(tokens), wait}
+            """, List.class);
+
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    private final LuminaProperties luminaProperties;
+
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * 尝试获取 permits 个令牌
+     *
+     * @param bucketKey      桶标识，如 rpm:{apiKey}
+     * @param limitPerMinute 每分钟上限（同时也是桶容量）
+     * @param permits        本次需要的令牌数
+     */
+    public Mono<RateLimitDecision> tryAcquire(String bucketKey, long limitPerMinute, long permits) {
+        return tryAcquire(bucketKey, limitPerMinute, permits, true);
+    }
+
+    private Mono<RateLimitDecision> tryAcquire(String bucketKey, long limitPerMinute, long permits, boolean mayRetry) {
+        long now = System.currentTimeMillis();
+        Lease lease = leases.computeIfAbsent(bucketKey, k -> new Lease());
+        RateLimitDecision local = lease.tryTake(limitPerMinute, permits, now);
+        if (local != null) {
+            return Mono.just(local);
+        }
+
+        // 需要从全局桶补足的令牌：本地不足的部分加上待偿还的欠账；超过桶容量时按容量申请，桶满即放行
+        long shortfall = Math.min(limitPerMinute, Math.max(1, permits - lease.usableTokens(limitPerMinute, now)));
+        double ratePerMs = limitPerMinute / 60_000.0;
+
+        // 订阅时才发起（或加入）租借，未被订阅的调用不会占住在途租借
+        return Mono.defer(() -> lease.awaitLease(() -> requestLease(bucketKey, limitPerMinute, shortfall, lease)))
+                .flatMap(result -> {
+                    RateLimitDecision taken = lease.tryTake(limitPerMinute, permits, System.currentTimeMillis());
+                    if (taken != null) {
+                        return Mono.just(taken);
+                    }
+                    // 租到的令牌已被同批等待者用完，或被拒的租借缺口比本请求大，单独再试一次
+                    if (mayRetry && (result.granted() > 0 || result.shortfall() > shortfall)) {
+                        return tryAcquire(bucketKey, limitPerMinute, permits, false);
+                    }
+                    long waitMs = result.waitMs() > 0 ? result.waitMs() : (long) Math.ceil(shortfall / ratePerMs);
+                    long resetMs = (long) Math.ceil((limitPerMinute - result.globalRemaining()) / ratePerMs);
+                    return Mono.just(new RateLimitDecision(false, limitPerMinute, 0, resetMs, Math.max(waitMs, 1)));
+                });
+    }
+
+    /**
+     * 向全局桶租借一批令牌，成功时补充到本地租约
+     */
+    private Mono<LeaseResult> requestLease(String bucketKey, long limitPerMinute, long shortfall, Lease lease) {
+        LuminaProperties.RateLimit config = luminaProperties.getRateLimit();
+        long chunk = Math.max(shortfall, (long) Math.ceil(limitPerMinute * config.getLeaseRatio()));
+        double ratePerMs = limitPerMinute / 60_000.0;
+
+        return reactiveStringRedisTemplate.execute(LEASE_SCRIPT,
+                        List.of(REDIS_KEY_PREFIX + bucketKey),
+                        List.of(String.valueOf(limitPerMinute), String.valueOf(ratePerMs),
+                                String.valueOf(chunk), String.valueOf(shortfall)))
+                .next()
+                .map(result -> {
+                    long granted = ((Number) result.get(0)).longValue();
+                    long globalRemaining = ((Number) result.get(1)).longValue();
+                    long waitMs = ((Number) result.get(2)).longValue();
+                    if (granted >= shortfall) {
+                        lease.refill(limitPerMinute, granted, globalRemaining,
+                                System.currentTimeMillis() + config.getLeaseTtlMs());
+                    }
+                    return new LeaseResult(shortfall, granted >= shortfall ? granted : 0, globalRemaining, waitMs);
+                });
+    }
+
+    private record LeaseResult(long shortfall, long granted, long globalRemaining, long waitMs) {
+    }
+
+    /**
+     * 按实际用量修正本地计数（正数为补扣，负数为退还），不访问 Redis；
+     * 补扣形成的欠账在下一次向 Redis 租借时一并偿还
+     */
+    public void adjust(String bucketKey, long deltaPermits) {
+        if (deltaPermits == 0) {
+            return;
+        }
+        // 没有租约说明该桶未启用限流（或已长期空闲），无需修正
+        Lease lease = leases.get(bucketKey);
+        if (lease != null) {
+            lease.adjust(deltaPermits);
+        }
+    }
+
+    /**
+     * 清理过期租约，避免长期不活跃的 Key 占用内存
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpiredLeases() {
+        long now = System.currentTimeMillis();
+        leases.entrySet().removeIf(e -> e.getValue().isIdle(now));
+    }
+
+    private static class Lease {
+        // 欠账保留时长，超过后视为已由全局桶的自然补充抵消
+        private static final long DEBT_RETENTION_MS = 60_000;
+
+        private long limit;
+        // 本地可用令牌，为负表示欠账
+        private long tokens;
+        private long globalRemaining;
+        private long expiresAt;
+        // 在途的租借请求，完成前后续本地不足的请求共用其结果
+        private Mono<LeaseResult> pending;
+
+        synchronized RateLimitDecision tryTake(long currentLimit, long permits, long now) {
+            if (usableTokens(currentLimit, now) < permits) {
+                return null;
+            }
+            tokens -= permits;
+            long remaining = tokens + globalRemaining;
+            long resetMs = (long) Math.ceil((limit - globalRemaining) * 60_000.0 / limit);
+            return new RateLimitDecision(true, limit, remaining, resetMs, 0);
+        }
+
+        /**
+         * 上限变更或租约过期时，剩余令牌作废，欠账保留
+         */
+        synchronized long usableTokens(long currentLimit, long now) {
+            if (limit != currentLimit || now >= expiresAt) {
+                return Math.min(tokens, 0);
+            }
+            return tokens;
+        }
+
+        synchronized Mono<LeaseResult> awaitLease(Supplier<Mono<LeaseResult>> request) {
+            if (pending == null) {
+                // 在结果下发给等待者之前清除，等待者重试时会发起新的租借
+                pending = request.get()
+                        .doOnTerminate(this::clearPending)
+                        .cache();
+            }
+            return pending;
+        }
+
+        private synchronized void clearPending() {
+            pending = null;
+        }
+
+        synchronized void refill(long currentLimit, long leased, long remaining, long expiresAt) {
+            tokens = usableTokens(currentLimit, System.currentTimeMillis()) + leased;
+            limit = currentLimit;
+            globalRemaining = remaining;
+            this.expiresAt = expiresAt;
+        }
+
+        synchronized void adjust(long deltaPermits) {
+            tokens -= deltaPermits;
+        }
+
+        synchronized boolean isIdle(long now) {
+            return now >= expiresAt + (tokens < 0 ? DEBT_RETENTION_MS : 0);
+        }
+    }
+}
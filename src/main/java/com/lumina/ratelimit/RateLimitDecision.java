@@ -0,0 +1,46 @@
+package com.lumina.ratelimit;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * 限流判定结果
+ *
+ * @param allowed      是否放行
+ * @param limit        每分钟上限
+ * @param remaining    剩余令牌数（近似值），-1 表示未知
+ * @param resetMs      令牌桶恢复满额所需时间（毫秒）
+ * @param retryAfterMs 被拒绝时建议的重试等待时间（毫秒）
+ */
+public record RateLimitDecision(boolean allowed, long limit, long remaining, long resetMs, long retryAfterMs) {
+
+    /**
+     * Redis 不可用时放行，不输出限流头
+     */
+    public static RateLimitDecision failOpen(long limit) {
+        return new RateLimitDecision(true, limit, -1, 0, 0);
+    }
+
+    /**
+     * 写入 OpenAI 风格的 x-ratelimit-* 响应头，被拒绝时附带 Retry-After
+     *
+     * @param dimension requests 或 tokens
+     */
+    public void applyHeaders(HttpHeaders headers, String dimension) {
+        if (remaining < 0) {
+            return;
+        }
+        headers.set("x-ratelimit-limit-" + dimension, String.valueOf(limit));
+        headers.set("x-ratelimit-remaining-" + dimension, String.valueOf(remaining));
+        headers.set("x-ratelimit-reset-" + dimension, formatDuration(resetMs));
+        if (!allowed) {
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (retryAfterMs + 999) / 1000)));
+        }
+    }
+
+    private static String formatDuration(long millis) {
+        if (millis < 1000) {
+            return millis + "ms";
+        }
+        return ((millis + 999) / 1000) + "s";
+    }
+}
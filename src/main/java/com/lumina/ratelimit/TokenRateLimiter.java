@@ -0,0 +1,107 @@
+package com.lumina.ratelimit;
+
+import com.lumina.config.LuminaProperties;
+import com.lumina.dto.ModelGroupConfig;
+import com.lumina.entity.ApiKey;
+import com.lumina.service.HotPathCacheService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * 每分钟 Token 数（TPM）限流，同时按 API Key 和模型分组两个维度计数
+ *
+ * 请求发起前按预估输入 Token 数扣减，响应完成后按实际 inputTokens + outputTokens 修正差额；
+ * 与 RPM 共用 LeasedRateLimiter，绝大多数请求只操作本地租约。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TokenRateLimiter {
+
+    private static final String KEY_BUCKET_PREFIX = "tpm:key:";
+    private static final String GROUP_BUCKET_PREFIX = "tpm:group:";
+
+    private final LeasedRateLimiter leasedRateLimiter;
+    private final LuminaProperties luminaProperties;
+    private final HotPathCacheService hotPathCacheService;
+
+    public boolean isLimited(String apiKey, ModelGroupConfig modelGroupConfig) {
+        return resolveKeyLimit(apiKey) > 0 || resolveGroupLimit(modelGroupConfig) > 0;
+    }
+
+    /**
+     * 按预估 Token 数扣减 Key 和分组的 TPM 额度，任一维度不足即拒绝（已扣减的维度会退还）
+     */
+    public Mono<RateLimitDecision> tryAcquire(String apiKey, ModelGroupConfig modelGroupConfig, long tokens) {
+        long keyLimit = resolveKeyLimit(apiKey);
+        long groupLimit = resolveGroupLimit(modelGroupConfig);
+
+        Mono<RateLimitDecision> keyDecision = keyLimit > 0
+                ? acquire(KEY_BUCKET_PREFIX + apiKey, keyLimit, tokens)
+                : Mono.just(RateLimitDecision.failOpen(0));
+
+        return keyDecision.flatMap(keyResult -> {
+            if (!keyResult.allowed() || groupLimit <= 0) {
+                return Mono.just(keyResult);
+            }
+            return acquire(GROUP_BUCKET_PREFIX + modelGroupConfig.getName(), groupLimit, tokens)
+                    .map(groupResult -> {
+                        if (!groupResult.allowed()) {
+                            if (keyLimit > 0) {
+                                leasedRateLimiter.adjust(KEY_BUCKET_PREFIX + apiKey, -tokens);
+                            }
+                            return groupResult;
+                        }
+                        // 响应头展示更紧张的维度
+                        if (keyResult.remaining() < 0 || groupResult.remaining() < keyResult.remaining()) {
+                            return groupResult;
+                        }
+                        return keyResult;
+                    });
+        });
+    }
+
+    /**
+     * 按实际用量修正差额（正数补扣，负数退还），只更新本地租约
+     */
+    public void adjust(String apiKey, String modelGroupName, long deltaTokens) {
+        if (deltaTokens == 0) {
+            return;
+        }
+        if (apiKey != null) {
+            leasedRateLimiter.adjust(KEY_BUCKET_PREFIX + apiKey, deltaTokens);
+        }
+        if (modelGroupName != null) {
+            leasedRateLimiter.adjust(GROUP_BUCKET_PREFIX + modelGroupName, deltaTokens);
+        }
+    }
+
+    private Mono<RateLimitDecision> acquire(String bucketKey, long limit, long tokens) {
+        return leasedRateLimiter.tryAcquire(bucketKey, limit, Math.max(1, tokens))
+                .onErrorResume(e -> {
+                    log.error("TPM 限流检查失败，放行请求: {}", bucketKey, e);
+                    return Mono.just(RateLimitDecision.failOpen(limit));
+                });
+    }
+
+    /**
+     * Key 单独配置的 TPM 优先（ApiKeyAuthenticationFilter 已将其加载进缓存），否则使用全局默认值
+     */
+    private long resolveKeyLimit(String apiKey) {
+        if (apiKey == null) {
+            return 0;
+        }
+        ApiKey key = hotPathCacheService.getCachedApiKeyQuota(apiKey);
+        if (key != null && key.getRateLimitTpm() != null) {
+            return key.getRateLimitTpm();
+        }
+        return luminaProperties.getRateLimit().getTokensPerMinute();
+    }
+
+    private long resolveGroupLimit(ModelGroupConfig modelGroupConfig) {
+        Integer limit = modelGroupConfig.getTpmLimit();
+        return limit != null ? limit : 0;
+    }
+}
@@ -0,0 +1,125 @@
+package com.lumina.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.lumina.config.LuminaProperties;
+import com.lumina.entity.ApiKey;
+import com.lumina.mapper.ApiKeyMapper;
+import com.lumina.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 有效 API Key 的 Bloom 过滤器
+ *
+ * 鉴权前先查询过滤器，一定不存在的 Key 直接拒绝，不查询缓存与数据库，避免扫描流量打到数据库。
+ * 过滤器由所有启用的 Key 构建：
+ * - 启动完成后构建，构建成功前不做拦截
+ * - 收到 api_key:ALL 失效广播（新增、修改、删除 Key）或定时兜底时整体重建，重建期间沿用旧过滤器
+ * - 收到单个 Key 的失效广播时直接追加该 Key
+ * 过滤器可能误判存在，误判的 Key 仍由原有校验流程拒绝。
+ */
+@Slf4j
+@Component
+public class ApiKeyBloomFilter {
+
+    private static final double FALSE_POSITIVE_RATE = 0.001;
+    // 为重建间隔内新增的 Key 预留容量
+    private static final int MIN_CAPACITY = 1024;
+
+    private final ApiKeyMapper apiKeyMapper;
+    private final LuminaProperties luminaProperties;
+    private final Counter rejections;
+    private final AtomicBoolean rebuildPending = new AtomicBoolean(false);
+
+    private volatile BloomFilter filter;
+
+    public ApiKeyBloomFilter(ApiKeyMapper apiKeyMapper, LuminaProperties luminaProperties, MeterRegistry meterRegistry) {
+        this.apiKeyMapper = apiKeyMapper;
+        this.luminaProperties = luminaProperties;
+        this.rejections = Counter.builder("lumina_api_key_filter_rejections_total")
+                .description("API keys rejected by the valid-key Bloom filter without a cache or database lookup")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return false 表示 Key 一定无效；未开启或尚未构建完成时返回 true
+     */
+    public boolean mightBeValid(String apiKey) {
+        BloomFilter current = filter;
+        if (current == null || current.mightContain(apiKey)) {
+            return true;
+        }
+        rejections.increment();
+        return false;
+    }
+
+    /**
+     * 处理 API Key 失效广播：ALL 时异步重建，单个 Key 时直接追加
+     */
+    public void onInvalidation(String key) {
+        if ("ALL".equals(key)) {
+            requestRebuild();
+            return;
+        }
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(key);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        requestRebuild();
+    }
+
+    @Scheduled(fixedDelayString = "#{${lumina.cache.api-key-filter-rebuild-seconds:600} * 1000}",
+            initialDelayString = "#{${lumina.cache.api-key-filter-rebuild-seconds:600} * 1000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 合并重建请求：已有待执行的重建时不再重复提交
+     */
+    private void requestRebuild() {
+        if (!luminaProperties.getCache().isApiKeyFilterEnabled() || rebuildPending.getAndSet(true)) {
+            return;
+        }
+        Schedulers.boundedElastic().schedule(() -> {
+            rebuildPending.set(false);
+            rebuild();
+        });
+    }
+
+    void rebuild() {
+        if (!luminaProperties.getCache().isApiKeyFilterEnabled()) {
+            filter = null;
+            return;
+        }
+        try {
+            List<ApiKey> keys = apiKeyMapper.selectList(new LambdaQueryWrapper<ApiKey>()
+                    .select(ApiKey::getApiKey)
+                    .eq(ApiKey::getIsEnabled, true));
+            BloomFilter rebuilt = BloomFilter.create(Math.max(MIN_CAPACITY, keys.size() * 2), FALSE_POSITIVE_RATE);
+            for (ApiKey key : keys) {
+                if (key.getApiKey() != null) {
+                    rebuilt.put(key.getApiKey());
+                }
+            }
+            filter = rebuilt;
+            log.debug("API Key 过滤器已重建，Key 数量: {}", keys.size());
+        } catch (Exception e) {
+            // 重建失败沿用旧过滤器，尚未构建时不拦截
+            log.error("重建 API Key 过滤器失败: {}", e.getMessage());
+        }
+    }
+}
@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.lumina.entity.ApiKey;
 import reactor.core.publisher.Mono;
 
+import java.util.function.LongSupplier;
+
 public interface ApiKeyService extends IService<ApiKey> {
     ApiKey generateApiKey(String name);
 
@@ -11,5 +13,23 @@ public interface ApiKeyService extends IService<ApiKey> {
 
     Mono<Boolean> hasAvailableQuota(String apiKey);
 
+    /**
+     * 一次查询全部启用的 Key 并写入有效性与额度缓存
+     *
+     * @return 写入的 Key 数量，查询期间发生失效时为 -1
+     */
+    int warmUpApiKeys();
+
+    /**
+     * 按预估费用预占 Key 的剩余额度，estimator 仅在 Key 设置了额度上限时调用
+     *
+     * @return 实际预占量（百万分之一单位），未设置额度时为 0，额度不足时为 -1
+     */
+    Mono<Long> reserveQuota(String apiKey, LongSupplier estimator);
+
+    void releaseQuota(String apiKey, long reservedMicros);
+
     ApiKey updateMaxAmount(Long id, java.math.BigDecimal maxAmount);
+
+    ApiKey updateRateLimit(Long id, Integer rateLimitRpm, Integer rateLimitTpm);
 }
@@ -337,7 +337,7 @@ public class CircuitBreakerManagementService {
                     continue;
                 }
                 for (ModelGroupConfigItem item : config.getItems()) {
-                    String providerId = generateProviderId(item);
+                    String providerId = item.getProviderKey().id();
                     EffectiveCircuitBreakerConfig effectiveConfig = configResolver.resolve(
                             config.getId(),
                             config.getCircuitBreakerConfig(),
@@ -378,13 +378,6 @@ public class CircuitBreakerManagementService {
         return new ResolvedConfigBinding(config.getSourceLevel(), groupNames, false, config);
     }
 
-    private String generateProviderId(ModelGroupConfigItem item) {
-        return String.format("%s_%s_%s",
-                item.getBaseUrl(),
-                item.getApiKey() != null ? item.getApiKey().hashCode() : "null",
-                item.getModelName());
-    }
-
     private record ConfigBinding(String groupName, EffectiveCircuitBreakerConfig effectiveConfig) {}
 
     private record ResolvedConfigBinding(
@@ -0,0 +1,33 @@
+package com.lumina.service;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一次转发请求在 Failover 链路（含对冲）中共享的状态
+ */
+final class FailoverRequest {
+
+    // 已尝试的 Provider，开启对冲时主请求与对冲请求并发读写
+    final Set<String> tried;
+    final Integer timeoutMs;
+    // 请求哈希，用于灰度一致性
+    final int requestHash;
+    // 预期输出 Token 数，用于延迟感知选路
+    final int expectedOutputTokens;
+    // 提示词前缀亲和键，为 0 时不做亲和
+    final long affinityKey;
+    // 流式续传状态，未开启续传时为 null
+    final StreamResumption resumption;
+
+    FailoverRequest(Integer timeoutMs, int expectedOutputTokens, boolean concurrent, long affinityKey, StreamResumption resumption) {
+        this.tried = concurrent ? ConcurrentHashMap.newKeySet() : new HashSet<>();
+        this.timeoutMs = timeoutMs;
+        this.requestHash = ThreadLocalRandom.current().nextInt();
+        this.expectedOutputTokens = expectedOutputTokens;
+        this.affinityKey = affinityKey;
+        this.resumption = resumption;
+    }
+}
@@ -3,6 +3,7 @@ package com.lumina.service;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.lumina.config.CircuitBreakerConfigResolver;
 import com.lumina.config.EffectiveCircuitBreakerConfig;
+import com.lumina.config.LuminaProperties;
 import com.lumina.dto.ModelGroupConfig;
 import com.lumina.dto.ModelGroupConfigItem;
 import com.lumina.exception.BulkheadFullException;
@@ -23,9 +24,8 @@ import java.net.ConnectException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.channels.UnresolvedAddressException;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
@@ -42,9 +42,19 @@ public class FailoverService {
     private final CircuitBreaker circuitBreaker;
     private final CircuitBreakerConfigResolver configResolver;
     private final RelayMetrics relayMetrics;
-    private final com.lumina.config.LuminaProperties luminaProperties;
+    private final LuminaProperties luminaProperties;
+
+    private static final int BALANCE_MODE_ROUND_ROBIN = 1;
+    private static final int BALANCE_MODE_LATENCY = 6;
+    private static final int BALANCE_MODE_P2C = 7;
+    private static final String GLOBAL_RETRY_BUDGET_KEY = "__global__";
+    // SAPR 选路按线程复用的临时数组
+    private static final ThreadLocal<SelectionScratch> SELECTION_SCRATCH = ThreadLocal.withInitial(SelectionScratch::new);
 
     private final ConcurrentHashMap<String, AtomicInteger> roundRobinCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, GroupRoutingTable> routingTables = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RequestBudget> hedgeBudgets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RequestBudget> retryBudgets = new ConcurrentHashMap<>();
 
     /**
      * 根据异常分类错误类型
@@ -113,20 +123,6 @@ public class FailoverService {
         return FailureType.UNKNOWN;
     }
 
-    /**
-     * 解析 Provider 的生效配置
-     */
-    private EffectiveCircuitBreakerConfig resolveConfig(ModelGroupConfig group, ModelGroupConfigItem item, int requestHash) {
-        String providerId = generateProviderId(item);
-        return configResolver.resolve(
-                group.getId(),
-                group.getCircuitBreakerConfig(),
-                providerId,
-                item.getCircuitBreakerConfig(),
-                requestHash
-        );
-    }
-
     public ModelGroupConfigItem selectAvailableProvider(ModelGroupConfig modelGroupConfig) {
         return selectAvailableProvider(modelGroupConfig, java.util.Collections.emptySet(), 0);
     }
@@ -136,103 +132,344 @@ public class FailoverService {
     }
 
     public ModelGroupConfigItem selectAvailableProvider(ModelGroupConfig modelGroupConfig, Set<String> excludeIds, int requestHash) {
+        GroupRoutingTable table = routingTable(modelGroupConfig);
+        return table.items[select(table, excludeIds, requestHash, expectedOutputTokens(0), 0)];
+    }
+
+    /**
+     * 获取分组路由表，分组配置对象被替换或运行态被清理后重新编译
+     */
+    private GroupRoutingTable routingTable(ModelGroupConfig group) {
+        String key = group.getId() != null ? group.getId() : "default";
+        GroupRoutingTable table = routingTables.get(key);
+        if (table == null || table.isStale(group, providerStateRegistry)) {
+            table = new GroupRoutingTable(
+                    group,
+                    providerStateRegistry,
+                    configResolver,
+                    luminaProperties.getFailover().getSoftmaxT(),
+                    luminaProperties.getFailover().getPrefixAffinity().getVirtualNodes(),
+                    roundRobinCounters.computeIfAbsent(key, k -> new AtomicInteger(0))
+            );
+            routingTables.put(key, table);
+        }
+        return table;
+    }
+
+    /**
+     * @param affinityKey 提示词前缀亲和键（仅 SAPR 模式使用），为 0 时不做亲和
+     * @return 选中 Provider 在路由表中的下标
+     */
+    private int select(GroupRoutingTable table, Set<String> excludeIds, int requestHash, int expectedOutputTokens, long affinityKey) {
         // 轮询模式：直接轮询，不做熔断过滤
-        Integer balanceMode = modelGroupConfig.getBalanceMode();
-        if (balanceMode != null && balanceMode == 1) {
-            return selectByRoundRobin(modelGroupConfig.getItems(), excludeIds, modelGroupConfig.getId());
+        Integer balanceMode = table.source.getBalanceMode();
+        if (balanceMode != null && balanceMode == BALANCE_MODE_ROUND_ROBIN) {
+            return selectByRoundRobin(table, excludeIds);
+        }
+        if (balanceMode != null && balanceMode == BALANCE_MODE_LATENCY) {
+            return selectByExpectedCompletion(table, excludeIds, requestHash, expectedOutputTokens);
+        }
+        if (balanceMode != null && balanceMode == BALANCE_MODE_P2C) {
+            return selectByPowerOfTwoChoices(table, excludeIds, requestHash);
         }
 
         // SAPR 模式（默认）
-        // 1. 过滤可用 Provider
-        List<ModelGroupConfigItem> available = modelGroupConfig.getItems()
-                .stream()
-                .filter(item -> {
-                    String id = generateProviderId(item);
-                    if (excludeIds.contains(id)) {
-                        relayMetrics.recordProviderSkipped("excluded");
-                        return false;
-                    }
-                    ProviderRuntimeState stats = providerStateRegistry.get(id);
-                    if (stats.getProviderName() == null) {
-                        stats.setProviderName(item.getProviderName());
-                    }
-                    if (stats.getModelName() == null) {
-                        stats.setModelName(item.getModelName());
-                    }
-                    // 使用解析后的配置判断是否允许请求
-                    EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(modelGroupConfig, item, requestHash);
-                    boolean allowed = circuitBreaker.allowRequest(stats, effectiveConfig);
-                    if (!allowed) {
-                        relayMetrics.recordProviderSkipped("circuit_" + stats.getCircuitState().name().toLowerCase());
-                    }
-                    return allowed;
-                })
-                .toList();
+        // 1. 过滤可用 Provider，同时按 selection score（健康分 + weight 先验）维护 Top-K
+        int k = Math.max(1, Math.min(luminaProperties.getFailover().getTopK(), table.size));
+        SelectionScratch scratch = SELECTION_SCRATCH.get().prepare(k, table.size, affinityKey != 0);
+        int[] topIndexes = scratch.topIndexes;
+        double[] topScores = scratch.topScores;
+        int count = 0;
+        boolean[] candidates = affinityKey != 0 ? scratch.candidates : null;
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < table.size; i++) {
+            if (!isCandidate(table, i, excludeIds, requestHash, now)) {
+                continue;
+            }
+            if (candidates != null) {
+                candidates[i] = true;
+            }
+            ProviderRuntimeState state = table.states[i];
+            double score = getEffectiveScore(state) + table.weightBias[i];
+            count = offerTopK(topIndexes, topScores, k, count, i, score);
+        }
 
-        if (available.isEmpty()) {
+        if (count == 0) {
             // 保底：降级到轮询，忽略 excludeIds，所有 Provider 都参与轮询
-            log.warn("Group {} 所有 Provider 熔断或不可用，降级到轮询保底策略", modelGroupConfig.getId());
+            log.warn("Group {} 所有 Provider 熔断或不可用，降级到轮询保底策略", table.source.getId());
             relayMetrics.recordFallbackToRoundRobin();
-            return selectByRoundRobin(modelGroupConfig.getItems(), Collections.emptySet(), modelGroupConfig.getId());
+            return selectByRoundRobin(table, Collections.emptySet());
         }
 
         relayMetrics.recordSelection("sapr");
 
-        // 2. 按 selection score 降序排序（健康分 + weight 先验）
-        List<ModelGroupConfigItem> sorted = available.stream()
-                .sorted((a, b) -> {
-                    double sa = getSelectionScore(a);
-                    double sb = getSelectionScore(b);
-                    return Double.compare(sb, sa);
-                })
-                .toList();
-
-        // 3. 取 Top-K
-        int topKSize = Math.min(luminaProperties.getFailover().getTopK(), sorted.size());
-        List<ModelGroupConfigItem> topK = sorted.subList(0, topKSize);
+        if (candidates != null) {
+            int affine = selectByPrefixAffinity(table, candidates, affinityKey, topScores[0]);
+            if (affine >= 0) {
+                return affine;
+            }
+        }
 
-        // 4. 计算 Softmax 权重
-        double[] weights = new double[topK.size()];
+        // 2. 计算 Softmax 权重（减去最高分保证数值稳定，topScores 原地复用为权重）
+        double softmaxT = luminaProperties.getFailover().getSoftmaxT();
+        double best = topScores[0];
         double sum = 0.0;
-
-        for (int i = 0; i < topK.size(); i++) {
-            double score = getSelectionScore(topK.get(i));
-            double w = Math.exp(score / luminaProperties.getFailover().getSoftmaxT());
-            weights[i] = w;
-            sum += w;
+        for (int i = 0; i < count; i++) {
+            topScores[i] = Math.exp((topScores[i] - best) / softmaxT);
+            sum += topScores[i];
         }
 
-        // 5. 按权重随机选择
+        // 3. 按权重随机选择
         double r = ThreadLocalRandom.current().nextDouble() * sum;
         double acc = 0.0;
-
-        for (int i = 0; i < topK.size(); i++) {
-            acc += weights[i];
+        for (int i = 0; i < count; i++) {
+            acc += topScores[i];
             if (r <= acc) {
-                return topK.get(i);
+                return topIndexes[i];
             }
         }
 
-        return topK.get(0);
+        return topIndexes[0];
+    }
+
+    /**
+     * 提示词前缀亲和：一致性哈希环上的亲和 Provider 分数不明显落后且舱壁未满时直接选中，
+     * 使相同前缀的请求落到同一上游以命中其提示词缓存；否则回到 Softmax 随机选择
+     * @return 亲和 Provider 下标，放弃亲和时返回 -1
+     */
+    private int selectByPrefixAffinity(GroupRoutingTable table, boolean[] candidates, long affinityKey, double bestScore) {
+        int affine = table.affineIndex(affinityKey, candidates);
+        if (affine < 0) {
+            relayMetrics.recordPrefixAffinity("unavailable");
+            return -1;
+        }
+        ProviderRuntimeState state = table.states[affine];
+        double score = getEffectiveScore(state) + table.weightBias[affine];
+        if (bestScore - score > luminaProperties.getFailover().getPrefixAffinity().getScoreTolerance()) {
+            relayMetrics.recordPrefixAffinity("score");
+            return -1;
+        }
+        ProviderBulkhead bulkhead = state.getBulkhead();
+        if (bulkhead.getCurrentConcurrent() >= bulkhead.getLimit()) {
+            relayMetrics.recordPrefixAffinity("bulkhead");
+            return -1;
+        }
+        relayMetrics.recordPrefixAffinity("hit");
+        return affine;
+    }
+
+    /**
+     * 判断 Provider 能否参与本次选路，不能时记录跳过原因。
+     * 上游限流冷却在熔断判断之前检查，避免占用 HALF_OPEN 探测配额
+     */
+    private boolean isCandidate(GroupRoutingTable table, int index, Set<String> excludeIds, int requestHash, long now) {
+        if (excludeIds.contains(table.providerIds[index])) {
+            relayMetrics.recordProviderSkipped("excluded");
+            return false;
+        }
+        ProviderRuntimeState state = table.states[index];
+        if (state.getUpstreamRateLimit().isBlocked(now)) {
+            relayMetrics.recordProviderSkipped("rate_limited");
+            return false;
+        }
+        // 使用解析后的配置判断是否允许请求
+        if (!circuitBreaker.allowRequest(state, table.providerConfig(index, requestHash))) {
+            relayMetrics.recordProviderSkipped("circuit_" + state.getCircuitState().name().toLowerCase());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 将候选插入按分数降序的 Top-K 数组，同分时先出现者在前
+     * @return 插入后的有效个数
+     */
+    private static int offerTopK(int[] topIndexes, double[] topScores, int k, int count, int index, double score) {
+        if (count == k && score <= topScores[k - 1]) {
+            return count;
+        }
+        int pos = Math.min(count, k - 1);
+        while (pos > 0 && topScores[pos - 1] < score) {
+            topIndexes[pos] = topIndexes[pos - 1];
+            topScores[pos] = topScores[pos - 1];
+            pos--;
+        }
+        topIndexes[pos] = index;
+        topScores[pos] = score;
+        return Math.min(count + 1, k);
+    }
+
+    /**
+     * SAPR 选路的临时数组，按线程复用，选路期间不分配
+     */
+    private static final class SelectionScratch {
+        int[] topIndexes = new int[0];
+        double[] topScores = new double[0];
+        boolean[] candidates = new boolean[0];
+
+        SelectionScratch prepare(int k, int size, boolean affinity) {
+            if (topIndexes.length < k) {
+                topIndexes = new int[k];
+                topScores = new double[k];
+            }
+            if (affinity) {
+                if (candidates.length < size) {
+                    candidates = new boolean[size];
+                } else {
+                    Arrays.fill(candidates, 0, size, false);
+                }
+            }
+            return this;
+        }
     }
 
     /**
      * 轮询策略选择 Provider
      */
-    private ModelGroupConfigItem selectByRoundRobin(List<ModelGroupConfigItem> items, Set<String> excludeIds, String groupId) {
-        List<ModelGroupConfigItem> candidates = items.stream()
-                .filter(item -> !excludeIds.contains(generateProviderId(item)))
-                .toList();
+    private int selectByRoundRobin(GroupRoutingTable table, Set<String> excludeIds) {
+        int candidates = 0;
+        for (int i = 0; i < table.size; i++) {
+            if (!excludeIds.contains(table.providerIds[i])) {
+                candidates++;
+            }
+        }
 
-        if (candidates.isEmpty()) {
+        if (candidates == 0) {
             throw new RuntimeException("所有 Provider 已尝试过，轮询无可用候选");
         }
 
-        String key = groupId != null ? groupId : "default";
-        AtomicInteger counter = roundRobinCounters.computeIfAbsent(key, k -> new AtomicInteger(0));
-        int index = Math.abs(counter.getAndIncrement() % candidates.size());
+        int remaining = Math.abs(table.roundRobinCounter.getAndIncrement() % candidates);
         relayMetrics.recordSelection("round_robin");
-        return candidates.get(index);
+        for (int i = 0; i < table.size; i++) {
+            if (!excludeIds.contains(table.providerIds[i]) && remaining-- == 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 延迟感知策略：选择预计完成时间最短的 Provider
+     *
+     * 预计完成时间 = 首包耗时 p50 + 预期输出 Token 数 / 输出吞吐 p50，再按当前并发占用放大；
+     * 延迟画像样本不足时退化为总耗时 EMA，尚无任何样本的 Provider 预计为 0，优先获得样本。
+     */
+    private int selectByExpectedCompletion(GroupRoutingTable table, Set<String> excludeIds, int requestHash, int expectedOutputTokens) {
+        int best = -1;
+        double bestCost = Double.MAX_VALUE;
+        int ties = 0;
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < table.size; i++) {
+            if (!isCandidate(table, i, excludeIds, requestHash, now)) {
+                continue;
+            }
+            ProviderRuntimeState state = table.states[i];
+            double cost = expectedCompletionMs(state, expectedOutputTokens);
+            if (cost < bestCost) {
+                best = i;
+                bestCost = cost;
+                ties = 1;
+            } else if (cost == bestCost && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+                // 同分时等概率随机，避免冷启动阶段全部流量涌向第一个 Provider
+                best = i;
+            }
+        }
+
+        if (best < 0) {
+            log.warn("Group {} 所有 Provider 熔断或不可用，降级到轮询保底策略", table.source.getId());
+            relayMetrics.recordFallbackToRoundRobin();
+            return selectByRoundRobin(table, Collections.emptySet());
+        }
+
+        relayMetrics.recordSelection("latency");
+        return best;
+    }
+
+    /**
+     * P2C 策略：从可用 Provider 中等概率抽取两个，选择单位许可在途请求数（按健康分缩放）更低的一个
+     *
+     * 单次遍历内用容量为 2 的蓄水池抽样，不分配候选列表；在途数直接读取舱壁计数，无锁。
+     */
+    private int selectByPowerOfTwoChoices(GroupRoutingTable table, Set<String> excludeIds, int requestHash) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = -1;
+        int second = -1;
+        int candidates = 0;
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < table.size; i++) {
+            if (!isCandidate(table, i, excludeIds, requestHash, now)) {
+                continue;
+            }
+            candidates++;
+            if (candidates == 1) {
+                first = i;
+            } else if (candidates == 2) {
+                second = i;
+            } else {
+                int slot = random.nextInt(candidates);
+                if (slot == 0) {
+                    first = i;
+                } else if (slot == 1) {
+                    second = i;
+                }
+            }
+        }
+
+        if (candidates == 0) {
+            log.warn("Group {} 所有 Provider 熔断或不可用，降级到轮询保底策略", table.source.getId());
+            relayMetrics.recordFallbackToRoundRobin();
+            return selectByRoundRobin(table, Collections.emptySet());
+        }
+
+        relayMetrics.recordSelection("p2c");
+        if (candidates == 1) {
+            return first;
+        }
+        return outstandingLoad(table.states[second]) < outstandingLoad(table.states[first]) ? second : first;
+    }
+
+    /**
+     * 在途负载：(在途请求数 + 1) / 最大并发 / 健康分占比，+1 使空闲 Provider 之间仍按健康分区分
+     */
+    private double outstandingLoad(ProviderRuntimeState state) {
+        ProviderBulkhead bulkhead = state.getBulkhead();
+        double utilization = (bulkhead.getCurrentConcurrent() + 1.0) / Math.max(1, bulkhead.getLimit());
+        return utilization / Math.max(1.0, getEffectiveScore(state)) * 100.0;
+    }
+
+    private double expectedCompletionMs(ProviderRuntimeState state, int expectedOutputTokens) {
+        long minSamples = luminaProperties.getFailover().getLatencyMinSamples();
+        long firstTokenMs = state.getFirstTokenLatency().percentile(0.5, minSamples);
+        long tokensPerSecond = state.getOutputThroughput().percentile(0.5, minSamples);
+
+        double expectedMs;
+        if (firstTokenMs >= 0 && tokensPerSecond > 0) {
+            expectedMs = firstTokenMs + expectedOutputTokens * 1000.0 / tokensPerSecond;
+        } else {
+            expectedMs = state.getLatencyEmaMs();
+        }
+
+        // 排队效应：并发占用越高，实际完成时间越长
+        ProviderBulkhead bulkhead = state.getBulkhead();
+        int limit = Math.max(1, bulkhead.getLimit());
+        expectedMs *= 1.0 + (double) bulkhead.getCurrentConcurrent() / limit;
+
+        if (state.getCircuitState() == CircuitState.HALF_OPEN) {
+            expectedMs /= luminaProperties.getFailover().getHalfOpenWeightFactor();
+        }
+        return expectedMs;
+    }
+
+    /**
+     * 预期输出 Token 数：请求声明的 max_tokens 只是上限，实际输出通常远小于它，因此不超过配置默认值
+     * @param requested 请求声明的最大输出 Token 数，未声明时为 0
+     */
+    private int expectedOutputTokens(int requested) {
+        int defaultTokens = luminaProperties.getFailover().getExpectedOutputTokens();
+        return requested > 0 ? Math.min(requested, defaultTokens) : defaultTokens;
     }
 
     private double getEffectiveScore(ProviderRuntimeState state) {
@@ -243,34 +480,59 @@ public class FailoverService {
         return score;
     }
 
-    private double getSelectionScore(ModelGroupConfigItem item) {
-        ProviderRuntimeState state = providerStateRegistry.get(generateProviderId(item));
-        double score = getEffectiveScore(state);
-        int configuredWeight = Math.max(1, item.getWeight() == null ? 1 : item.getWeight());
-        return score + luminaProperties.getFailover().getSoftmaxT() * Math.log(configuredWeight);
+    public Mono<ObjectNode> executeWithFailoverMono(
+            java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> callFunction,
+            ModelGroupConfig group,
+            Integer timeoutMs
+    ) {
+        return executeWithFailoverMono(callFunction, group, timeoutMs, 0);
+    }
+
+    /**
+     * @param expectedOutputTokens 请求声明的最大输出 Token 数（延迟感知选路使用），未声明时为 0
+     */
+    public Mono<ObjectNode> executeWithFailoverMono(
+            java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> callFunction,
+            ModelGroupConfig group,
+            Integer timeoutMs,
+            int expectedOutputTokens
+    ) {
+        return executeWithFailoverMono(callFunction, group, timeoutMs, expectedOutputTokens, 0);
     }
 
+    /**
+     * @param affinityKey 提示词前缀亲和键（见 {@link PromptAffinity}），为 0 时不做亲和
+     */
     public Mono<ObjectNode> executeWithFailoverMono(
             java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> callFunction,
             ModelGroupConfig group,
-            Integer timeoutMs
+            Integer timeoutMs,
+            int expectedOutputTokens,
+            long affinityKey
     ) {
-        // 生成请求哈希用于灰度一致性
-        int requestHash = ThreadLocalRandom.current().nextInt();
-        return executeWithFailoverMono(callFunction, group, new HashSet<>(), timeoutMs, 0, requestHash);
+        boolean hedgeEnabled = Boolean.TRUE.equals(group.getHedgeEnabled());
+        if (hedgeEnabled) {
+            hedgeBudget(group).deposit();
+        }
+        depositRetryBudget(group);
+        FailoverRequest request = new FailoverRequest(
+                timeoutMs, expectedOutputTokens(expectedOutputTokens), hedgeEnabled, affinityKey, null);
+        return executeWithFailoverMono(callFunction, group, request, 0, hedgeEnabled);
     }
 
+    /**
+     * @param hedgeable 是否可对冲，仅首个成功获取舱壁许可的尝试会发起对冲
+     */
     private Mono<ObjectNode> executeWithFailoverMono(
             java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> callFunction,
             ModelGroupConfig group,
-            Set<String> tried,
-            Integer timeoutMs,
+            FailoverRequest request,
             int attemptCount,
-            int requestHash
+            boolean hedgeable
     ) {
         // 解析 Group 级别配置获取 maxFailoverAttempts
-        EffectiveCircuitBreakerConfig groupConfig = configResolver.resolve(
-                group.getId(), group.getCircuitBreakerConfig());
+        GroupRoutingTable table = routingTable(group);
+        EffectiveCircuitBreakerConfig groupConfig = table.groupConfig(request.requestHash);
 
         // 检查 Failover 次数限制
         if (attemptCount >= groupConfig.getMaxFailoverAttempts()) {
@@ -279,41 +541,109 @@ public class FailoverService {
             return Mono.error(new MaxFailoverExceededException(attemptCount, groupConfig.getMaxFailoverAttempts()));
         }
 
-        ModelGroupConfigItem item;
+        int index;
         try {
-            item = selectAvailableProvider(group, tried, requestHash);
+            index = select(table, request.tried, request.requestHash, request.expectedOutputTokens, request.affinityKey);
         } catch (Exception e) {
             relayMetrics.recordNoProviderAvailable(false);
             relayMetrics.recordFailoverDepth(attemptCount);
             return Mono.error(e);
         }
 
-        String providerId = generateProviderId(item);
-        tried.add(providerId);
-        ProviderRuntimeState state = providerStateRegistry.get(providerId);
-        if (state.getProviderName() == null) {
-            state.setProviderName(item.getProviderName());
-        }
-        if (state.getModelName() == null) {
-            state.setModelName(item.getModelName());
-        }
+        String providerId = table.providerIds[index];
+        request.tried.add(providerId);
+        ProviderRuntimeState state = table.states[index];
 
         // 解析 Provider 级别的生效配置
-        EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(group, item, requestHash);
+        EffectiveCircuitBreakerConfig effectiveConfig = table.providerConfig(index, request.requestHash);
 
         log.debug("尝试使用Provider(非流式): {}, 当前评分: {}, 尝试次数: {}, 配置来源: {}",
                 providerId, state.getScore(), attemptCount + 1, effectiveConfig.getSourceLevel());
 
-        // 检查并发舱壁
+        // 检查并发舱壁，开启排队时许可不足先排队等待，超时或队列已满再 Failover
         ProviderBulkhead bulkhead = state.getBulkhead();
         bulkhead.setMaxConcurrent(effectiveConfig.getMaxConcurrentRequestsPerProvider());
+        LuminaProperties.BulkheadQueue queue = luminaProperties.getFailover().getBulkheadQueue();
+        if (queue.getMaxWaitMs() > 0) {
+            long queuedAt = System.nanoTime();
+            return bulkhead.acquire(queue.getMaxWaitMs(), queue.getMaxDepth())
+                    .flatMap(acquired -> {
+                        relayMetrics.recordBulkheadWait(false, acquired, System.nanoTime() - queuedAt);
+                        return acquired
+                                ? attemptMono(callFunction, group, table, index, request, attemptCount, hedgeable)
+                                : onBulkheadFullMono(callFunction, group, table, index, request, attemptCount, hedgeable);
+                    });
+        }
         if (!bulkhead.tryAcquire()) {
-            log.warn("Provider {} 并发已满，当前: {}/{}, 尝试 Failover",
-                    providerId, bulkhead.getCurrentConcurrent(), bulkhead.getMaxConcurrent());
-            relayMetrics.recordBulkheadRejection(false);
-            relayMetrics.recordFailoverAttempt(false, attemptCount + 1);
-            return executeWithFailoverMono(callFunction, group, tried, timeoutMs, attemptCount + 1, requestHash);
+            return onBulkheadFullMono(callFunction, group, table, index, request, attemptCount, hedgeable);
         }
+        return attemptMono(callFunction, group, table, index, request, attemptCount, hedgeable);
+    }
+
+    private Mono<ObjectNode> onBulkheadFullMono(
+            java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> callFunction,
+            ModelGroupConfig group,
+            GroupRoutingTable table,
+            int index,
+            FailoverRequest request,
+            int attemptCount,
+            boolean hedgeable
+    ) {
+        ProviderBulkhead bulkhead = table.states[index].getBulkhead();
+        log.warn("Provider {} 并发已满，当前: {}/{}, 尝试 Failover",
+                table.providerIds[index], bulkhead.getCurrentConcurrent(), bulkhead.getLimit());
+        relayMetrics.recordBulkheadRejection(false);
+        // 舱壁已满时未访问上游，切换 Provider 不消耗重试预算
+        relayMetrics.recordFailoverAttempt(false, attemptCount + 1);
+        return executeWithFailoverMono(callFunction, group, request, attemptCount + 1, hedgeable);
+    }
+
+    /**
+     * 已获取舱壁许可：发起调用，可对冲时在主请求慢于阈值后向次优 Provider 发起对冲
+     */
+    private Mono<ObjectNode> attemptMono(
+            java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> callFunction,
+            ModelGroupConfig group,
+            GroupRoutingTable table,
+            int index,
+            FailoverRequest request,
+            int attemptCount,
+            boolean hedgeable
+    ) {
+        ProviderRuntimeState state = table.states[index];
+        Mono<ObjectNode> attempt = callProvider(callFunction, group, table, index, request, attemptCount);
+        if (!hedgeable) {
+            return attempt;
+        }
+        long hedgeDelayMs = hedgeDelayMs(state.getResponseLatency(), request.timeoutMs);
+        if (hedgeDelayMs < 0) {
+            return attempt;
+        }
+        return HedgedCall.race(
+                attempt,
+                hedgeDelayMs,
+                () -> startHedge(callFunction, group, request, attemptCount),
+                hedgeWon -> relayMetrics.recordHedge(false, hedgeWon ? "won" : "lost")
+        );
+    }
+
+    /**
+     * 对已获取舱壁许可的 Provider 发起一次调用，失败时按错误类型继续 Failover
+     */
+    private Mono<ObjectNode> callProvider(
+            java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> callFunction,
+            ModelGroupConfig group,
+            GroupRoutingTable table,
+            int index,
+            FailoverRequest request,
+            int attemptCount
+    ) {
+        ModelGroupConfigItem item = table.items[index];
+        String providerId = table.providerIds[index];
+        ProviderRuntimeState state = table.states[index];
+        EffectiveCircuitBreakerConfig effectiveConfig = table.providerConfig(index, request.requestHash);
+        Integer timeoutMs = request.timeoutMs;
+        ProviderBulkhead bulkhead = state.getBulkhead();
 
         long startTime = System.currentTimeMillis();
         java.util.concurrent.atomic.AtomicBoolean bulkheadReleased = new java.util.concurrent.atomic.AtomicBoolean(false);
@@ -322,13 +652,17 @@ public class FailoverService {
                 bulkhead.release();
             }
         };
-        Mono<ObjectNode> result = callFunction.apply(item);
+        Mono<ObjectNode> result = callFunction.apply(item)
+                .contextWrite(context -> context.put(UpstreamRateLimitFilter.CONTEXT_KEY, state.getUpstreamRateLimit()));
 
         return result
                 .doOnSuccess(response -> {
-                    releaseBulkhead.run();
                     long duration = System.currentTimeMillis() - startTime;
+                    // 非流式总耗时随输出长度增长，不作为自适应并发的 RTT 样本
+                    bulkhead.recordSuccess();
+                    releaseBulkhead.run();
                     scoreCalculator.update(state, FailureType.SUCCESS, duration);
+                    state.getResponseLatency().record(duration);
                     circuitBreaker.onSuccess(state, effectiveConfig);
                     relayMetrics.recordFailoverDepth(attemptCount);
                     log.debug("Provider {} 调用成功，耗时: {}ms, 新评分: {}", providerId, duration, state.getScore());
@@ -338,6 +672,7 @@ public class FailoverService {
                 .onErrorResume(error -> {
                     long duration = System.currentTimeMillis() - startTime;
                     FailureType failureType = classifyError(error);
+                    recordCongestion(bulkhead, failureType);
 
                     if (failureType == FailureType.TIMEOUT) {
                         log.warn("Provider {} 调用超时: 配置={}ms, 实际={}ms", providerId, timeoutMs, duration);
@@ -359,31 +694,229 @@ public class FailoverService {
                         return Mono.error(error);
                     }
 
+                    if (!tryAcquireRetry(group, table, request, attemptCount, false)) {
+                        relayMetrics.recordFailoverDepth(attemptCount);
+                        return Mono.error(error);
+                    }
+
                     relayMetrics.recordFailoverSwitch(false, "before_response", failureType.name().toLowerCase());
                     relayMetrics.recordFailoverAttempt(false, attemptCount + 1);
-                    return executeWithFailoverMono(callFunction, group, tried, timeoutMs, attemptCount + 1, requestHash);
+                    return executeWithFailoverMono(callFunction, group, request, attemptCount + 1, false);
                 });
     }
 
+    /**
+     * 上游限流与超时视为拥塞信号，收缩 Provider 的自适应并发上限
+     */
+    private static void recordCongestion(ProviderBulkhead bulkhead, FailureType failureType) {
+        if (failureType == FailureType.HTTP_429 || failureType == FailureType.TIMEOUT) {
+            bulkhead.recordDrop();
+        }
+    }
+
+    /**
+     * 对冲等待时间：主 Provider 近期耗时（非流式为总耗时，流式为首包耗时）的分位值（不低于下限）
+     * @return 样本不足或不早于首包超时时返回 -1，表示不对冲
+     */
+    private long hedgeDelayMs(LatencyHistogram latency, Integer timeoutMs) {
+        LuminaProperties.Hedge hedge = luminaProperties.getFailover().getHedge();
+        long percentile = latency.percentile(hedge.getDelayPercentile(), hedge.getMinSamples());
+        if (percentile < 0) {
+            return -1;
+        }
+        long delayMs = Math.max(hedge.getMinDelayMs(), percentile);
+        if (timeoutMs != null && timeoutMs > 0 && delayMs >= timeoutMs) {
+            return -1;
+        }
+        return delayMs;
+    }
+
+    /**
+     * 向次优候选发起对冲请求；候选、舱壁或对冲预算不足时返回 null 放弃对冲
+     */
+    private Mono<ObjectNode> startHedge(
+            java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> callFunction,
+            ModelGroupConfig group,
+            FailoverRequest request,
+            int attemptCount
+    ) {
+        GroupRoutingTable table = routingTable(group);
+        int index = acquireHedgeCandidate(table, group, request, false);
+        if (index < 0) {
+            return null;
+        }
+        return callProvider(callFunction, group, table, index, request, attemptCount + 1);
+    }
+
+    /**
+     * 选出对冲候选并获取其舱壁许可与对冲预算
+     * @return 候选下标，放弃对冲时返回 -1
+     */
+    private int acquireHedgeCandidate(GroupRoutingTable table, ModelGroupConfig group, FailoverRequest request, boolean stream) {
+        Set<String> tried = request.tried;
+        int index;
+        try {
+            // 对冲需要另一个 Provider，不走前缀亲和
+            index = select(table, tried, request.requestHash, request.expectedOutputTokens, 0);
+        } catch (Exception e) {
+            relayMetrics.recordHedge(stream, "skipped_no_provider");
+            return -1;
+        }
+        String providerId = table.providerIds[index];
+        // 候选全部不可用时选路会降级轮询，可能选回已尝试的 Provider
+        if (tried.contains(providerId)) {
+            relayMetrics.recordHedge(stream, "skipped_no_provider");
+            return -1;
+        }
+
+        ProviderBulkhead bulkhead = table.states[index].getBulkhead();
+        bulkhead.setMaxConcurrent(table.providerConfig(index, request.requestHash).getMaxConcurrentRequestsPerProvider());
+        if (!bulkhead.tryAcquire()) {
+            relayMetrics.recordHedge(stream, "skipped_bulkhead");
+            return -1;
+        }
+        if (!hedgeBudget(group).tryWithdraw()) {
+            bulkhead.release();
+            relayMetrics.recordHedge(stream, "skipped_budget");
+            return -1;
+        }
+
+        tried.add(providerId);
+        relayMetrics.recordHedge(stream, "fired");
+        log.debug("主请求慢于对冲阈值，向 {} 发起对冲请求", providerId);
+        return index;
+    }
+
+    private RequestBudget hedgeBudget(ModelGroupConfig group) {
+        String key = group.getId() != null ? group.getId() : "default";
+        return hedgeBudgets.computeIfAbsent(key, k -> {
+            LuminaProperties.Hedge hedge = luminaProperties.getFailover().getHedge();
+            return new RequestBudget(hedge.getBudgetRatio(), hedge.getBudgetMaxTokens());
+        });
+    }
+
+    private void depositRetryBudget(ModelGroupConfig group) {
+        if (luminaProperties.getFailover().getRetryBudget().isEnabled()) {
+            retryBudget(group).deposit();
+            globalRetryBudget().deposit();
+        }
+    }
+
+    /**
+     * 上游调用失败后为下一次 Failover 消耗重试预算，分组与全局预算需同时有余额
+     * 下一次尝试已超出最大 Failover 次数时不消耗预算，交由次数限制终止
+     * @return false 表示预算耗尽，应直接返回当前错误
+     */
+    private boolean tryAcquireRetry(
+            ModelGroupConfig group,
+            GroupRoutingTable table,
+            FailoverRequest request,
+            int attemptCount,
+            boolean stream
+    ) {
+        if (!luminaProperties.getFailover().getRetryBudget().isEnabled()
+                || attemptCount + 1 >= table.groupConfig(request.requestHash).getMaxFailoverAttempts()) {
+            return true;
+        }
+        RequestBudget groupBudget = retryBudget(group);
+        if (!groupBudget.tryWithdraw()) {
+            log.warn("分组 {} 重试预算已耗尽，停止 Failover", group.getName());
+            relayMetrics.recordRetryBudgetExhausted(stream, "group");
+            return false;
+        }
+        if (!globalRetryBudget().tryWithdraw()) {
+            groupBudget.refund();
+            log.warn("全局重试预算已耗尽，停止 Failover");
+            relayMetrics.recordRetryBudgetExhausted(stream, "global");
+            return false;
+        }
+        return true;
+    }
+
+    private RequestBudget retryBudget(ModelGroupConfig group) {
+        String key = group.getId() != null ? group.getId() : "default";
+        return retryBudgets.computeIfAbsent(key, k -> {
+            LuminaProperties.RetryBudget retry = luminaProperties.getFailover().getRetryBudget();
+            return new RequestBudget(retry.getRatio(), retry.getGroupMaxTokens());
+        });
+    }
+
+    private RequestBudget globalRetryBudget() {
+        return retryBudgets.computeIfAbsent(GLOBAL_RETRY_BUDGET_KEY, k -> {
+            LuminaProperties.RetryBudget retry = luminaProperties.getFailover().getRetryBudget();
+            return new RequestBudget(retry.getRatio(), retry.getGlobalMaxTokens());
+        });
+    }
+
     public Flux<ServerSentEvent<String>> executeWithFailoverFlux(
             java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
             ModelGroupConfig group,
             Integer timeoutMs
     ) {
-        int requestHash = ThreadLocalRandom.current().nextInt();
-        return executeWithFailoverFlux(callFunction, group, new HashSet<>(), timeoutMs, 0, requestHash);
+        return executeWithFailoverFlux(callFunction, group, timeoutMs, 0);
     }
 
-    private Flux<ServerSentEvent<String>> executeWithFailoverFlux(
+    /**
+     * @param expectedOutputTokens 请求声明的最大输出 Token 数（延迟感知选路使用），未声明时为 0
+     */
+    public Flux<ServerSentEvent<String>> executeWithFailoverFlux(
             java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
             ModelGroupConfig group,
-            Set<String> tried,
             Integer timeoutMs,
+            int expectedOutputTokens
+    ) {
+        return executeWithFailoverFlux(callFunction, group, timeoutMs, expectedOutputTokens, null);
+    }
+
+    /**
+     * @param resumption 流式续传状态，传输中途失败时携带已下发内容向下一个 Provider 续写；为 null 时不续传，
+     *                   callFunction 需通过 {@link StreamResumption#applyPrefill} 构造续写请求
+     */
+    public Flux<ServerSentEvent<String>> executeWithFailoverFlux(
+            java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
+            ModelGroupConfig group,
+            Integer timeoutMs,
+            int expectedOutputTokens,
+            StreamResumption resumption
+    ) {
+        return executeWithFailoverFlux(callFunction, group, timeoutMs, expectedOutputTokens, 0, resumption);
+    }
+
+    /**
+     * @param affinityKey 提示词前缀亲和键（见 {@link PromptAffinity}），为 0 时不做亲和
+     */
+    public Flux<ServerSentEvent<String>> executeWithFailoverFlux(
+            java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
+            ModelGroupConfig group,
+            Integer timeoutMs,
+            int expectedOutputTokens,
+            long affinityKey,
+            StreamResumption resumption
+    ) {
+        boolean hedgeEnabled = Boolean.TRUE.equals(group.getHedgeEnabled());
+        if (hedgeEnabled) {
+            hedgeBudget(group).deposit();
+        }
+        depositRetryBudget(group);
+        FailoverRequest request = new FailoverRequest(
+                timeoutMs, expectedOutputTokens(expectedOutputTokens), hedgeEnabled, affinityKey, resumption);
+        Flux<ServerSentEvent<String>> result = executeWithFailoverFlux(callFunction, group, request, 0, hedgeEnabled);
+        if (resumption == null) {
+            return result;
+        }
+        // 在最终下发的事件上累积内容，对冲落选的流不会计入
+        return result.filter(resumption::onEvent);
+    }
+
+    private Flux<ServerSentEvent<String>> executeWithFailoverFlux(
+            java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
+            ModelGroupConfig group,
+            FailoverRequest request,
             int attemptCount,
-            int requestHash
+            boolean hedgeable
     ) {
-        EffectiveCircuitBreakerConfig groupConfig = configResolver.resolve(
-                group.getId(), group.getCircuitBreakerConfig());
+        GroupRoutingTable table = routingTable(group);
+        EffectiveCircuitBreakerConfig groupConfig = table.groupConfig(request.requestHash);
 
         if (attemptCount >= groupConfig.getMaxFailoverAttempts()) {
             relayMetrics.recordMaxFailoverExceeded(true);
@@ -391,42 +924,122 @@ public class FailoverService {
             return Flux.error(new MaxFailoverExceededException(attemptCount, groupConfig.getMaxFailoverAttempts()));
         }
 
-        ModelGroupConfigItem item;
+        int index;
         try {
-            item = selectAvailableProvider(group, tried, requestHash);
+            index = select(table, request.tried, request.requestHash, request.expectedOutputTokens, request.affinityKey);
         } catch (Exception e) {
             relayMetrics.recordNoProviderAvailable(true);
             relayMetrics.recordFailoverDepth(attemptCount);
             return Flux.error(e);
         }
 
-        String providerId = generateProviderId(item);
-        tried.add(providerId);
-        ProviderRuntimeState state = providerStateRegistry.get(providerId);
-        if (state.getProviderName() == null) {
-            state.setProviderName(item.getProviderName());
-        }
-        if (state.getModelName() == null) {
-            state.setModelName(item.getModelName());
-        }
+        String providerId = table.providerIds[index];
+        request.tried.add(providerId);
+        ProviderRuntimeState state = table.states[index];
 
-        EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(group, item, requestHash);
+        EffectiveCircuitBreakerConfig effectiveConfig = table.providerConfig(index, request.requestHash);
 
         log.debug("尝试使用Provider(流式): {}, 当前评分: {}, 尝试次数: {}, 配置来源: {}",
                 providerId, state.getScore(), attemptCount + 1, effectiveConfig.getSourceLevel());
 
         ProviderBulkhead bulkhead = state.getBulkhead();
         bulkhead.setMaxConcurrent(effectiveConfig.getMaxConcurrentRequestsPerProvider());
+        LuminaProperties.BulkheadQueue queue = luminaProperties.getFailover().getBulkheadQueue();
+        if (queue.getMaxWaitMs() > 0) {
+            long queuedAt = System.nanoTime();
+            return bulkhead.acquire(queue.getMaxWaitMs(), queue.getMaxDepth())
+                    .flatMapMany(acquired -> {
+                        relayMetrics.recordBulkheadWait(true, acquired, System.nanoTime() - queuedAt);
+                        return acquired
+                                ? attemptFlux(callFunction, group, table, index, request, attemptCount, hedgeable)
+                                : onBulkheadFullFlux(callFunction, group, table, index, request, attemptCount, hedgeable);
+                    });
+        }
         if (!bulkhead.tryAcquire()) {
-            log.warn("Provider {} 并发已满，当前: {}/{}, 尝试 Failover",
-                    providerId, bulkhead.getCurrentConcurrent(), bulkhead.getMaxConcurrent());
-            relayMetrics.recordBulkheadRejection(true);
-            relayMetrics.recordFailoverAttempt(true, attemptCount + 1);
-            return executeWithFailoverFlux(callFunction, group, tried, timeoutMs, attemptCount + 1, requestHash);
+            return onBulkheadFullFlux(callFunction, group, table, index, request, attemptCount, hedgeable);
+        }
+        return attemptFlux(callFunction, group, table, index, request, attemptCount, hedgeable);
+    }
+
+    private Flux<ServerSentEvent<String>> onBulkheadFullFlux(
+            java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
+            ModelGroupConfig group,
+            GroupRoutingTable table,
+            int index,
+            FailoverRequest request,
+            int attemptCount,
+            boolean hedgeable
+    ) {
+        ProviderBulkhead bulkhead = table.states[index].getBulkhead();
+        log.warn("Provider {} 并发已满，当前: {}/{}, 尝试 Failover",
+                table.providerIds[index], bulkhead.getCurrentConcurrent(), bulkhead.getLimit());
+        relayMetrics.recordBulkheadRejection(true);
+        // 舱壁已满时未访问上游，切换 Provider 不消耗重试预算
+        relayMetrics.recordFailoverAttempt(true, attemptCount + 1);
+        return executeWithFailoverFlux(callFunction, group, request, attemptCount + 1, hedgeable);
+    }
+
+    private Flux<ServerSentEvent<String>> attemptFlux(
+            java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
+            ModelGroupConfig group,
+            GroupRoutingTable table,
+            int index,
+            FailoverRequest request,
+            int attemptCount,
+            boolean hedgeable
+    ) {
+        ProviderRuntimeState state = table.states[index];
+        Flux<ServerSentEvent<String>> attempt = streamProvider(callFunction, group, table, index, request, attemptCount);
+        if (!hedgeable) {
+            return attempt;
+        }
+        long hedgeDelayMs = hedgeDelayMs(state.getFirstTokenLatency(), request.timeoutMs);
+        if (hedgeDelayMs < 0) {
+            return attempt;
+        }
+        return HedgedStream.race(
+                attempt,
+                hedgeDelayMs,
+                () -> startStreamHedge(callFunction, group, request, attemptCount),
+                hedgeWon -> relayMetrics.recordHedge(true, hedgeWon ? "won" : "lost")
+        );
+    }
+
+    private Flux<ServerSentEvent<String>> startStreamHedge(
+            java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
+            ModelGroupConfig group,
+            FailoverRequest request,
+            int attemptCount
+    ) {
+        GroupRoutingTable table = routingTable(group);
+        int index = acquireHedgeCandidate(table, group, request, true);
+        if (index < 0) {
+            return null;
         }
+        return streamProvider(callFunction, group, table, index, request, attemptCount + 1);
+    }
+
+    /**
+     * 对已获取舱壁许可的 Provider 发起一次流式调用，首包前失败时按错误类型继续 Failover
+     */
+    private Flux<ServerSentEvent<String>> streamProvider(
+            java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
+            ModelGroupConfig group,
+            GroupRoutingTable table,
+            int index,
+            FailoverRequest request,
+            int attemptCount
+    ) {
+        ModelGroupConfigItem item = table.items[index];
+        String providerId = table.providerIds[index];
+        ProviderRuntimeState state = table.states[index];
+        EffectiveCircuitBreakerConfig effectiveConfig = table.providerConfig(index, request.requestHash);
+        Integer timeoutMs = request.timeoutMs;
+        ProviderBulkhead bulkhead = state.getBulkhead();
 
         long startTime = System.currentTimeMillis();
         java.util.concurrent.atomic.AtomicBoolean firstChunk = new java.util.concurrent.atomic.AtomicBoolean(true);
+        java.util.concurrent.atomic.AtomicBoolean firstToken = new java.util.concurrent.atomic.AtomicBoolean(true);
         java.util.concurrent.atomic.AtomicBoolean bulkheadReleased = new java.util.concurrent.atomic.AtomicBoolean(false);
 
         Runnable releaseBulkhead = () -> {
@@ -435,10 +1048,20 @@ public class FailoverService {
             }
         };
 
-        Flux<ServerSentEvent<String>> result = callFunction.apply(item);
+        Flux<ServerSentEvent<String>> result = callFunction.apply(item)
+                .contextWrite(context -> context.put(UpstreamRateLimitFilter.CONTEXT_KEY, state.getUpstreamRateLimit()));
 
         return result
-                .doOnNext(event -> firstChunk.compareAndSet(true, false))
+                .doOnNext(event -> {
+                    firstChunk.compareAndSet(true, false);
+                    // 与执行器记录 firstTokenMs 的口径一致：首个带 data 的事件
+                    if (event.data() != null && firstToken.compareAndSet(true, false)) {
+                        long firstTokenMs = System.currentTimeMillis() - startTime;
+                        state.getFirstTokenLatency().record(firstTokenMs);
+                        // 流式请求以首包耗时作为自适应并发的 RTT 信号，总耗时随输出长度变化
+                        bulkhead.recordLatency(firstTokenMs);
+                    }
+                })
                 .doOnComplete(() -> {
                     releaseBulkhead.run();
                     long duration = System.currentTimeMillis() - startTime;
@@ -449,9 +1072,10 @@ public class FailoverService {
                 })
                 .doOnCancel(releaseBulkhead)
                 .onErrorResume(error -> {
-                    releaseBulkhead.run();
                     long duration = System.currentTimeMillis() - startTime;
                     FailureType failureType = classifyError(error);
+                    recordCongestion(bulkhead, failureType);
+                    releaseBulkhead.run();
 
                     if (firstChunk.get()) {
                         if (failureType == FailureType.TIMEOUT) {
@@ -474,28 +1098,47 @@ public class FailoverService {
                             return Flux.error(error);
                         }
 
+                        if (!tryAcquireRetry(group, table, request, attemptCount, true)) {
+                            relayMetrics.recordFailoverDepth(attemptCount);
+                            return Flux.error(error);
+                        }
+
                         relayMetrics.recordFailoverSwitch(true, "first_chunk", failureType.name().toLowerCase());
                         relayMetrics.recordFailoverAttempt(true, attemptCount + 1);
-                        return executeWithFailoverFlux(callFunction, group, tried, timeoutMs, attemptCount + 1, requestHash);
+                        return executeWithFailoverFlux(callFunction, group, request, attemptCount + 1, false);
                     } else {
                         log.error("Provider {} 流式传输中途失败: {} (类型: {})", providerId, error.getMessage(), failureType);
                         scoreCalculator.update(state, failureType, duration);
                         circuitBreaker.onFailure(state, failureType, effectiveConfig);
+
+                        StreamResumption resumption = request.resumption;
+                        if (resumption != null && failureType.shouldFailover() && resumption.isResumable()
+                                && tryAcquireRetry(group, table, request, attemptCount, true)) {
+                            resumption.beginContinuation();
+                            log.info("Provider {} 流式传输中断，携带已下发内容续传", providerId);
+                            relayMetrics.recordFailoverSwitch(true, "mid_stream", failureType.name().toLowerCase());
+                            relayMetrics.recordFailoverAttempt(true, attemptCount + 1);
+                            // 续写流产生内容前失败且无法继续 Failover 时，仍以中断提示结束
+                            return executeWithFailoverFlux(callFunction, group, request, attemptCount + 1, false)
+                                    .onErrorResume(resumeError -> resumption.isContinuing()
+                                            ? interrupted(resumeError)
+                                            : Flux.error(resumeError));
+                        }
+
                         relayMetrics.recordFailoverDepth(attemptCount);
-                        // 中断传输的降级提示
-                        String errorMessage = "{\"error\": {\"message\": \"网关传输中途发生网络异常中断，请稍后重试。\"}}";
-                        return Flux.just(ServerSentEvent.<String>builder()
-                                .data(errorMessage)
-                                .build())
-                                .concatWith(Flux.error(error));
+                        return interrupted(error);
                     }
                 });
     }
 
-    private String generateProviderId(ModelGroupConfigItem item) {
-        return String.format("%s_%s_%s",
-                item.getBaseUrl(),
-                item.getApiKey() != null ? item.getApiKey().hashCode() : "null",
-                item.getModelName());
+    /**
+     * 中断传输的降级提示
+     */
+    private static Flux<ServerSentEvent<String>> interrupted(Throwable error) {
+        String errorMessage = "{\"error\": {\"message\": \"网关传输中途发生网络异常中断，请稍后重试。\"}}";
+        return Flux.just(ServerSentEvent.<String>builder()
+                .data(errorMessage)
+                .build())
+                .concatWith(Flux.error(error));
     }
 }
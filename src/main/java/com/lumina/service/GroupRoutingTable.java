@@ -0,0 +1,167 @@
+package com.lumina.service;
+
+import com.lumina.config.CircuitBreakerConfigResolver;
+import com.lumina.config.EffectiveCircuitBreakerConfig;
+import com.lumina.config.OverrideCircuitBreakerConfig;
+import com.lumina.dto.ModelGroupConfig;
+import com.lumina.dto.ModelGroupConfigItem;
+import com.lumina.state.ProviderRuntimeState;
+import com.lumina.state.ProviderStateRegistry;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分组路由表
+ *
+ * 由 ModelGroupConfig 编译而来，预先解析每个 Provider 的 ID、运行态引用、权重先验
+ * 以及各灰度组合下的生效熔断配置，选路时只做数组遍历，不再拼接字符串或构建配置。
+ * 分组配置对象被替换（缓存失效后重新加载）或运行态被清理时重新编译。
+ */
+final class GroupRoutingTable {
+
+    private static final int APPLY_GROUP = 1;
+    private static final int APPLY_PROVIDER = 2;
+
+    final ModelGroupConfig source;
+    final long registryGeneration;
+    final int size;
+    final ModelGroupConfigItem[] items;
+    final String[] providerIds;
+    final ProviderRuntimeState[] states;
+    // softmaxT * ln(weight)，选路分数中的权重先验
+    final double[] weightBias;
+    final AtomicInteger roundRobinCounter;
+    // 提示词前缀亲和的一致性哈希环：按哈希升序排列的虚拟节点及其对应的 Provider 下标
+    private final long[] ringHashes;
+    private final int[] ringIndexes;
+
+    private final OverrideCircuitBreakerConfig groupOverride;
+    private final OverrideCircuitBreakerConfig[] providerOverrides;
+    // 下标为灰度命中组合（APPLY_GROUP | APPLY_PROVIDER）
+    private final EffectiveCircuitBreakerConfig[] groupConfigs;
+    private final EffectiveCircuitBreakerConfig[][] providerConfigs;
+
+    GroupRoutingTable(ModelGroupConfig group,
+                      ProviderStateRegistry registry,
+                      CircuitBreakerConfigResolver resolver,
+                      double softmaxT,
+                      int virtualNodes,
+                      AtomicInteger roundRobinCounter) {
+        // 先读代数再取运行态，期间若有清理则下次选路会重新编译
+        this.registryGeneration = registry.getGeneration();
+        this.source = group;
+        this.roundRobinCounter = roundRobinCounter;
+        this.groupOverride = group.getCircuitBreakerConfig();
+
+        List<ModelGroupConfigItem> list = group.getItems() != null ? group.getItems() : List.of();
+        this.size = list.size();
+        this.items = list.toArray(new ModelGroupConfigItem[0]);
+        this.providerIds = new String[size];
+        this.states = new ProviderRuntimeState[size];
+        this.weightBias = new double[size];
+        this.providerOverrides = new OverrideCircuitBreakerConfig[size];
+        this.providerConfigs = new EffectiveCircuitBreakerConfig[size][];
+
+        this.groupConfigs = new EffectiveCircuitBreakerConfig[]{
+                resolver.resolve(group.getId(), groupOverride, false, null, null, false),
+                resolver.resolve(group.getId(), groupOverride, true, null, null, false)
+        };
+
+        for (int i = 0; i < size; i++) {
+            ModelGroupConfigItem item = items[i];
+            String providerId = item.getProviderKey().id();
+            providerIds[i] = providerId;
+
+            ProviderRuntimeState state = registry.get(providerId);
+            if (state.getProviderName() == null) {
+                state.setProviderName(item.getProviderName());
+            }
+            if (state.getModelName() == null) {
+                state.setModelName(item.getModelName());
+            }
+            states[i] = state;
+
+            int configuredWeight = Math.max(1, item.getWeight() == null ? 1 : item.getWeight());
+            weightBias[i] = softmaxT * Math.log(configuredWeight);
+
+            OverrideCircuitBreakerConfig providerOverride = item.getCircuitBreakerConfig();
+            providerOverrides[i] = providerOverride;
+            EffectiveCircuitBreakerConfig[] variants = new EffectiveCircuitBreakerConfig[4];
+            for (int mask = 0; mask < variants.length; mask++) {
+                variants[mask] = resolver.resolve(
+                        group.getId(), groupOverride, (mask & APPLY_GROUP) != 0,
+                        providerId, providerOverride, (mask & APPLY_PROVIDER) != 0);
+            }
+            providerConfigs[i] = variants;
+        }
+
+        // 虚拟节点按 Provider ID 计算，分组增删 Provider 时只有相邻区间的前缀改变归属
+        int nodes = Math.max(1, virtualNodes);
+        long[][] ring = new long[size * nodes][];
+        for (int i = 0; i < size; i++) {
+            for (int v = 0; v < nodes; v++) {
+                ring[i * nodes + v] = new long[]{PromptAffinity.hash(providerIds[i] + "#" + v), i};
+            }
+        }
+        Arrays.sort(ring, (a, b) -> Long.compare(a[0], b[0]));
+        this.ringHashes = new long[ring.length];
+        this.ringIndexes = new int[ring.length];
+        for (int n = 0; n < ring.length; n++) {
+            ringHashes[n] = ring[n][0];
+            ringIndexes[n] = (int) ring[n][1];
+        }
+    }
+
+    /**
+     * 在一致性哈希环上从亲和键顺时针查找第一个可选的 Provider
+     * @param candidates 下标对应的 Provider 是否可参与本次选路
+     * @return Provider 下标，均不可选时返回 -1
+     */
+    int affineIndex(long affinityKey, boolean[] candidates) {
+        if (ringHashes.length == 0) {
+            return -1;
+        }
+        int start = Arrays.binarySearch(ringHashes, affinityKey);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        for (int n = 0; n < ringHashes.length; n++) {
+            int index = ringIndexes[(start + n) % ringHashes.length];
+            if (candidates[index]) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    boolean isStale(ModelGroupConfig group, ProviderStateRegistry registry) {
+        return source != group || registryGeneration != registry.getGeneration();
+    }
+
+    /**
+     * Group 级别生效配置（用于 maxFailoverAttempts 等）
+     */
+    EffectiveCircuitBreakerConfig groupConfig(int requestHash) {
+        return groupConfigs[applies(groupOverride, requestHash) ? 1 : 0];
+    }
+
+    /**
+     * 第 index 个 Provider 在本次请求灰度命中结果下的生效配置
+     */
+    EffectiveCircuitBreakerConfig providerConfig(int index, int requestHash) {
+        int mask = 0;
+        if (applies(groupOverride, requestHash)) {
+            mask |= APPLY_GROUP;
+        }
+        if (applies(providerOverrides[index], requestHash)) {
+            mask |= APPLY_PROVIDER;
+        }
+        return providerConfigs[index][mask];
+    }
+
+    private static boolean applies(OverrideCircuitBreakerConfig override, int requestHash) {
+        return override != null && override.isEffectivelyEnabled() && override.shouldApplyGrayscale(requestHash);
+    }
+}
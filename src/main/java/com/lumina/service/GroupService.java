@@ -6,6 +6,8 @@ import com.lumina.dto.ModelGroupConfig;
 import com.lumina.entity.Group;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface GroupService extends IService<Group> {
 
     /**
@@ -32,6 +34,12 @@ public interface GroupService extends IService<Group> {
 
     Mono<ModelGroupConfig> getModelGroupConfigAsync(String model);
 
+    /**
+     * 一次查询全部分组配置并写入缓存
+     * @return 查询到的分组配置
+     */
+    List<ModelGroupConfig> warmUpModelGroupConfigs();
+
     /**
      * 创建分组
      * @param group
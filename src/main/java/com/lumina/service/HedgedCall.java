@@ -0,0 +1,112 @@
+package com.lumina.service;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 对冲调用（非流式）
+ *
+ * 主请求在 delayMs 内未返回时向备份 Provider 再发起一次请求，取先成功者，另一方被取消（释放舱壁许可）。
+ * - 主请求在计时结束前失败：不再对冲，直接返回错误（主请求链路自身已做过 Failover）
+ * - 一方失败而另一方仍在进行：继续等待另一方
+ * - 双方都失败：返回主请求的错误
+ */
+final class HedgedCall<T> {
+
+    private final MonoSink<T> sink;
+    private final Consumer<Boolean> onBackupSettled;
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    private boolean done;
+    private boolean backupStarted;
+    private int running = 1;
+    private Throwable primaryError;
+
+    private HedgedCall(MonoSink<T> sink, Consumer<Boolean> onBackupSettled) {
+        this.sink = sink;
+        this.onBackupSettled = onBackupSettled;
+    }
+
+    /**
+     * @param primary 主请求
+     * @param delayMs 发起备份请求前的等待时间
+     * @param backup 备份请求工厂，返回 null 表示放弃对冲（预算或舱壁不足等）
+     * @param onBackupSettled 已发起对冲且有一方成功时回调，参数为是否备份请求胜出
+     */
+    static <T> Mono<T> race(Mono<T> primary, long delayMs, Supplier<Mono<T>> backup, Consumer<Boolean> onBackupSettled) {
+        return Mono.create(sink -> {
+            HedgedCall<T> call = new HedgedCall<>(sink, onBackupSettled);
+            sink.onDispose(call.subscriptions);
+            call.subscribe(primary, false);
+            call.subscriptions.add(Schedulers.parallel().schedule(() -> call.fire(backup), delayMs, TimeUnit.MILLISECONDS));
+        });
+    }
+
+    private void fire(Supplier<Mono<T>> backup) {
+        Mono<T> hedge;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            hedge = backup.get();
+            if (hedge == null) {
+                return;
+            }
+            backupStarted = true;
+            running++;
+        }
+        // 若此时已结束，subscriptions 已被释放，新订阅会被立即取消
+        subscribe(hedge, true);
+    }
+
+    private void subscribe(Mono<T> source, boolean fromBackup) {
+        subscriptions.add(source
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .contextWrite(sink.contextView())
+                .subscribe(value -> onSuccess(value, fromBackup), error -> onError(error, fromBackup)));
+    }
+
+    private void onSuccess(Optional<T> value, boolean fromBackup) {
+        boolean reportBackup;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            reportBackup = backupStarted;
+        }
+        if (reportBackup) {
+            onBackupSettled.accept(fromBackup);
+        }
+        // 先取消落败方（释放其舱壁许可）与未触发的计时器，再向下游交付结果
+        subscriptions.dispose();
+        sink.success(value.orElse(null));
+    }
+
+    private void onError(Throwable error, boolean fromBackup) {
+        Throwable result;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            if (!fromBackup) {
+                primaryError = error;
+            }
+            if (--running > 0) {
+                return;
+            }
+            done = true;
+            result = primaryError != null ? primaryError : error;
+        }
+        sink.error(result);
+    }
+}
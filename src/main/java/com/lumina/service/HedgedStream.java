@@ -0,0 +1,280 @@
+package com.lumina.service;
+
+import org.reactivestreams.Subscription;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Operators;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 首包对冲调用（流式）
+ *
+ * 主流在 delayMs 内未产出内容时向备份 Provider 再发起一路流，先产出模型输出（文本增量、工具调用或内容结束）的一方胜出
+ * 并提交给客户端，另一方立即取消（释放舱壁许可、不写请求日志），胜出前收到的开头事件（角色片段、message_start、ping 等）
+ * 先缓存，胜出时一并下发。错误事件不会使一方胜出：携带错误事件正常结束的一方视为失败，等待另一方。
+ * 错误处理与 HedgedCall 一致：主流在计时结束前失败直接返回错误，一方失败时等待另一方，双方都失败时返回主流的结果。
+ * 胜出前每路逐个拉取事件，胜出后按下游请求量向胜出方请求，客户端消费慢时背压传递到上游。
+ */
+final class HedgedStream {
+
+    private static final int PRIMARY = 0;
+    private static final int BACKUP = 1;
+    private static final int NONE = -1;
+
+    private final FluxSink<ServerSentEvent<String>> sink;
+    private final Consumer<Boolean> onBackupSettled;
+    @SuppressWarnings("unchecked")
+    private final BaseSubscriber<ServerSentEvent<String>>[] subscribers = new BaseSubscriber[2];
+    private final Disposable.Swap timer = Disposables.swap();
+    @SuppressWarnings("unchecked")
+    private final List<ServerSentEvent<String>>[] pending = new List[]{new ArrayList<>(), new ArrayList<>()};
+    private final boolean[] errorEvent = new boolean[2];
+
+    private volatile int winner = NONE;
+    private boolean done;
+    private boolean disposed;
+    private boolean backupStarted;
+    private int running = 1;
+    private Throwable primaryError;
+    // 携带错误事件正常结束的一方缓存的事件，另一方也失败时下发
+    private List<ServerSentEvent<String>> failedEvents;
+    // 胜出前下游累计的请求量
+    private long requested;
+
+    private HedgedStream(FluxSink<ServerSentEvent<String>> sink, Consumer<Boolean> onBackupSettled) {
+        this.sink = sink;
+        this.onBackupSettled = onBackupSettled;
+    }
+
+    /**
+     * @param primary 主流
+     * @param delayMs 发起备份流前等待首个内容块的时间
+     * @param backup 备份流工厂，返回 null 表示放弃对冲
+     * @param onBackupSettled 已发起对冲且决出胜者时回调，参数为是否备份流胜出
+     */
+    static Flux<ServerSentEvent<String>> race(Flux<ServerSentEvent<String>> primary,
+                                              long delayMs,
+                                              Supplier<Flux<ServerSentEvent<String>>> backup,
+                                              Consumer<Boolean> onBackupSettled) {
+        return Flux.create(sink -> {
+            HedgedStream stream = new HedgedStream(sink, onBackupSettled);
+            sink.onDispose(stream::disposeAll);
+            sink.onRequest(stream::onRequest);
+            stream.subscribe(primary, PRIMARY);
+            stream.timer.update(Schedulers.parallel().schedule(() -> stream.fire(backup), delayMs, TimeUnit.MILLISECONDS));
+        });
+    }
+
+    private void fire(Supplier<Flux<ServerSentEvent<String>>> backup) {
+        Flux<ServerSentEvent<String>> hedge;
+        synchronized (this) {
+            if (done || winner != NONE) {
+                return;
+            }
+            hedge = backup.get();
+            if (hedge == null) {
+                return;
+            }
+            backupStarted = true;
+            running++;
+        }
+        subscribe(hedge, BACKUP);
+    }
+
+    private void subscribe(Flux<ServerSentEvent<String>> source, int index) {
+        BaseSubscriber<ServerSentEvent<String>> subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                // 胜负已定后才订阅的一方直接取消，释放其舱壁许可
+                if (isLost(index)) {
+                    dispose();
+                } else {
+                    subscription.request(1);
+                }
+            }
+
+            @Override
+            protected void hookOnNext(ServerSentEvent<String> event) {
+                HedgedStream.this.onNext(event, index);
+            }
+
+            @Override
+            protected void hookOnError(Throwable error) {
+                HedgedStream.this.onError(error, index);
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                HedgedStream.this.onComplete(index);
+            }
+        };
+        synchronized (this) {
+            subscribers[index] = subscriber;
+        }
+        source.contextWrite(sink.contextView()).subscribe(subscriber);
+    }
+
+    private synchronized boolean isLost(int index) {
+        return disposed || done || winner != NONE && winner != index;
+    }
+
+    private void onRequest(long n) {
+        int committed;
+        synchronized (this) {
+            committed = winner;
+            if (committed == NONE) {
+                requested = Operators.addCap(requested, n);
+                return;
+            }
+        }
+        subscribers[committed].request(n);
+    }
+
+    private void onNext(ServerSentEvent<String> event, int index) {
+        if (winner == index) {
+            sink.next(event);
+            return;
+        }
+        List<ServerSentEvent<String>> buffered;
+        long demand;
+        synchronized (this) {
+            if (done || winner != NONE) {
+                return;
+            }
+            StreamEvents.Output output = StreamEvents.classify(event);
+            if (output != StreamEvents.Output.CONTENT) {
+                errorEvent[index] |= output == StreamEvents.Output.ERROR;
+                pending[index].add(event);
+                buffered = null;
+                demand = 0;
+            } else {
+                buffered = commit(index);
+                // 已下发的缓存事件与当前事件计入下游请求量
+                demand = requested == Long.MAX_VALUE ? Long.MAX_VALUE : requested - buffered.size() - 1;
+            }
+        }
+        if (buffered == null) {
+            subscribers[index].request(1);
+            return;
+        }
+        settle(index);
+        buffered.forEach(sink::next);
+        sink.next(event);
+        if (demand > 0) {
+            subscribers[index].request(demand);
+        }
+    }
+
+    private void onComplete(int index) {
+        if (winner == index) {
+            sink.complete();
+            return;
+        }
+        List<ServerSentEvent<String>> buffered;
+        synchronized (this) {
+            if (done || winner != NONE) {
+                return;
+            }
+            if (errorEvent[index] && running > 1) {
+                // 只下发了错误事件就结束，等待另一方
+                running--;
+                failedEvents = pending[index];
+                pending[index] = new ArrayList<>();
+                return;
+            }
+            // 没有产出任何内容就正常结束，视为该路胜出
+            buffered = commit(index);
+        }
+        settle(index);
+        buffered.forEach(sink::next);
+        sink.complete();
+    }
+
+    private void onError(Throwable error, int index) {
+        if (winner == index) {
+            sink.error(error);
+            return;
+        }
+        Throwable result;
+        List<ServerSentEvent<String>> fallback;
+        synchronized (this) {
+            if (done || winner != NONE) {
+                return;
+            }
+            if (index == PRIMARY) {
+                primaryError = error;
+            }
+            if (--running > 0) {
+                return;
+            }
+            done = true;
+            result = primaryError != null ? primaryError : error;
+            fallback = failedEvents;
+        }
+        if (fallback != null && result != primaryError) {
+            // 主流以错误事件正常结束，按其原样下发
+            fallback.forEach(sink::next);
+            sink.complete();
+            return;
+        }
+        sink.error(result);
+    }
+
+    /**
+     * 在锁内确定胜者，返回其缓存的事件
+     */
+    private List<ServerSentEvent<String>> commit(int index) {
+        winner = index;
+        List<ServerSentEvent<String>> buffered = pending[index];
+        pending[PRIMARY] = List.of();
+        pending[BACKUP] = List.of();
+        failedEvents = null;
+        return buffered;
+    }
+
+    /**
+     * 取消落败方与未触发的计时器
+     */
+    private void settle(int index) {
+        timer.dispose();
+        BaseSubscriber<ServerSentEvent<String>> loser;
+        boolean reportBackup;
+        synchronized (this) {
+            loser = subscribers[1 - index];
+            reportBackup = backupStarted;
+        }
+        if (loser != null) {
+            loser.dispose();
+        }
+        if (reportBackup) {
+            onBackupSettled.accept(index == BACKUP);
+        }
+    }
+
+    private void disposeAll() {
+        timer.dispose();
+        BaseSubscriber<ServerSentEvent<String>> primary;
+        BaseSubscriber<ServerSentEvent<String>> backup;
+        synchronized (this) {
+            disposed = true;
+            primary = subscribers[PRIMARY];
+            backup = subscribers[BACKUP];
+        }
+        if (primary != null) {
+            primary.dispose();
+        }
+        if (backup != null) {
+            backup.dispose();
+        }
+    }
+}
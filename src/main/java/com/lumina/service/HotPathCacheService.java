@@ -2,63 +2,178 @@ package com.lumina.service;
 
 import com.lumina.config.LuminaProperties;
 import com.lumina.dto.ModelGroupConfig;
+import com.lumina.entity.ApiKey;
 import com.lumina.entity.LlmModel;
+import com.lumina.util.RefreshingCache;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Timer;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-
-import java.util.concurrent.ConcurrentHashMap;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+/**
+ * 热路径缓存：分组配置、API Key 有效性与额度、模型价格
+ *
+ * 各缓存有容量上限并按访问频率淘汰，同一键并发未命中只执行一次加载，
+ * 热点条目在 TTL 到期前于后台预刷新；多实例之间通过 Redis 频道广播失效。
+ * 整体失效（ALL）后发布 {@link AllInvalidatedEvent}，由 {@link HotPathCacheWarmer} 批量重新预热。
+ */
 @Service
 public class HotPathCacheService {
 
     private static final Logger log = LoggerFactory.getLogger(HotPathCacheService.class);
     private static final String INVALIDATION_CHANNEL = "lumina:cache:invalidation";
 
-    private final ConcurrentHashMap<String, CacheEntry<ModelGroupConfig>> groupConfigCache = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, CacheEntry<Boolean>> apiKeyValidityCache = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, CacheEntry<LlmModel>> modelPriceCache = new ConcurrentHashMap<>();
+    private final RefreshingCache<ModelGroupConfig> groupConfigCache;
+    private final RefreshingCache<Boolean> apiKeyValidityCache;
+    private final RefreshingCache<ApiKey> apiKeyQuotaCache;
+    private final RefreshingCache<LlmModel> modelPriceCache;
 
-    private final long groupConfigTtlMs;
-    private final long apiKeyTtlMs;
-    private final long modelPriceTtlMs;
     private final MeterRegistry meterRegistry;
     private final StringRedisTemplate stringRedisTemplate;
+    private final ApiKeyBloomFilter apiKeyBloomFilter;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 某类缓存被整体失效
+     * @param cacheName group_config / api_key / model_price
+     */
+    public record AllInvalidatedEvent(String cacheName) {
+    }
 
-    public HotPathCacheService(LuminaProperties properties, MeterRegistry meterRegistry, StringRedisTemplate stringRedisTemplate) {
-        this.groupConfigTtlMs = properties.getCache().getGroupConfigTtlSeconds() * 1000L;
-        this.apiKeyTtlMs = properties.getCache().getApiKeyTtlSeconds() * 1000L;
-        this.modelPriceTtlMs = properties.getCache().getModelPriceTtlSeconds() * 1000L;
+    /**
+     * 某个节点从 request_logs 重建了 API Key 消费账本
+     * @param nodeId 发起重建的节点
+     */
+    public record SpendLedgerRebuiltEvent(String nodeId) {
+    }
+
+    public HotPathCacheService(LuminaProperties properties, MeterRegistry meterRegistry, StringRedisTemplate stringRedisTemplate,
+                               ApiKeyBloomFilter apiKeyBloomFilter, ApplicationEventPublisher eventPublisher) {
         this.meterRegistry = meterRegistry;
         this.stringRedisTemplate = stringRedisTemplate;
+        this.apiKeyBloomFilter = apiKeyBloomFilter;
+        this.eventPublisher = eventPublisher;
+        LuminaProperties.Cache cache = properties.getCache();
+        // 加载均为阻塞的数据库查询，预刷新放到 boundedElastic
+        Executor refreshExecutor = task -> Schedulers.boundedElastic().schedule(task);
+        this.groupConfigCache = createCache("group_config", cache.getGroupConfigMaxEntries(),
+                cache.getGroupConfigTtlSeconds(), cache.getRefreshAheadRatio(), refreshExecutor);
+        this.apiKeyValidityCache = createCache("api_key", cache.getApiKeyMaxEntries(),
+                cache.getApiKeyTtlSeconds(), cache.getRefreshAheadRatio(), refreshExecutor);
+        this.apiKeyQuotaCache = createCache("api_key_quota", cache.getApiKeyMaxEntries(),
+                cache.getApiKeyTtlSeconds(), cache.getRefreshAheadRatio(), refreshExecutor);
+        this.modelPriceCache = createCache("model_price", cache.getModelPriceMaxEntries(),
+                cache.getModelPriceTtlSeconds(), cache.getRefreshAheadRatio(), refreshExecutor);
+    }
+
+    private <T> RefreshingCache<T> createCache(String cacheName, int maxEntries, int ttlSeconds,
+                                               double refreshAheadRatio, Executor refreshExecutor) {
+        RefreshingCache<T> cache = new RefreshingCache<>(maxEntries, ttlSeconds * 1000L, refreshAheadRatio, refreshExecutor,
+                new RefreshingCache.Listener() {
+                    @Override
+                    public void onLookup(String result) {
+                        meterRegistry.counter("lumina_cache_lookups_total", "cache", cacheName, "result", result).increment();
+                    }
+
+                    @Override
+                    public void onLoad(String result, long durationNanos) {
+                        if ("loaded".equals(result) || "refreshed".equals(result) || "null".equals(result)) {
+                            meterRegistry.timer("lumina_cache_load_duration", "cache", cacheName)
+                                    .record(durationNanos, TimeUnit.NANOSECONDS);
+                        }
+                        meterRegistry.counter("lumina_cache_loads_total", "cache", cacheName, "result", result).increment();
+                    }
+                });
+        Gauge.builder("lumina_cache_size", cache, RefreshingCache::size)
+                .description("Number of entries held in the hot-path cache")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+        return cache;
     }
 
     public ModelGroupConfig getCachedGroupConfig(String key) {
-        return getIfPresent(groupConfigCache, key, "group_config");
+        return groupConfigCache.getIfPresent(key);
     }
 
     public ModelGroupConfig getGroupConfig(String key, Supplier<ModelGroupConfig> loader) {
-        return getOrLoad(groupConfigCache, key, groupConfigTtlMs, loader, "group_config");
+        return groupConfigCache.get(key, loader);
     }
 
     public Boolean getCachedApiKeyValidity(String apiKey) {
-        return getIfPresent(apiKeyValidityCache, apiKey, "api_key");
+        return apiKeyValidityCache.getIfPresent(apiKey);
     }
 
     public Boolean getApiKeyValidity(String apiKey, Supplier<Boolean> loader) {
-        return getOrLoad(apiKeyValidityCache, apiKey, apiKeyTtlMs, loader, "api_key");
+        return apiKeyValidityCache.get(apiKey, loader);
+    }
+
+    public ApiKey getCachedApiKeyQuota(String apiKey) {
+        return apiKeyQuotaCache.getIfPresent(apiKey);
+    }
+
+    public ApiKey getApiKeyQuota(String apiKey, Supplier<ApiKey> loader) {
+        return apiKeyQuotaCache.get(apiKey, loader);
     }
 
     public LlmModel getCachedModelPrice(String modelName) {
-        return getIfPresent(modelPriceCache, modelName, "model_price");
+        return modelPriceCache.getIfPresent(modelName);
     }
 
     public LlmModel getModelPrice(String modelName, Supplier<LlmModel> loader) {
-        return getOrLoad(modelPriceCache, modelName, modelPriceTtlMs, loader, "model_price");
+        return modelPriceCache.get(modelName, loader);
+    }
+
+    /**
+     * 用一次批量查询的结果预热分组配置
+     * @param bulkLoader 查询全部分组配置，键为分组名
+     * @param loader     单个分组的加载函数，用于预刷新
+     * @return 写入的条目数，查询期间发生失效时返回 -1
+     */
+    public int warmGroupConfigs(Supplier<Map<String, ModelGroupConfig>> bulkLoader, Function<String, ModelGroupConfig> loader) {
+        long generation = groupConfigCache.generation();
+        return groupConfigCache.putAll(bulkLoader.get(), loader, generation);
+    }
+
+    /**
+     * 用一次批量查询的结果同时预热 API Key 有效性与额度缓存
+     * @param bulkLoader     查询全部启用的 Key，键为 Key 值
+     * @param validity       由查询结果判断 Key 是否有效
+     * @param validityLoader 单个 Key 的有效性加载函数，用于预刷新
+     * @param quotaLoader    单个 Key 的额度加载函数，用于预刷新
+     * @return 写入额度缓存的条目数，查询期间发生失效时返回 -1
+     */
+    public int warmApiKeys(Supplier<Map<String, ApiKey>> bulkLoader, Predicate<ApiKey> validity,
+                           Function<String, Boolean> validityLoader, Function<String, ApiKey> quotaLoader) {
+        long validityGeneration = apiKeyValidityCache.generation();
+        long quotaGeneration = apiKeyQuotaCache.generation();
+        Map<String, ApiKey> keys = bulkLoader.get();
+        Map<String, Boolean> validities = new HashMap<>(keys.size() * 2);
+        keys.forEach((key, apiKey) -> validities.put(key, validity.test(apiKey)));
+        apiKeyValidityCache.putAll(validities, validityLoader, validityGeneration);
+        return apiKeyQuotaCache.putAll(keys, quotaLoader, quotaGeneration);
+    }
+
+    /**
+     * 用一次批量查询的结果预热模型价格
+     * @param bulkLoader 查询模型价格，键为模型名
+     * @param loader     单个模型的加载函数，用于预刷新
+     * @return 写入的条目数，查询期间发生失效时返回 -1
+     */
+    public int warmModelPrices(Supplier<Map<String, LlmModel>> bulkLoader, Function<String, LlmModel> loader) {
+        long generation = modelPriceCache.generation();
+        return modelPriceCache.putAll(bulkLoader.get(), loader, generation);
     }
 
     public void invalidateGroupConfig(String key) {
@@ -85,6 +200,10 @@ public class HotPathCacheService {
         stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, "model_price:ALL");
     }
 
+    public void notifySpendLedgerRebuilt(String nodeId) {
+        stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, "spend_ledger:" + nodeId);
+    }
+
     public void receiveInvalidationMessage(String message) {
         if (message == null) return;
         String[] parts = message.split(":", 2);
@@ -107,9 +226,12 @@ public class HotPathCacheService {
             case "api_key":
                 if ("ALL".equals(key)) {
                     apiKeyValidityCache.clear();
+                    apiKeyQuotaCache.clear();
                 } else {
                     apiKeyValidityCache.remove(key);
+                    apiKeyQuotaCache.remove(key);
                 }
+                apiKeyBloomFilter.onInvalidation(key);
                 meterRegistry.counter("lumina_cache_invalidations_total", "cache", "api_key").increment();
                 break;
             case "model_price":
@@ -120,53 +242,14 @@ public class HotPathCacheService {
                 }
                 meterRegistry.counter("lumina_cache_invalidations_total", "cache", "model_price").increment();
                 break;
+            case "spend_ledger":
+                eventPublisher.publishEvent(new SpendLedgerRebuiltEvent(key));
+                return;
+            default:
+                return;
         }
-    }
-
-    private <T> T getIfPresent(ConcurrentHashMap<String, CacheEntry<T>> cache, String key, String cacheName) {
-        CacheEntry<T> entry = cache.get(key);
-        if (entry == null) {
-            meterRegistry.counter("lumina_cache_lookups_total", "cache", cacheName, "result", "miss").increment();
-            return null;
-        }
-        if (entry.isExpired()) {
-            cache.remove(key, entry);
-            meterRegistry.counter("lumina_cache_lookups_total", "cache", cacheName, "result", "expired").increment();
-            return null;
-        }
-        meterRegistry.counter("lumina_cache_lookups_total", "cache", cacheName, "result", "hit").increment();
-        return entry.value();
-    }
-
-    private <T> T getOrLoad(
-            ConcurrentHashMap<String, CacheEntry<T>> cache,
-            String key,
-            long ttlMs,
-            Supplier<T> loader,
-            String cacheName
-    ) {
-        T cached = getIfPresent(cache, key, cacheName);
-        if (cached != null || cache.containsKey(key)) {
-            return cached;
-        }
-
-        Timer.Sample sample = Timer.start(meterRegistry);
-        T loaded = loader.get();
-        sample.stop(meterRegistry.timer("lumina_cache_load_duration", "cache", cacheName));
-        if (loaded == null) {
-            cache.remove(key);
-            meterRegistry.counter("lumina_cache_loads_total", "cache", cacheName, "result", "null").increment();
-            return null;
-        }
-
-        cache.put(key, new CacheEntry<>(loaded, System.currentTimeMillis() + ttlMs));
-        meterRegistry.counter("lumina_cache_loads_total", "cache", cacheName, "result", "loaded").increment();
-        return loaded;
-    }
-
-    private record CacheEntry<T>(T value, long expiresAt) {
-        boolean isExpired() {
-            return System.currentTimeMillis() >= expiresAt;
+        if ("ALL".equals(key)) {
+            eventPublisher.publishEvent(new AllInvalidatedEvent(cacheName));
         }
     }
 }
@@ -0,0 +1,110 @@
+package com.lumina.service;
+
+import com.lumina.config.LuminaProperties;
+import com.lumina.dto.ModelGroupConfig;
+import com.lumina.dto.ModelGroupConfigItem;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 热路径缓存预热
+ *
+ * 用少量批量查询加载全部分组配置、启用的 API Key 以及分组引用到的模型价格，避免发布后或整体失效后
+ * 每个分组、每个 Key 的首个请求都在请求路径上同步查库。
+ * - 启动时作为 ApplicationRunner 同步执行，完成后应用才进入就绪状态（readiness 为 ACCEPTING_TRAFFIC）
+ * - 收到整体失效（ALL）后在后台重新预热，同一类缓存的重复失效合并为一次
+ * 预热失败只记录日志，缓存仍按单键懒加载工作。
+ */
+@Slf4j
+@Component
+public class HotPathCacheWarmer implements ApplicationRunner {
+
+    private final GroupService groupService;
+    private final ApiKeyService apiKeyService;
+    private final LlmModelService llmModelService;
+    private final LuminaProperties luminaProperties;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // 最近一次预热分组时引用到的模型名，价格单独失效时据此重新预热
+    private volatile Set<String> modelNames = Set.of();
+
+    public HotPathCacheWarmer(GroupService groupService, ApiKeyService apiKeyService, LlmModelService llmModelService,
+                              LuminaProperties luminaProperties) {
+        this.groupService = groupService;
+        this.apiKeyService = apiKeyService;
+        this.llmModelService = llmModelService;
+        this.luminaProperties = luminaProperties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!luminaProperties.getCache().isWarmUpEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        warm("group_config");
+        warm("api_key");
+        log.info("热路径缓存预热完成，耗时 {}ms", System.currentTimeMillis() - start);
+    }
+
+    @EventListener
+    public void onAllInvalidated(HotPathCacheService.AllInvalidatedEvent event) {
+        String cacheName = event.cacheName();
+        if (!luminaProperties.getCache().isWarmUpEnabled() || !pending.add(cacheName)) {
+            return;
+        }
+        // 失效消息在 Redis 监听线程上处理，查库放到 boundedElastic
+        Schedulers.boundedElastic().schedule(() -> {
+            pending.remove(cacheName);
+            warm(cacheName);
+        });
+    }
+
+    private void warm(String cacheName) {
+        try {
+            switch (cacheName) {
+                case "group_config" -> {
+                    // 分组变化可能引入新模型，价格随分组一起预热
+                    List<ModelGroupConfig> configs = groupService.warmUpModelGroupConfigs();
+                    modelNames = referencedModelNames(configs);
+                    int prices = llmModelService.warmUpModelPrices(modelNames);
+                    log.debug("预热分组配置 {} 个，模型价格 {} 个", configs.size(), prices);
+                }
+                case "api_key" -> log.debug("预热 API Key {} 个", apiKeyService.warmUpApiKeys());
+                case "model_price" -> log.debug("预热模型价格 {} 个", llmModelService.warmUpModelPrices(modelNames));
+                default -> {
+                }
+            }
+        } catch (Exception e) {
+            log.error("预热缓存 {} 失败: {}", cacheName, e.getMessage());
+        }
+    }
+
+    /**
+     * 计费按分组内的实际模型名查询价格，模型列表接口按分组名查询，两者都预热
+     */
+    private static Set<String> referencedModelNames(List<ModelGroupConfig> configs) {
+        Set<String> names = new LinkedHashSet<>();
+        for (ModelGroupConfig config : configs) {
+            if (config.getName() != null) {
+                names.add(config.getName());
+            }
+            if (config.getItems() != null) {
+                for (ModelGroupConfigItem item : config.getItems()) {
+                    if (item.getModelName() != null) {
+                        names.add(item.getModelName());
+                    }
+                }
+            }
+        }
+        return names;
+    }
+}
@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.lumina.entity.LlmModel;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface LlmModelService extends IService<LlmModel> {
@@ -12,6 +13,13 @@ public interface LlmModelService extends IService<LlmModel> {
 
     LlmModel findLatestByModelName(String modelName);
 
+    /**
+     * 按模型名批量查询启用的价格记录并写入缓存
+     *
+     * @return 写入的条目数，查询期间发生失效时为 -1
+     */
+    int warmUpModelPrices(Collection<String> modelNames);
+
     /**
      * 设置某模型使用哪个上游供应商的价格进行计费
      * @param modelName 模型名称
@@ -0,0 +1,103 @@
+package com.lumina.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.LuminaProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 提示词前缀亲和键
+ *
+ * 上游的提示词缓存（Anthropic prompt caching、OpenAI cached tokens）只在相同前缀命中同一账号时生效。
+ * 按各协议的前缀字段顺序（tools、system / instructions / systemInstruction、messages / contents / input）
+ * 截取前 N 个字符计算哈希，SAPR 选路据此在一致性哈希环上优先选择同一 Provider。
+ * 前缀过短时上游不会缓存，不做亲和。
+ */
+@Component
+@RequiredArgsConstructor
+public class PromptAffinity {
+
+    // 按上游拼接提示词的顺序排列，缓存前缀只在完全一致时命中
+    private static final String[] PREFIX_FIELDS = {
+            "tools", "system", "instructions", "systemInstruction", "messages", "contents", "input"
+    };
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final LuminaProperties luminaProperties;
+
+    /**
+     * @return 亲和键，未开启或前缀过短时返回 0
+     */
+    public long key(ObjectNode params) {
+        LuminaProperties.PrefixAffinity affinity = luminaProperties.getFailover().getPrefixAffinity();
+        if (!affinity.isEnabled()) {
+            return 0;
+        }
+        int limit = affinity.getPrefixChars();
+        StringBuilder prefix = new StringBuilder(Math.min(limit, 4096));
+        for (String field : PREFIX_FIELDS) {
+            JsonNode node = params.get(field);
+            if (node != null) {
+                prefix.append(field).append(':');
+                append(prefix, node, limit);
+            }
+            if (prefix.length() >= limit) {
+                break;
+            }
+        }
+        if (prefix.length() < affinity.getMinPrefixChars()) {
+            return 0;
+        }
+        long hash = hash(prefix);
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * 按文档顺序追加字段名与标量值，达到上限即停止，不序列化整个消息数组
+     */
+    private static void append(StringBuilder prefix, JsonNode node, int limit) {
+        if (prefix.length() >= limit) {
+            return;
+        }
+        if (node.isObject()) {
+            for (Map.Entry<String, JsonNode> field : node.properties()) {
+                if (prefix.length() >= limit) {
+                    return;
+                }
+                prefix.append(field.getKey()).append('=');
+                append(prefix, field.getValue(), limit);
+            }
+        } else if (node.isArray()) {
+            for (JsonNode element : node) {
+                if (prefix.length() >= limit) {
+                    return;
+                }
+                append(prefix, element, limit);
+                prefix.append('\n');
+            }
+        } else {
+            String text = node.asText();
+            prefix.append(text, 0, Math.min(text.length(), limit - prefix.length()));
+        }
+    }
+
+    /**
+     * 64 位 FNV-1a，再做一次 finalizer 混合使高位分布均匀
+     */
+    static long hash(CharSequence value) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
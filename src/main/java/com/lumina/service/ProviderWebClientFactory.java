@@ -15,23 +15,26 @@ public class ProviderWebClientFactory {
     private static final int MAX_CLIENTS = 512;
 
     private final WebClient.Builder webClientBuilder;
+    private final UpstreamRateLimitFilter upstreamRateLimitFilter;
     private final ConcurrentHashMap<String, WebClient> clients = new ConcurrentHashMap<>();
 
-    public ProviderWebClientFactory(WebClient.Builder webClientBuilder) {
+    public ProviderWebClientFactory(WebClient.Builder webClientBuilder, UpstreamRateLimitFilter upstreamRateLimitFilter) {
         this.webClientBuilder = webClientBuilder;
+        this.upstreamRateLimitFilter = upstreamRateLimitFilter;
     }
 
     public WebClient getClient(ModelGroupConfigItem provider) {
-        ProtocolType protocolType = ProtocolType.fromCode(provider.getProviderType());
-        String key = provider.getBaseUrl() + "|" + provider.getApiKey() + "|" + protocolType.getCode();
+        String key = provider.getProviderKey().clientKey();
 
         if (clients.size() >= MAX_CLIENTS && !clients.containsKey(key)) {
             clients.clear();
         }
 
         return clients.computeIfAbsent(key, ignored -> {
+            ProtocolType protocolType = ProtocolType.fromCode(provider.getProviderType());
             WebClient.Builder builder = webClientBuilder.clone()
-                    .baseUrl(provider.getBaseUrl());
+                    .baseUrl(provider.getBaseUrl())
+                    .filter(upstreamRateLimitFilter);
 
             if (StringUtils.hasText(provider.getApiKey())) {
                 if (protocolType == ProtocolType.ANTHROPIC) {
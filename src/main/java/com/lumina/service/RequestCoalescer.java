@@ -0,0 +1,114 @@
+package com.lumina.service;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.LuminaProperties;
+import com.lumina.logging.LogWriter;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.metrics.RelayMetrics;
+import com.lumina.util.CanonicalJson;
+import com.lumina.util.SnowflakeIdGenerator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 非流式请求合并（single-flight）
+ *
+ * 同一 API Key、同一模型分组下请求体规范化后完全相同的并发请求共享一次上游调用：
+ * 首个请求（leader）照常转发并由执行器记录日志与费用，之后到达的请求（follower）
+ * 订阅同一结果，单独记录一条 coalesced 日志，费用与 Token 记为 0。
+ * 默认只合并 temperature 为 0 的请求，采样请求的重复调用通常是有意为之。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RequestCoalescer {
+
+    private final LuminaProperties luminaProperties;
+    private final RelayMetrics relayMetrics;
+    private final LogWriter logWriter;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+
+    private final ConcurrentHashMap<String, Mono<ObjectNode>> inflight = new ConcurrentHashMap<>();
+
+    /**
+     * 合并键
+     */
+    public record Key(String value, String requestType, String modelGroup, String apiKey) {
+    }
+
+    /**
+     * @param action Gemini 的模型动作（如 generateContent），其他协议为 null
+     * @return 未开启合并或请求不满足合并条件时返回 null
+     */
+    public Key key(String requestType, String action, String modelGroup, String apiKey, ObjectNode params) {
+        LuminaProperties.Coalescing coalescing = luminaProperties.getRelay().getCoalescing();
+        if (!coalescing.isEnabled()) {
+            return null;
+        }
+        if (coalescing.isDeterministicOnly() && !CanonicalJson.isDeterministic(params)) {
+            return null;
+        }
+        try {
+            return new Key(CanonicalJson.sha256(params, requestType, action, modelGroup, apiKey), requestType, modelGroup, apiKey);
+        } catch (IllegalStateException e) {
+            log.warn("计算请求合并键失败，不合并该请求: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 执行请求，存在相同的在途请求时共享其结果
+     * 所有订阅者都取消后才会取消上游调用
+     * @param onFollowerDone follower 结束时回调（成功、失败或取消），用于归还按请求预扣的资源
+     */
+    public Mono<ObjectNode> execute(Key key, Mono<ObjectNode> call, Runnable onFollowerDone) {
+        AtomicBoolean leader = new AtomicBoolean(false);
+        Mono<ObjectNode> shared = inflight.computeIfAbsent(key.value(), k -> {
+            leader.set(true);
+            // 在途期间键只映射到本次调用，结束时无条件移除不会误删后续请求；
+            // 在结果下发前移除，订阅者拿到结果后立即发起的相同请求会重新调用上游
+            return call.doOnTerminate(() -> inflight.remove(k))
+                    .doOnCancel(() -> inflight.remove(k))
+                    .share();
+        });
+        if (leader.get()) {
+            relayMetrics.recordCoalescing("leader");
+            return shared;
+        }
+
+        relayMetrics.recordCoalescing("follower");
+        log.debug("合并相同的在途请求: group={}", key.modelGroup());
+        RequestLogContext ctx = createFollowerContext(key);
+        return shared
+                .doOnSuccess(response -> recordFollower(ctx, response, null))
+                .doOnError(error -> recordFollower(ctx, null, error))
+                .doFinally(signal -> onFollowerDone.run());
+    }
+
+    private RequestLogContext createFollowerContext(Key key) {
+        RequestLogContext ctx = RequestLogContext.localResponse(
+                String.valueOf(snowflakeIdGenerator.nextId()), key.requestType(), key.modelGroup(), key.apiKey(), false);
+        ctx.setCoalesced(true);
+        return ctx;
+    }
+
+    /**
+     * follower 未产生上游调用，Token 与费用记为 0，不计入 API Key 账本
+     */
+    private void recordFollower(RequestLogContext ctx, ObjectNode response, Throwable error) {
+        ctx.setTotalTimeMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
+        if (error != null) {
+            ctx.setStatus("FAIL");
+            ctx.setErrorStage("HTTP");
+            ctx.setErrorMessage(error.getMessage());
+        } else if (response != null && response.hasNonNull("model")) {
+            ctx.setActualModel(response.get("model").asText());
+        }
+        logWriter.submit(ctx);
+    }
+}
@@ -0,0 +1,244 @@
+package com.lumina.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.LuminaProperties;
+import com.lumina.dto.ModelGroupConfig;
+import com.lumina.logging.LogWriter;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.util.CanonicalJson;
+import com.lumina.util.SnowflakeIdGenerator;
+import com.lumina.util.TinyLfuCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 确定性请求的精确匹配响应缓存
+ *
+ * 按模型分组、请求类型、是否流式与规范化后的请求体计算键，分组设置了缓存 TTL 时生效：
+ * - 内存层：有界 W-TinyLFU，按条目数限制，单条响应超过大小上限时不缓存
+ * - Redis 层（可选）：多实例共享，命中后回填内存层
+ * 非流式缓存响应体，流式缓存下发给客户端的 SSE 事件序列并原样重放。
+ * 命中时不经过 Failover 与执行器，单独记录一条 cache_hit 日志，费用与 Token 记为 0。
+ */
+@Slf4j
+@Component
+public class ResponseCache {
+
+    private static final String REDIS_KEY_PREFIX = "lumina:response-cache:";
+    // 不影响模型输出的字段，不参与缓存键
+    private static final Set<String> IGNORED_FIELDS = Set.of("stream_options", "user", "metadata");
+
+    private final LuminaProperties.ResponseCache properties;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final LogWriter logWriter;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TinyLfuCache<String, CachedResponse> memory;
+
+    public ResponseCache(LuminaProperties luminaProperties, ReactiveStringRedisTemplate redisTemplate, LogWriter logWriter,
+                         SnowflakeIdGenerator snowflakeIdGenerator, MeterRegistry meterRegistry) {
+        this.properties = luminaProperties.getResponseCache();
+        this.redisTemplate = redisTemplate;
+        this.logWriter = logWriter;
+        this.snowflakeIdGenerator = snowflakeIdGenerator;
+        this.meterRegistry = meterRegistry;
+        this.memory = new TinyLfuCache<>(properties.getMaxEntries());
+        Gauge.builder("lumina_response_cache_size", memory, TinyLfuCache::size)
+                .description("Number of responses held in the in-memory response cache")
+                .register(meterRegistry);
+    }
+
+    public record Key(String value, String requestType, String modelGroup, boolean stream, long ttlMs) {
+    }
+
+    /**
+     * 缓存的响应：非流式为响应体，流式为事件序列
+     */
+    public record CachedResponse(String body, List<CachedEvent> events, long expiresAt) {
+    }
+
+    public record CachedEvent(String event, String data) {
+    }
+
+    /**
+     * @param action Gemini 的模型动作（如 generateContent），其他协议为 null
+     * @return 分组未开启缓存或请求不满足缓存条件时返回 null
+     */
+    public Key key(String requestType, String action, ModelGroupConfig group, ObjectNode params, boolean stream) {
+        Integer ttlSeconds = group.getResponseCacheTtlSeconds();
+        if (ttlSeconds == null || ttlSeconds <= 0) {
+            return null;
+        }
+        if (properties.isDeterministicOnly() && !CanonicalJson.isDeterministic(params)) {
+            return null;
+        }
+        ObjectNode normalized = objectMapper.createObjectNode().setAll(params);
+        normalized.remove(IGNORED_FIELDS);
+        normalized.remove("stream");
+        try {
+            String hash = CanonicalJson.sha256(normalized, requestType, action, group.getName(), stream ? "stream" : "normal");
+            return new Key(hash, requestType, group.getName(), stream, ttlSeconds * 1000L);
+        } catch (IllegalStateException e) {
+            log.warn("计算响应缓存键失败，不缓存该请求: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 依次查找内存层与 Redis 层，未命中时返回空
+     */
+    public Mono<CachedResponse> lookup(Key key) {
+        long now = System.currentTimeMillis();
+        CachedResponse cached = memory.get(key.value(), now);
+        if (cached != null) {
+            recordLookup("memory", "hit");
+            return Mono.just(cached);
+        }
+        recordLookup("memory", "miss");
+        if (!properties.isRedisEnabled()) {
+            return Mono.empty();
+        }
+        return redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + key.value())
+                .flatMap(json -> Mono.justOrEmpty(deserialize(json)))
+                .filter(response -> response.expiresAt() > System.currentTimeMillis())
+                .doOnNext(response -> {
+                    memory.put(key.value(), response, response.expiresAt());
+                    recordLookup("redis", "hit");
+                })
+                .switchIfEmpty(Mono.fromRunnable(() -> recordLookup("redis", "miss")))
+                .onErrorResume(e -> {
+                    log.warn("读取 Redis 响应缓存失败: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 非流式调用成功后写入缓存
+     */
+    public Mono<ObjectNode> cacheNormal(Key key, Mono<ObjectNode> call) {
+        return call.doOnSuccess(response -> {
+            if (response != null) {
+                String body = response.toString();
+                store(key, new CachedResponse(body, null, System.currentTimeMillis() + key.ttlMs()), body.length());
+            }
+        });
+    }
+
+    /**
+     * 流式调用正常结束后写入缓存。超过大小上限、中途失败、包含错误事件（上游在 200 流中下发的错误）
+     * 或没有结束事件（[DONE]、message_stop 等）时不缓存
+     */
+    public Flux<ServerSentEvent<String>> cacheStream(Key key, Flux<ServerSentEvent<String>> stream) {
+        List<CachedEvent> events = new ArrayList<>();
+        long[] size = {0};
+        boolean[] failed = {false};
+        boolean[] terminated = {false};
+        return stream
+                .doOnNext(event -> {
+                    if (event.data() == null || size[0] < 0 || failed[0]) {
+                        return;
+                    }
+                    if (StreamEvents.isError(event)) {
+                        failed[0] = true;
+                        events.clear();
+                        return;
+                    }
+                    terminated[0] |= StreamEvents.isTerminal(event);
+                    size[0] += event.data().length();
+                    if (size[0] > properties.getMaxEntryBytes()) {
+                        size[0] = -1;
+                        events.clear();
+                        return;
+                    }
+                    events.add(new CachedEvent(event.event(), event.data()));
+                })
+                .doOnComplete(() -> {
+                    if (failed[0]) {
+                        recordStore("error_event");
+                    } else if (!terminated[0]) {
+                        recordStore("incomplete");
+                    } else if (size[0] >= 0) {
+                        store(key, new CachedResponse(null, List.copyOf(events), System.currentTimeMillis() + key.ttlMs()), size[0]);
+                    } else {
+                        recordStore("too_large");
+                    }
+                });
+    }
+
+    public Mono<ObjectNode> replayNormal(Key key, CachedResponse cached, String apiKey) {
+        return Mono.fromCallable(() -> {
+            ObjectNode response = (ObjectNode) objectMapper.readTree(cached.body());
+            recordHit(key, apiKey, response.path("model").asText(null));
+            return response;
+        });
+    }
+
+    public Flux<ServerSentEvent<String>> replayStream(Key key, CachedResponse cached, String apiKey) {
+        return Flux.fromIterable(cached.events())
+                .map(event -> ServerSentEvent.<String>builder()
+                        .event(event.event())
+                        .data(event.data())
+                        .build())
+                .doOnComplete(() -> recordHit(key, apiKey, null));
+    }
+
+    private void store(Key key, CachedResponse response, long size) {
+        if (size > properties.getMaxEntryBytes()) {
+            recordStore("too_large");
+            return;
+        }
+        memory.put(key.value(), response, response.expiresAt());
+        recordStore("stored");
+        if (!properties.isRedisEnabled()) {
+            return;
+        }
+        try {
+            String json = objectMapper.writeValueAsString(response);
+            redisTemplate.opsForValue()
+                    .set(REDIS_KEY_PREFIX + key.value(), json, Duration.ofMillis(key.ttlMs()))
+                    .subscribe(null, e -> log.warn("写入 Redis 响应缓存失败: {}", e.getMessage()));
+        } catch (JsonProcessingException e) {
+            log.warn("序列化响应缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private CachedResponse deserialize(String json) {
+        try {
+            return objectMapper.readValue(json, CachedResponse.class);
+        } catch (JsonProcessingException e) {
+            log.warn("解析 Redis 响应缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void recordHit(Key key, String apiKey, String actualModel) {
+        RequestLogContext ctx = RequestLogContext.localResponse(
+                String.valueOf(snowflakeIdGenerator.nextId()), key.requestType(), key.modelGroup(), apiKey, key.stream());
+        ctx.setCacheHit(true);
+        ctx.setActualModel(actualModel);
+        ctx.setTotalTimeMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
+        logWriter.submit(ctx);
+    }
+
+    private void recordLookup(String tier, String result) {
+        meterRegistry.counter("lumina_response_cache_lookups_total", "tier", tier, "result", result).increment();
+    }
+
+    private void recordStore(String result) {
+        meterRegistry.counter("lumina_response_cache_stores_total", "result", result).increment();
+    }
+}
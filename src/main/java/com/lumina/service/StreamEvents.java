@@ -0,0 +1,139 @@
+package com.lumina.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.codec.ServerSentEvent;
+
+/**
+ * 按事件结构识别 SSE 事件的入站协议（OpenAI Chat / Responses、Anthropic、Gemini），
+ * 判断是否为模型输出、错误事件或流的结束事件
+ */
+final class StreamEvents {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    enum Output {
+        CONTENT, ERROR, OTHER
+    }
+
+    private StreamEvents() {
+    }
+
+    /**
+     * 解析事件 JSON，判断是否为模型输出或错误
+     */
+    static Output classify(ServerSentEvent<String> event) {
+        if ("error".equals(event.event())) {
+            return Output.ERROR;
+        }
+        JsonNode node = parse(event.data());
+        if (node == null) {
+            return Output.OTHER;
+        }
+        String type = node.path("type").asText();
+        if (node.has("error") || "error".equals(type) || "response.failed".equals(type)) {
+            return Output.ERROR;
+        }
+        JsonNode choices = node.get("choices");
+        if (choices != null) {
+            return isOpenAiChatOutput(choices) ? Output.CONTENT : Output.OTHER;
+        }
+        JsonNode candidates = node.get("candidates");
+        if (candidates != null) {
+            return isGeminiOutput(candidates) ? Output.CONTENT : Output.OTHER;
+        }
+        return switch (type) {
+            // Anthropic Messages：message_start、content_block_start、ping 只是开头事件
+            case "content_block_delta", "message_delta", "message_stop" -> Output.CONTENT;
+            // OpenAI Responses：各类 *.delta 增量或响应结束
+            case "response.completed", "response.incomplete" -> Output.CONTENT;
+            default -> type.startsWith("response.") && type.endsWith(".delta") ? Output.CONTENT : Output.OTHER;
+        };
+    }
+
+    /**
+     * 是否为错误事件，不含错误关键字的事件不解析
+     */
+    static boolean isError(ServerSentEvent<String> event) {
+        if ("error".equals(event.event())) {
+            return true;
+        }
+        String data = event.data();
+        if (data == null || !data.contains("error") && !data.contains("response.failed")) {
+            return false;
+        }
+        return classify(event) == Output.ERROR;
+    }
+
+    /**
+     * 是否为表示响应完整结束的事件：[DONE]、message_stop、response.completed 或带 finishReason 的 Gemini 片段
+     */
+    static boolean isTerminal(ServerSentEvent<String> event) {
+        String data = event.data();
+        if (data == null) {
+            return false;
+        }
+        if ("[DONE]".equals(data.trim())) {
+            return true;
+        }
+        if (!data.contains("message_stop") && !data.contains("response.completed") && !data.contains("finishReason")) {
+            return false;
+        }
+        JsonNode node = parse(data);
+        if (node == null) {
+            return false;
+        }
+        String type = node.path("type").asText();
+        if ("message_stop".equals(type) || "response.completed".equals(type)) {
+            return true;
+        }
+        JsonNode candidates = node.get("candidates");
+        return candidates != null && candidates.isArray() && !candidates.isEmpty()
+                && candidates.get(0).hasNonNull("finishReason");
+    }
+
+    private static JsonNode parse(String data) {
+        if (data == null || data.isBlank() || data.charAt(0) != '{') {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readTree(data);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 与 {@link StreamResumption} 一致：非空文本增量、工具调用或 finish_reason 视为输出，只带 role 的片段不算
+     */
+    private static boolean isOpenAiChatOutput(JsonNode choices) {
+        if (!choices.isArray() || choices.isEmpty()) {
+            return false;
+        }
+        JsonNode choice = choices.get(0);
+        JsonNode delta = choice.path("delta");
+        return hasText(delta.get("content")) || hasText(delta.get("reasoning_content"))
+                || delta.has("tool_calls") || delta.has("function_call")
+                || choice.hasNonNull("finish_reason");
+    }
+
+    private static boolean isGeminiOutput(JsonNode candidates) {
+        if (!candidates.isArray() || candidates.isEmpty()) {
+            return false;
+        }
+        JsonNode candidate = candidates.get(0);
+        if (candidate.hasNonNull("finishReason")) {
+            return true;
+        }
+        for (JsonNode part : candidate.path("content").path("parts")) {
+            if (hasText(part.get("text")) || part.has("functionCall")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasText(JsonNode node) {
+        return node != null && node.isTextual() && !node.textValue().isEmpty();
+    }
+}
@@ -0,0 +1,260 @@
+package com.lumina.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.converter.ProtocolType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
+
+import java.io.IOException;
+
+/**
+ * 流式续传状态
+ *
+ * 累积已下发给客户端的助手文本，流式传输中途失败时，将其作为 assistant 预填充消息
+ * 向下一个 Provider 发起续写请求，并过滤续写流的开头事件（角色片段、message_start 等），
+ * 使客户端看到的仍是一条连续的流。仅支持 OpenAI Chat 与 Anthropic Messages 入站协议，
+ * 出现工具调用、非文本内容块或内容已结束时不再续传。
+ */
+@Slf4j
+public class StreamResumption {
+
+    private final ObjectMapper objectMapper;
+    private final boolean anthropic;
+    private final StringBuilder text = new StringBuilder();
+
+    private boolean resumable = true;
+    // 已发生过续传，后续请求都需携带预填充
+    private boolean resumed;
+    // 续写流尚未产生内容，其开头事件需要过滤
+    private boolean continuing;
+
+    private StreamResumption(ObjectMapper objectMapper, boolean anthropic) {
+        this.objectMapper = objectMapper;
+        this.anthropic = anthropic;
+    }
+
+    /**
+     * @return 请求不支持续传（协议不支持、多候选或客户端已自带预填充）时返回 null
+     */
+    public static StreamResumption create(ProtocolType inboundType, ObjectNode params, ObjectMapper objectMapper) {
+        if (inboundType != ProtocolType.OPENAI_CHAT && inboundType != ProtocolType.ANTHROPIC) {
+            return null;
+        }
+        if (params.path("n").asInt(1) > 1) {
+            return null;
+        }
+        JsonNode messages = params.get("messages");
+        if (messages == null || !messages.isArray() || messages.isEmpty()) {
+            return null;
+        }
+        if ("assistant".equals(messages.get(messages.size() - 1).path("role").asText())) {
+            return null;
+        }
+        return new StreamResumption(objectMapper, inboundType == ProtocolType.ANTHROPIC);
+    }
+
+    /**
+     * 已发生续传时，在入站协议的请求体末尾追加 assistant 预填充消息
+     * @param requestParams 本次发往上游的请求体副本，messages 可能与入参共享，这里替换为新数组
+     */
+    public ObjectNode applyPrefill(ObjectNode requestParams) {
+        if (!resumed) {
+            return requestParams;
+        }
+        // Anthropic 不接受以空白结尾的预填充
+        String prefill = anthropic ? text.toString().stripTrailing() : text.toString();
+        ArrayNode messages = objectMapper.createArrayNode().addAll((ArrayNode) requestParams.get("messages"));
+        messages.addObject()
+                .put("role", "assistant")
+                .put("content", prefill);
+        requestParams.set("messages", messages);
+        return requestParams;
+    }
+
+    /**
+     * 已下发文本内容且内容未结束、未出现工具调用
+     */
+    boolean isResumable() {
+        return resumable && !text.isEmpty();
+    }
+
+    /**
+     * 进入续传：后续请求携带预填充，续写流的开头事件被过滤
+     */
+    void beginContinuation() {
+        resumed = true;
+        continuing = true;
+    }
+
+    /**
+     * 续写流尚未产生内容，此时失败仍需补发中断提示
+     */
+    boolean isContinuing() {
+        return continuing;
+    }
+
+    /**
+     * 观察一个下发给客户端的事件
+     * @return false 表示该事件为续写流的重复开头，应丢弃
+     */
+    boolean onEvent(ServerSentEvent<String> event) {
+        String data = event.data();
+        if (data == null || data.isEmpty() || !resumable && !continuing) {
+            return true;
+        }
+        if ("[DONE]".equals(data)) {
+            resumable = false;
+            return true;
+        }
+        try (JsonParser parser = objectMapper.getFactory().createParser(data)) {
+            // 每个事件都要观察，只用流式解析取出需要的字段，不构建完整的树
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return true;
+            }
+            return anthropic ? onAnthropicEvent(parser) : onOpenAiChunk(parser);
+        } catch (IOException e) {
+            log.debug("续传解析流式事件失败，忽略该事件: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    private boolean onOpenAiChunk(JsonParser parser) throws IOException {
+        String content = null;
+        boolean hasChoice = false;
+        boolean finished = false;
+        boolean toolCall = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (!"choices".equals(field) || token != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            // 只看 choices[0]
+            token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY) {
+                continue;
+            }
+            if (token == JsonToken.START_OBJECT) {
+                hasChoice = true;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String choiceField = parser.currentName();
+                    token = parser.nextToken();
+                    if ("finish_reason".equals(choiceField)) {
+                        finished = token != JsonToken.VALUE_NULL;
+                    } else if ("delta".equals(choiceField) && token == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String deltaField = parser.currentName();
+                            token = parser.nextToken();
+                            if ("content".equals(deltaField) && token == JsonToken.VALUE_STRING) {
+                                content = parser.getText();
+                            } else if ("tool_calls".equals(deltaField) || "function_call".equals(deltaField)) {
+                                toolCall = true;
+                            }
+                            parser.skipChildren();
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                parser.skipChildren();
+            }
+        }
+        if (!hasChoice) {
+            return true;
+        }
+
+        if (continuing) {
+            // 续写流开头只带 role 的片段
+            if ((content == null || content.isEmpty()) && !finished && !toolCall) {
+                return false;
+            }
+            continuing = false;
+        }
+        if (content != null) {
+            text.append(content);
+        }
+        if (finished || toolCall) {
+            resumable = false;
+        }
+        return true;
+    }
+
+    private boolean onAnthropicEvent(JsonParser parser) throws IOException {
+        String type = null;
+        int index = 0;
+        String blockType = null;
+        String deltaType = null;
+        String deltaText = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "type" -> type = parser.getValueAsString();
+                case "index" -> index = parser.getValueAsInt();
+                case "content_block", "delta" -> {
+                    if (token != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        if ("type".equals(name)) {
+                            if ("delta".equals(field)) {
+                                deltaType = parser.getValueAsString();
+                            } else {
+                                blockType = parser.getValueAsString();
+                            }
+                        } else if ("text".equals(name) && "delta".equals(field)) {
+                            deltaText = parser.getValueAsString();
+                        }
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        switch (type == null ? "" : type) {
+            case "message_start" -> {
+                return !continuing;
+            }
+            case "content_block_start" -> {
+                // 只续传位于下标 0 的单个文本块
+                boolean textBlock = index == 0 && "text".equals(blockType);
+                if (continuing && textBlock) {
+                    return false;
+                }
+                if (!textBlock) {
+                    resumable = false;
+                    continuing = false;
+                }
+            }
+            case "content_block_delta" -> {
+                if (!"text_delta".equals(deltaType)) {
+                    resumable = false;
+                } else {
+                    text.append(deltaText == null ? "" : deltaText);
+                }
+                continuing = false;
+            }
+            case "content_block_stop", "message_delta", "message_stop" -> {
+                resumable = false;
+                continuing = false;
+            }
+            default -> {
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+package com.lumina.service;
+
+import com.lumina.config.LuminaProperties;
+import com.lumina.state.UpstreamRateLimit;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * 上游限流响应头采集
+ *
+ * 挂在所有 Provider WebClient 上。WebClient 按 baseUrl + apiKey 复用，无法区分模型，
+ * 因此由 FailoverService 把本次调用对应的 UpstreamRateLimit 写入 Reactor Context，这里按 Context 回写。
+ */
+@Component
+@RequiredArgsConstructor
+public class UpstreamRateLimitFilter implements ExchangeFilterFunction {
+
+    static final String CONTEXT_KEY = UpstreamRateLimit.class.getName();
+
+    private final LuminaProperties luminaProperties;
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> {
+            UpstreamRateLimit rateLimit = context.getOrDefault(CONTEXT_KEY, null);
+            if (rateLimit == null) {
+                return next.exchange(request);
+            }
+            return next.exchange(request).doOnNext(response -> {
+                LuminaProperties.Failover failover = luminaProperties.getFailover();
+                rateLimit.onResponse(
+                        response.statusCode().value(),
+                        response.headers().asHttpHeaders(),
+                        System.currentTimeMillis(),
+                        failover.getRateLimitCooldownMs(),
+                        failover.getRateLimitMaxCooldownMs()
+                );
+            });
+        });
+    }
+}
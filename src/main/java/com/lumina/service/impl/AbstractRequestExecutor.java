@@ -1,6 +1,7 @@
 package com.lumina.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -9,9 +10,16 @@ import com.lumina.entity.LlmModel;
 import com.lumina.config.LuminaProperties;
 import com.lumina.logging.LogWriter;
 import com.lumina.logging.RequestLogContext;
+import com.lumina.logging.ResponseCapture;
+import com.lumina.logging.UsageExtractor;
+import com.lumina.metrics.RelayMetrics;
+import com.lumina.ratelimit.TokenRateLimiter;
 import com.lumina.service.LlmModelService;
 import com.lumina.service.LlmRequestExecutor;
 import com.lumina.service.ProviderWebClientFactory;
+import com.lumina.state.ProviderRuntimeState;
+import com.lumina.state.ProviderStateRegistry;
+import com.lumina.stats.ApiKeySpendLedger;
 import com.lumina.util.SnowflakeIdGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +32,7 @@ import java.math.RoundingMode;
 import java.time.Duration;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 @Slf4j
 public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
@@ -43,6 +52,18 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
     @Autowired
     protected LuminaProperties luminaProperties;
 
+    @Autowired
+    protected ApiKeySpendLedger apiKeySpendLedger;
+
+    @Autowired
+    protected TokenRateLimiter tokenRateLimiter;
+
+    @Autowired
+    protected ProviderStateRegistry providerStateRegistry;
+
+    @Autowired
+    protected RelayMetrics relayMetrics;
+
     protected final ObjectMapper objectMapper = new ObjectMapper();
 
     protected RequestLogContext createLogContext(ObjectNode request, ModelGroupConfigItem provider, String type, boolean stream) {
@@ -54,82 +75,57 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
         ctx.setId(String.valueOf(snowflakeIdGenerator.nextId()));
         ctx.setProviderId(provider.getProviderId());
         ctx.setProviderName(provider.getProviderName());
+        ctx.setRuntimeProviderId(provider.getProviderKey().id());
         ctx.setRequestId(UUID.randomUUID().toString());
         ctx.setStartNano(System.nanoTime());
         ctx.setRequestTime(System.currentTimeMillis() / 1000);
         ctx.setRequestType(type);
         ctx.setStream(stream);
         ctx.setRequestModel(provider.getModelName());
-        ctx.setRequestContent(request.toPrettyString());
+        ctx.setRequestBody(serialize(request));
+        ctx.setPayloadSampled(logWriter.samplePayload());
+        if (stream && ctx.isPayloadSampled()) {
+            ctx.setResponseCapture(ResponseCapture.create(luminaProperties.getLogging().getResponseCaptureMaxChars()));
+        }
         if (queryParams != null) {
-            ctx.setApiKey(queryParams.get("_lumina_api_key"));
+            ctx.setApiKey(queryParams.get(INTERNAL_API_KEY_PARAM));
+            ctx.setModelGroup(queryParams.get(INTERNAL_MODEL_GROUP_PARAM));
+            String estimatedTokens = queryParams.get(INTERNAL_ESTIMATED_TOKENS_PARAM);
+            if (estimatedTokens != null) {
+                ctx.setEstimatedTokens(Long.parseLong(estimatedTokens));
+            }
         }
         return ctx;
     }
 
+    private byte[] serialize(ObjectNode request) {
+        try {
+            return objectMapper.writeValueAsBytes(request);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("请求体序列化失败", e);
+        }
+    }
+
+    // 以 _lumina_ 开头的参数仅在网关内部传递，不转发给上游
+    protected static final String INTERNAL_PARAM_PREFIX = "_lumina_";
     protected static final String INTERNAL_API_KEY_PARAM = "_lumina_api_key";
+    protected static final String INTERNAL_MODEL_GROUP_PARAM = "_lumina_model_group";
+    protected static final String INTERNAL_ESTIMATED_TOKENS_PARAM = "_lumina_estimated_tokens";
 
     protected void applyQueryParams(org.springframework.web.util.UriBuilder uriBuilder, Map<String, String> queryParams) {
         queryParams.forEach((k, v) -> {
-            if (!INTERNAL_API_KEY_PARAM.equals(k)) {
+            if (!k.startsWith(INTERNAL_PARAM_PREFIX)) {
                 uriBuilder.queryParam(k, v);
             }
         });
     }
 
     protected void handleUsage(RequestLogContext ctx, JsonNode node) {
-        if (node == null) return;
-
-        // 提取 model 字段作为 actualModel
-        if (!node.findValuesAsText("model").isEmpty()) {
-            ctx.setActualModel(node.findValuesAsText("model").get(0));
-        } else if (!node.findValuesAsText("modelVersion").isEmpty()) {
-            ctx.setActualModel(node.findValuesAsText("modelVersion").get(0));
-        }
-
-        // 1. 处理标准的 "usage" 字段 (OpenAI, Anthropic message_delta, Anthropic normal)
-        if (node.has("usage")) {
-            parseUsageNode(ctx, node.get("usage"));
-        }
-
-        // 2. 处理 Anthropic message_start 中的 nested usage
-        if (node.has("message") && node.get("message").has("usage")) {
-            parseUsageNode(ctx, node.get("message").get("usage"));
-        }
-
-        // 3. 处理 Gemini 的 "usageMetadata" 字段
-        if (node.has("usageMetadata")) {
-            JsonNode usage = node.get("usageMetadata");
-            if (usage.has("promptTokenCount") && (ctx.getInputTokens() == null || ctx.getInputTokens() == 0)) {
-                ctx.setInputTokens(usage.get("promptTokenCount").asInt());
-            }
-            if (usage.has("candidatesTokenCount") && (ctx.getOutputTokens() == null || ctx.getOutputTokens() == 0)) {
-                ctx.setOutputTokens(usage.get("candidatesTokenCount").asInt());
-            }
-        }
-
-        // 4. 处理 OpenAI /v1/responses 中的 nested usage
-        if (node.has("response") && node.get("response").has("usage")) {
-            parseUsageNode(ctx, node.get("response").get("usage"));
-        }
+        UsageExtractor.extract(ctx, node);
     }
 
-    private void parseUsageNode(RequestLogContext ctx, JsonNode usage) {
-        // 兼容旧版 OpenAI 字段
-        if (usage.has("prompt_tokens") && (ctx.getInputTokens() == null || ctx.getInputTokens() == 0)) {
-            ctx.setInputTokens(usage.get("prompt_tokens").asInt());
-        }
-        if (usage.has("completion_tokens") && (ctx.getOutputTokens() == null || ctx.getOutputTokens() == 0)) {
-            ctx.setOutputTokens(usage.get("completion_tokens").asInt());
-        }
-
-        // 兼容新版 /responses 接口字段 或 Anthropic 字段
-        if (usage.has("input_tokens") && (ctx.getInputTokens() == null || ctx.getInputTokens() == 0)) {
-            ctx.setInputTokens(usage.get("input_tokens").asInt());
-        }
-        if (usage.has("output_tokens") && (ctx.getOutputTokens() == null || ctx.getOutputTokens() == 0)) {
-            ctx.setOutputTokens(usage.get("output_tokens").asInt());
-        }
+    protected void handleUsage(RequestLogContext ctx, String data) {
+        UsageExtractor.extract(ctx, data);
     }
 
     protected void calculateCost(RequestLogContext ctx) {
@@ -174,16 +170,66 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
         ctx.setErrorStage("HTTP");
         ctx.setErrorMessage(err.getMessage());
         ctx.setTotalTimeMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
+        ctx.getResponseCapture().discard();
+        // 中途失败时上游已按产出计费，按已捕获的用量记账，Failover 续写前失败的那次尝试同样计入
+        if (ctx.getInputTokens() != null || ctx.getOutputTokens() != null) {
+            calculateCost(ctx);
+            apiKeySpendLedger.charge(ctx.getApiKey(), ctx.getCost());
+        }
         logWriter.submit(ctx);
     }
 
-    protected void recordSuccess(RequestLogContext ctx, String content) {
+    /**
+     * @param content 响应内容，仅在抽样保留载荷时才会生成
+     */
+    protected void recordSuccess(RequestLogContext ctx, Supplier<String> content) {
         ctx.setTotalTimeMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
-        ctx.setResponseContent(content);
+        if (ctx.isPayloadSampled()) {
+            ctx.setResponseContent(content.get());
+        }
         calculateCost(ctx);
+        apiKeySpendLedger.charge(ctx.getApiKey(), ctx.getCost());
+        trueUpTokenRateLimit(ctx);
+        recordOutputThroughput(ctx);
+        if (ctx.getInputTokens() != null) {
+            relayMetrics.recordPromptTokens(ctx.getProviderName(), ctx.getInputTokens(),
+                    ctx.getCacheReadTokens() != null ? ctx.getCacheReadTokens() : 0);
+        }
         logWriter.submit(ctx);
     }
 
+    /**
+     * 按实际输出 Token 数与生成耗时更新 Provider 吞吐分布，供延迟感知选路预估完成时间
+     */
+    private void recordOutputThroughput(RequestLogContext ctx) {
+        if (ctx.getOutputTokens() == null || ctx.getRuntimeProviderId() == null) {
+            return;
+        }
+        ProviderRuntimeState state = providerStateRegistry.getIfExists(ctx.getRuntimeProviderId());
+        if (state == null) {
+            return;
+        }
+        long generationMs = ctx.getTotalTimeMs();
+        if (Boolean.TRUE.equals(ctx.getStream()) && ctx.getFirstTokenMs() != null) {
+            generationMs -= ctx.getFirstTokenMs();
+        }
+        state.recordOutputThroughput(ctx.getOutputTokens(), generationMs);
+    }
+
+    /**
+     * 发起前按预估输入 Token 扣减了 TPM，这里按实际用量补扣或退还差额；上游未返回用量时保留预估值
+     */
+    private void trueUpTokenRateLimit(RequestLogContext ctx) {
+        if (ctx.getEstimatedTokens() == null) {
+            return;
+        }
+        long actual = (ctx.getInputTokens() != null ? ctx.getInputTokens() : 0)
+                + (ctx.getOutputTokens() != null ? ctx.getOutputTokens() : 0);
+        if (actual > 0) {
+            tokenRateLimiter.adjust(ctx.getApiKey(), ctx.getModelGroup(), actual - ctx.getEstimatedTokens());
+        }
+    }
+
     protected WebClient createWebClient(ModelGroupConfigItem provider) {
         return providerWebClientFactory.getClient(provider);
     }
@@ -192,7 +238,7 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
         if (data == null) {
             return;
         }
-        ctx.getResponseBuffer().append(data);
+        ctx.getResponseCapture().append(data);
     }
 
     /**
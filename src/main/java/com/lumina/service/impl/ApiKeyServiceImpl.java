@@ -3,11 +3,11 @@ package com.lumina.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.lumina.dto.ApiKeyUsageDto;
 import com.lumina.entity.ApiKey;
 import com.lumina.mapper.ApiKeyMapper;
 import com.lumina.service.ApiKeyService;
 import com.lumina.service.HotPathCacheService;
+import com.lumina.stats.ApiKeySpendLedger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
@@ -17,7 +17,10 @@ import reactor.core.scheduler.Schedulers;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.UUID;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
 
 @Service
 public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> implements ApiKeyService {
@@ -25,6 +28,9 @@ public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> impleme
     @Autowired
     private HotPathCacheService hotPathCacheService;
 
+    @Autowired
+    private ApiKeySpendLedger apiKeySpendLedger;
+
     @Override
     public ApiKey generateApiKey(String name) {
         ApiKey apiKey = new ApiKey();
@@ -45,19 +51,36 @@ public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> impleme
             return Mono.just(cached);
         }
 
-        return Mono.fromCallable(() -> hotPathCacheService.getApiKeyValidity(apiKey, () -> {
-            LambdaQueryWrapper<ApiKey> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(ApiKey::getApiKey, apiKey)
-                    .eq(ApiKey::getIsEnabled, true);
-            ApiKey key = this.getOne(queryWrapper);
-            if (key == null) {
-                return false;
-            }
-            if (key.getExpiredAt() != null && key.getExpiredAt() > 0) {
-                return System.currentTimeMillis() / 1000 < key.getExpiredAt();
-            }
-            return true;
-        })).subscribeOn(Schedulers.boundedElastic());
+        return Mono.fromCallable(() -> hotPathCacheService.getApiKeyValidity(apiKey, () -> selectValidity(apiKey)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public int warmUpApiKeys() {
+        return hotPathCacheService.warmApiKeys(() -> this.list(new LambdaQueryWrapper<ApiKey>()
+                                .select(ApiKey::getApiKey, ApiKey::getExpiredAt, ApiKey::getMaxAmount,
+                                        ApiKey::getRateLimitRpm, ApiKey::getRateLimitTpm)
+                                .eq(ApiKey::getIsEnabled, true))
+                        .stream()
+                        .filter(key -> key.getApiKey() != null)
+                        .collect(Collectors.toMap(ApiKey::getApiKey, key -> key,
+                                (existing, replacement) -> existing, LinkedHashMap::new)),
+                this::isUnexpired, this::selectValidity, this::selectQuota);
+    }
+
+    private Boolean selectValidity(String apiKey) {
+        LambdaQueryWrapper<ApiKey> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ApiKey::getApiKey, apiKey)
+                .eq(ApiKey::getIsEnabled, true);
+        ApiKey key = this.getOne(queryWrapper);
+        return key != null && isUnexpired(key);
+    }
+
+    private boolean isUnexpired(ApiKey key) {
+        if (key.getExpiredAt() != null && key.getExpiredAt() > 0) {
+            return System.currentTimeMillis() / 1000 < key.getExpiredAt();
+        }
+        return true;
     }
 
     @Override
@@ -66,22 +89,76 @@ public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> impleme
             return Mono.just(false);
         }
 
+        ApiKey cached = hotPathCacheService.getCachedApiKeyQuota(apiKey);
+        if (cached != null) {
+            return Mono.just(isWithinQuota(cached));
+        }
+
+        return Mono.fromCallable(() -> {
+            ApiKey key = loadApiKeyQuota(apiKey);
+            return key != null && isWithinQuota(key);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Long> reserveQuota(String apiKey, LongSupplier estimator) {
+        if (!StringUtils.hasText(apiKey)) {
+            return Mono.just(0L);
+        }
+
+        ApiKey cached = hotPathCacheService.getCachedApiKeyQuota(apiKey);
+        if (cached != null && cached.getMaxAmount() == null) {
+            return Mono.just(0L);
+        }
+        if (cached != null) {
+            // 预估需要查模型价格并对请求体分词，不在事件循环线程上执行
+            return Mono.fromCallable(() -> reserve(cached, estimator)).subscribeOn(Schedulers.boundedElastic());
+        }
+
         return Mono.fromCallable(() -> {
-            ApiKeyUsageDto usage = baseMapper.selectApiKeyUsageByKey(apiKey);
-            if (usage == null) {
-                return false;
-            }
-
-            BigDecimal maxAmount = usage.getMaxAmount();
-            if (maxAmount == null) {
-                return true;
-            }
-
-            BigDecimal totalCost = usage.getTotalCost() != null ? usage.getTotalCost() : BigDecimal.ZERO;
-            return totalCost.compareTo(maxAmount) < 0;
+            ApiKey key = loadApiKeyQuota(apiKey);
+            return key == null ? 0L : reserve(key, estimator);
         }).subscribeOn(Schedulers.boundedElastic());
     }
 
+    @Override
+    public void releaseQuota(String apiKey, long reservedMicros) {
+        apiKeySpendLedger.release(apiKey, reservedMicros);
+    }
+
+    private ApiKey loadApiKeyQuota(String apiKey) {
+        return hotPathCacheService.getApiKeyQuota(apiKey, () -> selectQuota(apiKey));
+    }
+
+    private ApiKey selectQuota(String apiKey) {
+        return this.getOne(new LambdaQueryWrapper<ApiKey>()
+                .select(ApiKey::getApiKey, ApiKey::getMaxAmount, ApiKey::getRateLimitRpm, ApiKey::getRateLimitTpm)
+                .eq(ApiKey::getApiKey, apiKey));
+    }
+
+    private long reserve(ApiKey key, LongSupplier estimator) {
+        BigDecimal maxAmount = key.getMaxAmount();
+        if (maxAmount == null) {
+            return 0L;
+        }
+        return apiKeySpendLedger.tryReserve(key.getApiKey(), ApiKeySpendLedger.toMicros(maxAmount), estimator.getAsLong());
+    }
+
+    /**
+     * 额度判断只读内存账本，不访问数据库
+     */
+    private boolean isWithinQuota(ApiKey key) {
+        BigDecimal maxAmount = key.getMaxAmount();
+        if (maxAmount == null) {
+            return true;
+        }
+        // 账本未加载时消费未知，不放行设置了额度的 Key
+        if (!apiKeySpendLedger.isLoaded()) {
+            return false;
+        }
+        return apiKeySpendLedger.getSpentMicros(key.getApiKey()) < ApiKeySpendLedger.toMicros(maxAmount);
+    }
+
     @Override
     public ApiKey updateMaxAmount(Long id, BigDecimal maxAmount) {
         if (maxAmount != null && maxAmount.signum() < 0) {
@@ -106,6 +183,31 @@ public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> impleme
         return this.getById(id);
     }
 
+    @Override
+    public ApiKey updateRateLimit(Long id, Integer rateLimitRpm, Integer rateLimitTpm) {
+        if ((rateLimitRpm != null && rateLimitRpm < 0) || (rateLimitTpm != null && rateLimitTpm < 0)) {
+            throw new IllegalArgumentException("Rate limit must be greater than or equal to 0");
+        }
+
+        ApiKey existing = this.getById(id);
+        if (existing == null) {
+            throw new IllegalArgumentException("ApiKey not found with id: " + id);
+        }
+
+        LambdaUpdateWrapper<ApiKey> wrapper = new LambdaUpdateWrapper<>();
+        wrapper.eq(ApiKey::getId, id)
+                .set(ApiKey::getRateLimitRpm, rateLimitRpm)
+                .set(ApiKey::getRateLimitTpm, rateLimitTpm)
+                .set(ApiKey::getUpdatedAt, LocalDateTime.now());
+
+        boolean updated = super.update(wrapper);
+        if (!updated) {
+            throw new IllegalArgumentException("Failed to update api key rate limit");
+        }
+        hotPathCacheService.invalidateAllApiKeys();
+        return this.getById(id);
+    }
+
     @Override
     public boolean save(ApiKey entity) {
         boolean saved = super.save(entity);
@@ -33,14 +33,14 @@ public class GeminiModelsExecutor extends AbstractRequestExecutor {
                 })
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
-                .bodyValue(request)
+                .bodyValue(ctx.getRequestBody())
                 .retrieve()
                 .bodyToMono(ObjectNode.class);
 
         return applyTimeout(result, timeoutMs)
                 .doOnNext(resp -> {
                     handleUsage(ctx, resp);
-                    recordSuccess(ctx, resp.toString());
+                    recordSuccess(ctx, resp::toString);
                 })
                 .doOnError(err -> recordError(ctx, err));
     }
@@ -57,7 +57,7 @@ public class GeminiModelsExecutor extends AbstractRequestExecutor {
                 })
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.TEXT_EVENT_STREAM)
-                .bodyValue(request)
+                .bodyValue(ctx.getRequestBody())
                 .retrieve()
                 .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
                 .log("SSE-FLOW");
@@ -70,13 +70,10 @@ public class GeminiModelsExecutor extends AbstractRequestExecutor {
                         ctx.setFirstTokenMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
                     }
                     appendResponseChunk(ctx, data);
-
-                    try {
-                        handleUsage(ctx, objectMapper.readTree(data));
-                    } catch (Exception ignored) {
-                    }
+                    handleUsage(ctx, data);
                 })
                 .doOnError(err -> recordError(ctx, err))
-                .doOnComplete(() -> recordSuccess(ctx, ctx.getResponseBuffer().toString()));
+                .doOnComplete(() -> recordSuccess(ctx, () -> ctx.getResponseCapture().content()))
+                .doOnCancel(() -> ctx.getResponseCapture().discard());
     }
 }
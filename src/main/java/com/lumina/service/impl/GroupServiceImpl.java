@@ -17,6 +17,8 @@ import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -62,6 +64,19 @@ public class GroupServiceImpl extends ServiceImpl<GroupMapper, Group> implements
                 .subscribeOn(Schedulers.boundedElastic());
     }
 
+    @Override
+    public List<ModelGroupConfig> warmUpModelGroupConfigs() {
+        List<ModelGroupConfig> configs = new ArrayList<>();
+        // 查询放在 bulkLoader 内，查询期间发生的失效才能使本批结果作废
+        hotPathCacheService.warmGroupConfigs(() -> {
+            configs.addAll(baseMapper.listModelGroupConfigs());
+            return configs.stream()
+                    .collect(Collectors.toMap(ModelGroupConfig::getName, config -> config,
+                            (existing, replacement) -> existing, LinkedHashMap::new));
+        }, baseMapper::getModelGroupByName);
+        return configs;
+    }
+
     @Transactional(rollbackFor = Exception.class)
     @Override
     public void createGroup(Group group) {
@@ -19,6 +19,8 @@ import org.springframework.web.client.RestClient;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -27,6 +29,8 @@ import java.util.stream.Collectors;
 @Service
 public class LlmModelServiceImpl extends ServiceImpl<LlmModelMapper, LlmModel> implements LlmModelService {
 
+    private static final int WARM_UP_BATCH_SIZE = 500;
+
     @Autowired
     private RestClient restClient;
 
@@ -164,10 +168,35 @@ public class LlmModelServiceImpl extends ServiceImpl<LlmModelMapper, LlmModel> i
 
     @Override
     public LlmModel findLatestByModelName(String modelName) {
-        return hotPathCacheService.getModelPrice(modelName, () -> this.getOne(new LambdaQueryWrapper<LlmModel>()
+        return hotPathCacheService.getModelPrice(modelName, () -> selectActiveModel(modelName));
+    }
+
+    @Override
+    public int warmUpModelPrices(Collection<String> modelNames) {
+        if (modelNames.isEmpty()) {
+            return 0;
+        }
+        return hotPathCacheService.warmModelPrices(() -> {
+            Map<String, LlmModel> prices = new LinkedHashMap<>();
+            List<String> names = new ArrayList<>(modelNames);
+            // 分批避免 IN 列表过长
+            for (int from = 0; from < names.size(); from += WARM_UP_BATCH_SIZE) {
+                List<String> batch = names.subList(from, Math.min(from + WARM_UP_BATCH_SIZE, names.size()));
+                for (LlmModel model : this.list(new LambdaQueryWrapper<LlmModel>()
+                        .in(LlmModel::getModelName, batch)
+                        .eq(LlmModel::getIsActive, true))) {
+                    prices.putIfAbsent(model.getModelName(), model);
+                }
+            }
+            return prices;
+        }, this::selectActiveModel);
+    }
+
+    private LlmModel selectActiveModel(String modelName) {
+        return this.getOne(new LambdaQueryWrapper<LlmModel>()
                 .eq(LlmModel::getModelName, modelName)
                 .eq(LlmModel::getIsActive, true)
-                .last("limit 1")));
+                .last("limit 1"));
     }
 
     @Override
@@ -35,7 +35,7 @@ public class OpenAiRequestExecutor extends AbstractRequestExecutor {
         log.info("[DEBUG-RELAY] 转发请求头: Authorization={}, providerType={}",
                 provider.getApiKey() != null ? "Bearer " + provider.getApiKey().substring(0, Math.min(8, provider.getApiKey().length())) + "..." : "null",
                 provider.getProviderType());
-        log.info("[DEBUG-RELAY] 转发请求体: {}", request.toString());
+        log.debug("[DEBUG-RELAY] 转发请求体: {}", request);
         RequestLogContext ctx = createLogContext(request, provider, type, false, queryParams);
         Mono<ObjectNode> result = createWebClient(provider).post()
                 .uri(uriBuilder -> {
@@ -45,14 +45,14 @@ public class OpenAiRequestExecutor extends AbstractRequestExecutor {
                 })
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
-                .bodyValue(request)
+                .bodyValue(ctx.getRequestBody())
                 .retrieve()
                 .bodyToMono(ObjectNode.class);
 
         return applyTimeout(result, timeoutMs)
                 .doOnNext(resp -> {
                     handleUsage(ctx, resp);
-                    recordSuccess(ctx, resp.toString());
+                    recordSuccess(ctx, resp::toString);
                 })
                 .doOnError(err -> recordError(ctx, err));
     }
@@ -63,7 +63,7 @@ public class OpenAiRequestExecutor extends AbstractRequestExecutor {
         log.info("[DEBUG-RELAY] 转发请求头: Authorization={}, providerType={}",
                 provider.getApiKey() != null ? "Bearer " + provider.getApiKey().substring(0, Math.min(8, provider.getApiKey().length())) + "..." : "null",
                 provider.getProviderType());
-        log.info("[DEBUG-RELAY] 转发请求体: {}", request.toString());
+        log.debug("[DEBUG-RELAY] 转发请求体: {}", request);
         RequestLogContext ctx = createLogContext(request, provider, type, true, queryParams);
         Flux<ServerSentEvent<String>> result = createWebClient(provider).post()
                 .uri(uriBuilder -> {
@@ -73,7 +73,7 @@ public class OpenAiRequestExecutor extends AbstractRequestExecutor {
                 })
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.TEXT_EVENT_STREAM)
-                .bodyValue(request).retrieve()
+                .bodyValue(ctx.getRequestBody()).retrieve()
                 .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {});
 
         return applyTimeout(result, timeoutMs)
@@ -86,20 +86,12 @@ public class OpenAiRequestExecutor extends AbstractRequestExecutor {
                     }
                     if (!"[DONE]".equals(data)) {
                         appendResponseChunk(ctx, data);
-                        try {
-                            handleUsage(ctx, objectMapper.readTree(data));
-                        } catch (Exception ignored) {
-                        }
+                        handleUsage(ctx, data);
                     }
                 })
-                .onErrorResume(err -> {
-                    recordError(ctx, err);
-                    String errorMessage = "{\"error\": {\"message\": \"网关传输中途发生网络异常中断，请稍后重试。\"}}";
-                    return Flux.just(ServerSentEvent.<String>builder()
-                            .data(errorMessage)
-                            .build())
-                            .concatWith(Flux.error(err));
-                })
-                .doOnComplete(() -> recordSuccess(ctx, ctx.getResponseBuffer().toString()));
+                // 只记录并向上传递原始错误：首包前失败由 FailoverService 切换 Provider，传输中途失败由其续传或补发中断提示
+                .doOnError(err -> recordError(ctx, err))
+                .doOnComplete(() -> recordSuccess(ctx, () -> ctx.getResponseCapture().content()))
+                .doOnCancel(() -> ctx.getResponseCapture().discard());
     }
 }
@@ -11,13 +11,23 @@ import com.lumina.dto.ModelGroupConfig;
 import com.lumina.dto.ModelGroupConfigItem;
 import com.lumina.entity.Group;
 import com.lumina.entity.LlmModel;
+import com.lumina.ratelimit.RateLimitDecision;
+import com.lumina.ratelimit.TokenRateLimiter;
+import com.lumina.service.ApiKeyService;
 import com.lumina.service.FailoverService;
 import com.lumina.service.GroupService;
 import com.lumina.service.LlmModelService;
 import com.lumina.service.LlmRequestExecutor;
+import com.lumina.service.PromptAffinity;
 import com.lumina.service.RelayService;
+import com.lumina.service.RequestCoalescer;
+import com.lumina.service.ResponseCache;
+import com.lumina.service.StreamResumption;
+import com.lumina.service.TokenCountService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
@@ -26,10 +36,17 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
@@ -53,6 +70,31 @@ public class RelayServiceImpl implements RelayService {
     @Autowired
     private LlmModelService llmModelService;
 
+    @Autowired
+    private ApiKeyService apiKeyService;
+
+    @Autowired
+    private TokenCountService tokenCountService;
+
+    @Autowired
+    private TokenRateLimiter tokenRateLimiter;
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private PromptAffinity promptAffinity;
+
+    // 未指定输出上限且模型无 outputLimit 时的预估输出 Token 数
+    private static final int DEFAULT_MAX_OUTPUT_TOKENS = 4096;
+
+    private static final String[] MAX_OUTPUT_TOKEN_FIELDS = {
+            "max_tokens", "max_completion_tokens", "max_output_tokens"
+    };
+
     private LlmRequestExecutor getExecutor(String type) {
         return executors.stream()
                 .filter(e -> e.supports(type))
@@ -77,63 +119,79 @@ public class RelayServiceImpl implements RelayService {
 
                     Integer timeoutMs = modelGroupConfig.getFirstTokenTimeout();
                     boolean stream = params.has("stream") && params.get("stream").asBoolean();
+                    int expectedOutputTokens = requestedMaxOutputTokens(params);
+                    long affinityKey = promptAffinity.key(params);
                     ProtocolType inboundType = ProtocolType.fromRequestType(type);
-
-                    if (stream) {
-                        Flux<?> body = failoverService.executeWithFailoverFlux(
+                    ResponseCache.Key cacheKey = responseCache.key(type, null, modelGroupConfig, params, stream);
+
+                    return withResponseCache(cacheKey, apiKey, events -> events, () -> admit(apiKey, modelGroupConfig, params, enrichedParams, release -> {
+                        if (stream) {
+                            StreamResumption resumption = Boolean.TRUE.equals(modelGroupConfig.getStreamResumeEnabled())
+                                    ? StreamResumption.create(inboundType, params, objectMapper)
+                                    : null;
+                            Flux<ServerSentEvent<String>> events = failoverService.executeWithFailoverFlux(
+                                    (provider) -> {
+                                        ProtocolType outboundType = ProtocolType.fromCode(provider.getProviderType());
+                                        Optional<ProtocolConverter> converter = converterRegistry.getConverter(inboundType, outboundType);
+
+                                        ObjectNode copied = withModel(params, provider.getModelName(), converter.isEmpty());
+                                        // 续传时在入站协议上追加预填充，再交给转换器
+                                        ObjectNode requestParams = resumption != null ? resumption.applyPrefill(copied) : copied;
+
+                                        ObjectNode finalRequest = converter.map(c -> c.convertRequest(requestParams)).orElse(requestParams);
+                                        String executorType = converter.isPresent() ? outboundType.toRequestType() : type;
+                                        LlmRequestExecutor executor = getExecutor(executorType);
+
+                                        if (converter.isPresent()) {
+                                            log.debug("协议转换 [{}→{}], 转换后请求: {}", inboundType, outboundType, finalRequest);
+                                        }
+
+                                        Flux<ServerSentEvent<String>> upstream = executor.executeStream(
+                                                finalRequest, provider, enrichedParams, "", executorType, timeoutMs
+                                        );
+
+                                        return converter.map(c -> c.convertStreamResponse(upstream)).orElse(upstream);
+                                    },
+                                    modelGroupConfig,
+                                    timeoutMs,
+                                    expectedOutputTokens,
+                                    affinityKey,
+                                    resumption
+                            );
+                            Flux<?> body = cacheStream(cacheKey, events).doFinally(signal -> release.run());
+
+                            return Mono.just(ResponseEntity.ok()
+                                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                                    .body(body));
+                        }
+
+                        Mono<ObjectNode> call = failoverService.executeWithFailoverMono(
                                 (provider) -> {
                                     ProtocolType outboundType = ProtocolType.fromCode(provider.getProviderType());
                                     Optional<ProtocolConverter> converter = converterRegistry.getConverter(inboundType, outboundType);
 
-                                    ObjectNode requestParams = params.deepCopy();
-                                    requestParams.put("model", provider.getModelName());
+                                    ObjectNode requestParams = withModel(params, provider.getModelName(), converter.isEmpty());
 
                                     ObjectNode finalRequest = converter.map(c -> c.convertRequest(requestParams)).orElse(requestParams);
                                     String executorType = converter.isPresent() ? outboundType.toRequestType() : type;
                                     LlmRequestExecutor executor = getExecutor(executorType);
 
                                     if (converter.isPresent()) {
-                                        log.info("协议转换 [{}→{}], 转换后请求: {}", inboundType, outboundType, finalRequest);
+                                        log.debug("协议转换 [{}→{}], 转换后请求: {}", inboundType, outboundType, finalRequest);
                                     }
 
-                                    Flux<ServerSentEvent<String>> upstream = executor.executeStream(
+                                    return executor.executeNormal(
                                             finalRequest, provider, enrichedParams, "", executorType, timeoutMs
-                                    );
-
-                                    return converter.map(c -> c.convertStreamResponse(upstream)).orElse(upstream);
+                                    ).map(resp -> converter.map(c -> c.convertResponse(resp)).orElse(resp));
                                 },
                                 modelGroupConfig,
-                                timeoutMs
+                                timeoutMs,
+                                expectedOutputTokens,
+                                affinityKey
                         );
-
-                        return Mono.just(ResponseEntity.ok()
-                                .contentType(MediaType.TEXT_EVENT_STREAM)
-                                .body(body));
-                    }
-
-                    return failoverService.executeWithFailoverMono(
-                            (provider) -> {
-                                ProtocolType outboundType = ProtocolType.fromCode(provider.getProviderType());
-                                Optional<ProtocolConverter> converter = converterRegistry.getConverter(inboundType, outboundType);
-
-                                ObjectNode requestParams = params.deepCopy();
-                                requestParams.put("model", provider.getModelName());
-
-                                ObjectNode finalRequest = converter.map(c -> c.convertRequest(requestParams)).orElse(requestParams);
-                                String executorType = converter.isPresent() ? outboundType.toRequestType() : type;
-                                LlmRequestExecutor executor = getExecutor(executorType);
-
-                                if (converter.isPresent()) {
-                                    log.info("协议转换 [{}→{}], 转换后请求: {}", inboundType, outboundType, finalRequest);
-                                }
-
-                                return executor.executeNormal(
-                                        finalRequest, provider, enrichedParams, "", executorType, timeoutMs
-                                ).map(resp -> converter.map(c -> c.convertResponse(resp)).orElse(resp));
-                            },
-                            modelGroupConfig,
-                            timeoutMs
-                    ).map(ResponseEntity::ok);
+                        return coalesce(type, null, modelGroupConfig, apiKey, params, enrichedParams, cacheNormal(cacheKey, call))
+                                .doFinally(signal -> release.run()).map(ResponseEntity::ok);
+                    }));
                 });
     }
 
@@ -156,48 +214,284 @@ public class RelayServiceImpl implements RelayService {
 
                     Integer timeoutMs = modelGroupConfig.getFirstTokenTimeout();
                     boolean stream = action.equalsIgnoreCase("streamGenerateContent");
+                    int expectedOutputTokens = requestedMaxOutputTokens(params);
+                    long affinityKey = promptAffinity.key(params);
                     LlmRequestExecutor executor = getExecutor(type);
+                    ResponseCache.Key cacheKey = responseCache.key(type, action, modelGroupConfig, params, stream);
 
-                    if (stream) {
-                        Flux<String> body = failoverService.executeWithFailoverFlux(
-                                (provider) -> {
-                                    ObjectNode requestParams = params.deepCopy();
-                                    return executor.executeStream(
-                                            requestParams,
+                    return withResponseCache(cacheKey, apiKey, events -> events.map(sse -> " " + sse.data()), () -> admit(apiKey, modelGroupConfig, params, enrichedParams, release -> {
+                        if (stream) {
+                            Flux<ServerSentEvent<String>> events = failoverService.executeWithFailoverFlux(
+                                    (provider) -> executor.executeStream(
+                                            params,
                                             provider,
                                             enrichedParams,
                                             provider.getModelName() + ":" + action,
                                             type,
                                             timeoutMs
-                                    );
-                                },
+                                    ),
+                                    modelGroupConfig,
+                                    timeoutMs,
+                                    expectedOutputTokens,
+                                    affinityKey,
+                                    null
+                            );
+                            Flux<String> body = cacheStream(cacheKey, events).map(sse -> " " + sse.data()).doFinally(signal -> release.run());
+
+                            return Mono.just(ResponseEntity.ok()
+                                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                                    .body(body));
+                        }
+
+                        Mono<ObjectNode> call = failoverService.executeWithFailoverMono(
+                                (provider) -> executor.executeNormal(
+                                        params,
+                                        provider,
+                                        enrichedParams,
+                                        provider.getModelName() + ":" + action,
+                                        type,
+                                        timeoutMs
+                                ),
                                 modelGroupConfig,
-                                timeoutMs
-                        ).map(sse -> " " + sse.data());
+                                timeoutMs,
+                                expectedOutputTokens,
+                                affinityKey
+                        );
+                        return coalesce(type, action, modelGroupConfig, apiKey, params, enrichedParams, cacheNormal(cacheKey, call))
+                                .doFinally(signal -> release.run()).map(ResponseEntity::ok);
+                    }));
+                });
+    }
 
+    /**
+     * 分组开启响应缓存时先查缓存，命中则直接重放，不经过准入检查与 Failover
+     * @param streamBody 将重放的事件序列转换为与上游转发一致的响应体
+     */
+    private Mono<ResponseEntity<?>> withResponseCache(ResponseCache.Key cacheKey, String apiKey,
+                                                      Function<Flux<ServerSentEvent<String>>, Flux<?>> streamBody,
+                                                      Supplier<Mono<ResponseEntity<?>>> relayCall) {
+        if (cacheKey == null) {
+            return relayCall.get();
+        }
+        return responseCache.lookup(cacheKey)
+                .flatMap(cached -> {
+                    if (cacheKey.stream()) {
                         return Mono.just(ResponseEntity.ok()
                                 .contentType(MediaType.TEXT_EVENT_STREAM)
-                                .body(body));
+                                .body(streamBody.apply(responseCache.replayStream(cacheKey, cached, apiKey))));
                     }
+                    return responseCache.replayNormal(cacheKey, cached, apiKey).<ResponseEntity<?>>map(ResponseEntity::ok);
+                })
+                .switchIfEmpty(Mono.defer(relayCall));
+    }
 
-                    return failoverService.executeWithFailoverMono(
-                            (provider) -> {
-                                ObjectNode requestParams = params.deepCopy();
-                                return executor.executeNormal(
-                                        requestParams,
-                                        provider,
-                                        enrichedParams,
-                                        provider.getModelName() + ":" + action,
-                                        type,
-                                        timeoutMs
-                                );
-                            },
-                            modelGroupConfig,
-                            timeoutMs
-                    ).map(ResponseEntity::ok);
+    private Mono<ObjectNode> cacheNormal(ResponseCache.Key cacheKey, Mono<ObjectNode> call) {
+        return cacheKey != null ? responseCache.cacheNormal(cacheKey, call) : call;
+    }
+
+    private Flux<ServerSentEvent<String>> cacheStream(ResponseCache.Key cacheKey, Flux<ServerSentEvent<String>> events) {
+        return cacheKey != null ? responseCache.cacheStream(cacheKey, events) : events;
+    }
+
+    /**
+     * 开启请求合并时，相同的并发非流式请求共享一次上游调用；
+     * follower 不经过执行器，按预估扣减的 TPM 在结束时全部退还
+     */
+    private Mono<ObjectNode> coalesce(String type, String action, ModelGroupConfig modelGroupConfig, String apiKey,
+                                      ObjectNode params, Map<String, String> enrichedParams, Mono<ObjectNode> call) {
+        RequestCoalescer.Key key = requestCoalescer.key(type, action, modelGroupConfig.getName(), apiKey, params);
+        if (key == null) {
+            return call;
+        }
+        return requestCoalescer.execute(key, call, () -> {
+            String estimatedTokens = enrichedParams.get("_lumina_estimated_tokens");
+            if (estimatedTokens != null) {
+                tokenRateLimiter.adjust(apiKey, modelGroupConfig.getName(), -Long.parseLong(estimatedTokens));
+            }
+        });
+    }
+
+    /**
+     * 构造发往上游的请求体
+     *
+     * 无需协议转换时只浅拷贝顶层字段并替换 model，messages 等大字段与入参共享，
+     * 避免每次 Failover 深拷贝整个请求；转换器可能修改入参，此时仍使用深拷贝
+     */
+    private ObjectNode withModel(ObjectNode params, String modelName, boolean passthrough) {
+        ObjectNode requestParams = passthrough ? objectMapper.createObjectNode().setAll(params) : params.deepCopy();
+        requestParams.put("model", modelName);
+        return requestParams;
+    }
+
+    /**
+     * 准入检查：先按预估输入 Token 扣减 TPM，再预占费用额度，均通过后才转发
+     */
+    private Mono<ResponseEntity<?>> admit(String apiKey, ModelGroupConfig modelGroupConfig, ObjectNode params,
+                                          Map<String, String> enrichedParams,
+                                          Function<Runnable, Mono<ResponseEntity<?>>> relayCall) {
+        // 输入 Token 只在需要时计算一次，TPM 与额度预估共用
+        long[] inputTokens = {-1};
+        LongSupplier inputTokenCount = () -> {
+            if (inputTokens[0] < 0) {
+                inputTokens[0] = tokenCountService.countTokens(modelGroupConfig.getName(), params);
+            }
+            return inputTokens[0];
+        };
+
+        if (!tokenRateLimiter.isLimited(apiKey, modelGroupConfig)) {
+            return withReservedQuota(apiKey, modelGroupConfig, params, inputTokenCount, () -> {}, relayCall);
+        }
+
+        // 分词是 CPU 密集操作，不在事件循环线程上执行
+        return Mono.fromCallable(inputTokenCount::getAsLong)
+                .subscribeOn(Schedulers.parallel())
+                .flatMap(estimatedTokens -> admitTokens(apiKey, modelGroupConfig, params, enrichedParams,
+                        inputTokenCount, estimatedTokens, relayCall));
+    }
+
+    private Mono<ResponseEntity<?>> admitTokens(String apiKey, ModelGroupConfig modelGroupConfig, ObjectNode params,
+                                                Map<String, String> enrichedParams, LongSupplier inputTokenCount,
+                                                long estimatedTokens,
+                                                Function<Runnable, Mono<ResponseEntity<?>>> relayCall) {
+        return tokenRateLimiter.tryAcquire(apiKey, modelGroupConfig, estimatedTokens)
+                .flatMap(decision -> {
+                    if (!decision.allowed()) {
+                        log.warn("TPM 超限，拒绝请求: group={}, retryAfter={}ms", modelGroupConfig.getName(), decision.retryAfterMs());
+                        return Mono.just(tokenRateLimited(decision));
+                    }
+
+                    // 执行器在请求完成后按实际用量修正差额
+                    enrichedParams.put("_lumina_model_group", modelGroupConfig.getName());
+                    enrichedParams.put("_lumina_estimated_tokens", String.valueOf(estimatedTokens));
+                    Runnable refund = () -> tokenRateLimiter.adjust(apiKey, modelGroupConfig.getName(), -estimatedTokens);
+                    return withReservedQuota(apiKey, modelGroupConfig, params, inputTokenCount, refund, relayCall)
+                            .map(response -> withHeaders(response, headers -> decision.applyHeaders(headers, "tokens")));
+                });
+    }
+
+    /**
+     * 按最坏情况预估费用预占 API Key 额度后再转发，转发结束（成功、失败或取消）时释放预占；
+     * 实际费用由执行器在请求完成时记入账本
+     */
+    private Mono<ResponseEntity<?>> withReservedQuota(String apiKey, ModelGroupConfig modelGroupConfig, ObjectNode params,
+                                                      LongSupplier inputTokenCount, Runnable onRejected,
+                                                      Function<Runnable, Mono<ResponseEntity<?>>> relayCall) {
+        if (apiKey == null) {
+            return relayCall.apply(() -> {});
+        }
+
+        return apiKeyService.reserveQuota(apiKey, () -> estimateWorstCaseCostMicros(modelGroupConfig, params, inputTokenCount))
+                .flatMap(reserved -> {
+                    if (reserved < 0) {
+                        log.warn("API Key 额度不足，拒绝请求: group={}", modelGroupConfig.getName());
+                        onRejected.run();
+                        return Mono.just(quotaExceeded());
+                    }
+                    if (reserved == 0) {
+                        return relayCall.apply(() -> {});
+                    }
+
+                    AtomicBoolean released = new AtomicBoolean(false);
+                    Runnable release = () -> {
+                        if (released.compareAndSet(false, true)) {
+                            apiKeyService.releaseQuota(apiKey, reserved);
+                        }
+                    };
+                    return relayCall.apply(release)
+                            .doOnError(e -> release.run())
+                            .doOnCancel(release);
                 });
     }
 
+    /**
+     * 预估请求最坏情况费用（百万分之一单位）：输入 Token 数 + 最大输出 Token 数，取分组内最高单价
+     */
+    private long estimateWorstCaseCostMicros(ModelGroupConfig modelGroupConfig, ObjectNode params, LongSupplier inputTokenCount) {
+        BigDecimal inputPrice = BigDecimal.ZERO;
+        BigDecimal outputPrice = BigDecimal.ZERO;
+        int outputLimit = 0;
+        if (modelGroupConfig.getItems() != null) {
+            for (ModelGroupConfigItem item : modelGroupConfig.getItems()) {
+                LlmModel model = llmModelService.findLatestByModelName(item.getModelName());
+                if (model == null) {
+                    continue;
+                }
+                if (model.getInputPrice() != null) {
+                    inputPrice = inputPrice.max(model.getInputPrice());
+                }
+                if (model.getOutputPrice() != null) {
+                    outputPrice = outputPrice.max(model.getOutputPrice());
+                }
+                if (model.getOutputLimit() != null) {
+                    outputLimit = Math.max(outputLimit, model.getOutputLimit());
+                }
+            }
+        }
+        if (inputPrice.signum() == 0 && outputPrice.signum() == 0) {
+            return 0;
+        }
+
+        long inputTokens = inputTokenCount.getAsLong();
+        int maxOutputTokens = requestedMaxOutputTokens(params);
+        if (maxOutputTokens <= 0) {
+            maxOutputTokens = outputLimit > 0 ? outputLimit : DEFAULT_MAX_OUTPUT_TOKENS;
+        }
+
+        // 价格单位为每百万Token，恰好等于每 Token 的百万分之一单位费用
+        return inputPrice.multiply(BigDecimal.valueOf(inputTokens))
+                .add(outputPrice.multiply(BigDecimal.valueOf(maxOutputTokens)))
+                .setScale(0, RoundingMode.CEILING)
+                .longValue();
+    }
+
+    private int requestedMaxOutputTokens(ObjectNode params) {
+        for (String field : MAX_OUTPUT_TOKEN_FIELDS) {
+            JsonNode node = params.get(field);
+            if (node != null && node.canConvertToInt()) {
+                return node.asInt();
+            }
+        }
+        JsonNode generationConfig = params.get("generationConfig");
+        if (generationConfig != null && generationConfig.has("maxOutputTokens")) {
+            return generationConfig.get("maxOutputTokens").asInt();
+        }
+        return 0;
+    }
+
+    private ResponseEntity<?> quotaExceeded() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(errorBody("insufficient_quota", "API key quota exceeded", null));
+    }
+
+    private ResponseEntity<?> tokenRateLimited(RateLimitDecision decision) {
+        HttpHeaders headers = new HttpHeaders();
+        decision.applyHeaders(headers, "tokens");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .headers(headers)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(errorBody("tokens", "Rate limit reached for tokens", "rate_limit_exceeded"));
+    }
+
+    private ObjectNode errorBody(String type, String message, String code) {
+        ObjectNode error = objectMapper.createObjectNode();
+        error.put("type", type);
+        error.put("message", message);
+        if (code != null) {
+            error.put("code", code);
+        }
+        ObjectNode body = objectMapper.createObjectNode();
+        body.set("error", error);
+        return body;
+    }
+
+    private ResponseEntity<?> withHeaders(ResponseEntity<?> response, Consumer<HttpHeaders> customizer) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        customizer.accept(headers);
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
     @Override
     public Mono<ResponseEntity<?>> models() {
         return Mono.fromCallable(groupService::list)
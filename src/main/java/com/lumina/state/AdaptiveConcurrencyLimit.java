@@ -0,0 +1,106 @@
+package com.lumina.state;
+
+/**
+ * 自适应并发上限（gradient 风格）
+ *
+ * 以长期 RTT（慢速 EMA）为基线、短期 RTT（快速 EMA）反映当前排队程度：
+ * - 短期 RTT 超过基线的 tolerance 倍时，按 基线 * tolerance / 短期 RTT 的比例平滑收缩
+ * - RTT 平稳且在途请求足以检验当前上限时，按 sqrt(limit) 加性提升
+ * - 上游限流（429）或超时时按 backoffRatio 乘性收缩
+ * RTT 样本只取流式请求的首包耗时；非流式请求总耗时随输出长度变化，只作为一次成功参与加性提升。
+ * 学习到的上限独立于配置的静态最大并发数（ceiling），由调用方读取时取两者较小值；
+ * ceiling 只限制加性提升不越过它，收缩则以两者较小值为基准，使收缩立即生效。
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double LONG_RTT_ALPHA = 0.01;
+    private static final double SHORT_RTT_ALPHA = 0.2;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+
+    private double limit;
+    private double longRttMs;
+    private double shortRttMs;
+    private volatile int currentLimit;
+
+    /**
+     * @param initialLimit 初始上限（通常等于静态最大并发数）
+     * @param minLimit 上限下限
+     * @param tolerance 允许的 RTT 膨胀倍数
+     * @param backoffRatio 限流或超时时的收缩比例
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, double tolerance, double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.tolerance = Math.max(1.0, tolerance);
+        this.backoffRatio = Math.min(1.0, Math.max(0.1, backoffRatio));
+        this.limit = Math.max(this.minLimit, initialLimit);
+        this.currentLimit = (int) limit;
+    }
+
+    public int getLimit() {
+        return currentLimit;
+    }
+
+    /**
+     * 记录一次成功请求的 RTT
+     * @param inflight 当前在途请求数（含本请求）
+     * @param ceiling 静态最大并发数
+     */
+    public synchronized void onSample(long rttMs, int inflight, int ceiling) {
+        double rtt = Math.max(1, rttMs);
+        if (longRttMs == 0) {
+            longRttMs = rtt;
+            shortRttMs = rtt;
+        } else {
+            shortRttMs += (rtt - shortRttMs) * SHORT_RTT_ALPHA;
+            longRttMs += (rtt - longRttMs) * LONG_RTT_ALPHA;
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * longRttMs / shortRttMs));
+        if (gradient < 1.0) {
+            double base = effective(ceiling);
+            update(base * (1 - SMOOTHING) + base * gradient * SMOOTHING);
+        } else {
+            grow(inflight, ceiling);
+        }
+    }
+
+    /**
+     * 记录一次没有 RTT 样本的成功请求：近期 RTT 已膨胀时不提升，尚无样本时视为平稳
+     * @param inflight 当前在途请求数（含本请求）
+     * @param ceiling 静态最大并发数
+     */
+    public synchronized void onSuccess(int inflight, int ceiling) {
+        if (longRttMs == 0 || tolerance * longRttMs >= shortRttMs) {
+            grow(inflight, ceiling);
+        }
+    }
+
+    /**
+     * 上游限流或超时
+     */
+    public synchronized void onDrop(int ceiling) {
+        update(effective(ceiling) * backoffRatio);
+    }
+
+    private void grow(int inflight, int ceiling) {
+        // 在途请求不到上限一半时，请求顺利完成不能说明上游能承受更高并发
+        if (inflight * 2 >= limit) {
+            // 已高于当前 ceiling 时保持不变（ceiling 可能只是暂时调低）
+            update(Math.min(limit + Math.sqrt(limit), Math.max(limit, ceiling)));
+        }
+    }
+
+    private double effective(int ceiling) {
+        return Math.min(limit, Math.max(minLimit, ceiling));
+    }
+
+    private void update(double value) {
+        limit = Math.max(minLimit, value);
+        currentLimit = (int) limit;
+    }
+}
@@ -0,0 +1,113 @@
+package com.lumina.state;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 轻量级对数线性直方图（HDR 风格）
+ *
+ * 每个 2 的幂区间再等分为 8 个子桶，相对误差约 12.5%，覆盖 0 ~ 2^31，固定 232 个桶。
+ * 记录为无锁原子自增；按窗口滚动（当前 + 上一窗口），分位数只反映最近一到两个窗口的分布。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 30;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long windowMs;
+    private volatile AtomicLongArray current = new AtomicLongArray(BUCKET_COUNT);
+    private volatile AtomicLongArray previous = new AtomicLongArray(BUCKET_COUNT);
+    private volatile long windowStartedAt = System.currentTimeMillis();
+
+    /**
+     * @param windowMs 滚动窗口长度（毫秒）
+     */
+    public LatencyHistogram(long windowMs) {
+        this.windowMs = Math.max(1, windowMs);
+    }
+
+    public void record(long value) {
+        rotateIfNeeded();
+        current.incrementAndGet(bucketOf(Math.max(0, value)));
+    }
+
+    /**
+     * 最近窗口内的样本数
+     */
+    public long count() {
+        rotateIfNeeded();
+        AtomicLongArray cur = current;
+        AtomicLongArray prev = previous;
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += cur.get(i) + prev.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * 分位数（取所在桶的上界）
+     * @param quantile 0.0 ~ 1.0
+     * @param minSamples 样本数不足时返回 -1
+     */
+    public long percentile(double quantile, long minSamples) {
+        rotateIfNeeded();
+        AtomicLongArray cur = current;
+        AtomicLongArray prev = previous;
+        // 选路热路径上调用，两次遍历代替合并数组，不分配内存；两次遍历间的并发写入只影响一个桶的精度
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += cur.get(i) + prev.get(i);
+        }
+        if (total == 0 || total < minSamples) {
+            return -1;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * total));
+        long acc = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            acc += cur.get(i) + prev.get(i);
+            if (acc >= target) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(BUCKET_COUNT - 1);
+    }
+
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - windowStartedAt < windowMs) {
+            return;
+        }
+        synchronized (this) {
+            if (now - windowStartedAt < windowMs) {
+                return;
+            }
+            // 超过两个窗口没有记录时上一窗口也已过期
+            previous = now - windowStartedAt >= 2 * windowMs ? new AtomicLongArray(BUCKET_COUNT) : current;
+            current = new AtomicLongArray(BUCKET_COUNT);
+            windowStartedAt = now;
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + mantissa;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        int mantissa = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + mantissa + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -1,16 +1,32 @@
 package com.lumina.state;
 
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Provider 并发舱壁
- * 限制单个 Provider 的最大并发请求数，防止单点过载
+ * 限制单个 Provider 的最大并发请求数，防止单点过载；
+ * 启用自适应上限时实际许可数为 min(静态最大并发数, 自适应上限)。
+ * 除快速失败的 tryAcquire 外，还支持排队获取：许可不足时进入 FIFO 等待队列，
+ * 由释放许可的线程直接移交，等待超时或队列已满时返回 false，全程不阻塞线程。
+ * 移交结果在 parallel 调度器上送达，等待者的后续调用不会跑在释放许可的线程上。
  */
 public class ProviderBulkhead {
 
     private final AtomicInteger currentConcurrent = new AtomicInteger(0);
     private final AtomicInteger maxConcurrent;
+    // 为 null 时使用静态上限
+    private final AdaptiveConcurrencyLimit adaptiveLimit;
+
+    // 排队等待许可的请求
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger(0);
 
     // 指标统计
     private final LongAdder rejectedCount = new LongAdder();
@@ -21,7 +37,16 @@ public class ProviderBulkhead {
      * @param maxConcurrent 最大并发数
      */
     public ProviderBulkhead(int maxConcurrent) {
+        this(maxConcurrent, null);
+    }
+
+    /**
+     * @param maxConcurrent 最大并发数（启用自适应上限时作为天花板）
+     * @param adaptiveLimit 自适应上限，为 null 时不启用
+     */
+    public ProviderBulkhead(int maxConcurrent, AdaptiveConcurrencyLimit adaptiveLimit) {
         this.maxConcurrent = new AtomicInteger(Math.max(1, maxConcurrent));
+        this.adaptiveLimit = adaptiveLimit;
     }
 
     /**
@@ -29,23 +54,61 @@ public class ProviderBulkhead {
      * @return true 如果获取成功，false 如果已达上限
      */
     public boolean tryAcquire() {
-        while (true) {
-            int current = currentConcurrent.get();
-            int max = maxConcurrent.get();
-            if (current >= max) {
-                rejectedCount.increment();
-                return false;  // 快速失败
-            }
-            if (currentConcurrent.compareAndSet(current, current + 1)) {
+        if (takePermit()) {
+            acquiredCount.increment();
+            return true;
+        }
+        rejectedCount.increment();
+        return false;  // 快速失败
+    }
+
+    /**
+     * 排队获取并发许可
+     *
+     * 有空闲许可且无人排队时立即成功；否则进入等待队列，由 release 按 FIFO 顺序移交。
+     * 订阅被取消时自动出队，若许可已移交但结果未送达则归还许可。
+     * @param maxWaitMs 最长等待时间
+     * @param maxQueueDepth 等待队列上限，队列已满时立即返回 false
+     * @return 是否获得许可
+     */
+    public Mono<Boolean> acquire(long maxWaitMs, int maxQueueDepth) {
+        return Mono.create(sink -> {
+            if (waiters.isEmpty() && takePermit()) {
                 acquiredCount.increment();
-                return true;
+                sink.success(true);
+                return;
             }
-            // CAS 失败，重试
-        }
+            if (queueDepth.incrementAndGet() > maxQueueDepth) {
+                queueDepth.decrementAndGet();
+                rejectedCount.increment();
+                sink.success(false);
+                return;
+            }
+
+            Waiter waiter = new Waiter(sink);
+            waiters.offer(waiter);
+            sink.onCancel(() -> {
+                if (waiter.cancel()) {
+                    leaveQueue(waiter);
+                } else if (waiter.granted()) {
+                    // 许可已移交但订阅已取消，结果会被丢弃
+                    release();
+                }
+            });
+            sink.onDispose(Schedulers.parallel().schedule(() -> {
+                if (waiter.cancel()) {
+                    leaveQueue(waiter);
+                    rejectedCount.increment();
+                    sink.success(false);
+                }
+            }, maxWaitMs, TimeUnit.MILLISECONDS));
+            // 入队前可能恰好有许可被释放，主动尝试一次移交
+            drain();
+        });
     }
 
     /**
-     * 释放并发许可
+     * 释放并发许可，有排队请求时直接移交
      */
     public void release() {
         int newValue = currentConcurrent.decrementAndGet();
@@ -53,6 +116,86 @@ public class ProviderBulkhead {
             // 安全保护：不应发生，但如果发生则修正
             currentConcurrent.compareAndSet(newValue, 0);
         }
+        if (!waiters.isEmpty()) {
+            drain();
+        }
+    }
+
+    /**
+     * 当前排队等待许可的请求数
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    private boolean takePermit() {
+        while (true) {
+            int current = currentConcurrent.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+            if (currentConcurrent.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            // CAS 失败，重试
+        }
+    }
+
+    private void drain() {
+        Waiter head;
+        while ((head = waiters.peek()) != null) {
+            if (!head.isWaiting()) {
+                waiters.remove(head);
+                continue;
+            }
+            if (!takePermit()) {
+                return;
+            }
+            // 多个线程同时移交时只有一个能取走队头，其余归还许可后继续
+            if (waiters.remove(head) && head.grant()) {
+                queueDepth.decrementAndGet();
+                acquiredCount.increment();
+                // 释放方可能是上一个请求的响应回调，异步送达以免在其线程上串行发起下一个请求
+                MonoSink<Boolean> sink = head.sink;
+                Schedulers.parallel().schedule(() -> sink.success(true));
+            } else {
+                currentConcurrent.decrementAndGet();
+            }
+        }
+    }
+
+    private void leaveQueue(Waiter waiter) {
+        waiters.remove(waiter);
+        queueDepth.decrementAndGet();
+    }
+
+    private static final class Waiter {
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        final MonoSink<Boolean> sink;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(MonoSink<Boolean> sink) {
+            this.sink = sink;
+        }
+
+        boolean isWaiting() {
+            return state.get() == WAITING;
+        }
+
+        boolean granted() {
+            return state.get() == GRANTED;
+        }
+
+        boolean grant() {
+            return state.compareAndSet(WAITING, GRANTED);
+        }
+
+        boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
     }
 
     /**
@@ -69,11 +212,51 @@ public class ProviderBulkhead {
         return maxConcurrent.get();
     }
 
+    /**
+     * 当前实际许可上限
+     */
+    public int getLimit() {
+        int max = maxConcurrent.get();
+        return adaptiveLimit != null ? Math.min(max, adaptiveLimit.getLimit()) : max;
+    }
+
     /**
      * 动态更新最大并发数
      */
     public void setMaxConcurrent(int newMaxConcurrent) {
-        maxConcurrent.set(Math.max(1, newMaxConcurrent));
+        int value = Math.max(1, newMaxConcurrent);
+        // 自适应上限独立于静态最大并发数，只在 getLimit 时取两者较小值
+        int previous = maxConcurrent.getAndSet(value);
+        if (value > previous && !waiters.isEmpty()) {
+            drain();
+        }
+    }
+
+    /**
+     * 记录一次成功请求的 RTT，需在释放许可前调用以反映真实在途数
+     */
+    public void recordLatency(long rttMs) {
+        if (adaptiveLimit != null) {
+            adaptiveLimit.onSample(rttMs, currentConcurrent.get(), maxConcurrent.get());
+        }
+    }
+
+    /**
+     * 记录一次不提供 RTT 样本的成功请求（非流式），需在释放许可前调用
+     */
+    public void recordSuccess() {
+        if (adaptiveLimit != null) {
+            adaptiveLimit.onSuccess(currentConcurrent.get(), maxConcurrent.get());
+        }
+    }
+
+    /**
+     * 上游限流或超时，收缩自适应上限
+     */
+    public void recordDrop() {
+        if (adaptiveLimit != null) {
+            adaptiveLimit.onDrop(maxConcurrent.get());
+        }
     }
 
     /**
@@ -94,14 +277,14 @@ public class ProviderBulkhead {
      * 获取剩余可用许可数
      */
     public int getAvailablePermits() {
-        return Math.max(0, maxConcurrent.get() - currentConcurrent.get());
+        return Math.max(0, getLimit() - currentConcurrent.get());
     }
 
     /**
      * 是否已满
      */
     public boolean isFull() {
-        return currentConcurrent.get() >= maxConcurrent.get();
+        return currentConcurrent.get() >= getLimit();
     }
 
     /**
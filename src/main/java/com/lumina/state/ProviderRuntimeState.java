@@ -11,6 +11,8 @@ import java.util.concurrent.atomic.AtomicReference;
 @Data
 public class ProviderRuntimeState {
 
+    private static final int MIN_THROUGHPUT_TOKENS = 16;
+
     private final String providerId;
     private volatile String providerName;
     private volatile String modelName;
@@ -101,6 +103,22 @@ public class ProviderRuntimeState {
     // Provider 级别并发控制
     private final ProviderBulkhead bulkhead;
 
+    // ========== 延迟分布 ==========
+
+    // 非流式成功请求的总耗时分布（最近 1~2 分钟），用于计算对冲等待时间
+    private final LatencyHistogram responseLatency = new LatencyHistogram(60_000);
+
+    // 流式请求首包耗时分布，用于计算流式对冲等待时间与延迟感知选路
+    private final LatencyHistogram firstTokenLatency = new LatencyHistogram(60_000);
+
+    // 输出吞吐分布（Token/秒），用于按预期输出长度预估完成时间
+    private final LatencyHistogram outputThroughput = new LatencyHistogram(60_000);
+
+    // ========== 上游限流 ==========
+
+    // 由上游响应头得出的冷却截止时间，冷却期间选路跳过
+    private final UpstreamRateLimit upstreamRateLimit = new UpstreamRateLimit();
+
     // 脏标记：仅脏状态参与批量落盘
     private final AtomicBoolean dirty = new AtomicBoolean(false);
 
@@ -119,9 +137,20 @@ public class ProviderRuntimeState {
      * @param maxConcurrent 最大并发数
      */
     public ProviderRuntimeState(String providerId, int windowBucketCount, long windowBucketDurationMs, int maxConcurrent) {
+        this(providerId, windowBucketCount, windowBucketDurationMs, new ProviderBulkhead(maxConcurrent));
+    }
+
+    /**
+     * 构造函数（自定义舱壁）
+     * @param providerId Provider ID
+     * @param windowBucketCount 滑动窗口桶数量
+     * @param windowBucketDurationMs 每桶时间跨度（毫秒）
+     * @param bulkhead 并发舱壁
+     */
+    public ProviderRuntimeState(String providerId, int windowBucketCount, long windowBucketDurationMs, ProviderBulkhead bulkhead) {
         this.providerId = providerId;
         this.slidingWindowMetrics = new SlidingWindowMetrics(windowBucketCount, windowBucketDurationMs);
-        this.bulkhead = new ProviderBulkhead(maxConcurrent);
+        this.bulkhead = bulkhead;
     }
 
     // 滑动窗口：存储最近N次请求的结果（保留用于兼容，建议使用 slidingWindowMetrics）
@@ -299,6 +328,18 @@ public class ProviderRuntimeState {
         this.lastStateChangeReason = reason;
     }
 
+    /**
+     * 记录一次成功请求的输出吞吐，输出过短的请求耗时主要是固定开销，不计入
+     * @param outputTokens 输出 Token 数
+     * @param generationMs 生成耗时（流式为首包之后的耗时，非流式为总耗时）
+     */
+    public void recordOutputThroughput(int outputTokens, long generationMs) {
+        if (outputTokens < MIN_THROUGHPUT_TOKENS || generationMs <= 0) {
+            return;
+        }
+        outputThroughput.record(outputTokens * 1000L / generationMs);
+    }
+
     public void recordFailureType(String failureType) {
         this.lastFailureType = failureType;
     }
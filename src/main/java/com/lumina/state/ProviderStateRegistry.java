@@ -11,6 +11,7 @@ import org.springframework.stereotype.Component;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Component
@@ -20,6 +21,8 @@ public class ProviderStateRegistry {
     private final ProviderRuntimeStatsMapper mapper;
     private final CircuitBreakerConfig config;
     private final ConcurrentHashMap<String, ProviderRuntimeState> stateMap = new ConcurrentHashMap<>();
+    // 每次移除运行态时递增，持有运行态引用的路由表据此判断是否需要重建
+    private final AtomicLong generation = new AtomicLong();
 
     @PostConstruct
     public void loadFromDb() {
@@ -57,11 +60,21 @@ public class ProviderStateRegistry {
      * 创建带配置的 ProviderRuntimeState
      */
     private ProviderRuntimeState createProviderState(String providerId) {
+        int maxConcurrent = config.getMaxConcurrentRequestsPerProvider();
+        AdaptiveConcurrencyLimit adaptiveLimit = null;
+        if (config.isAdaptiveConcurrencyEnabled()) {
+            adaptiveLimit = new AdaptiveConcurrencyLimit(
+                    maxConcurrent,
+                    config.getAdaptiveConcurrencyMinLimit(),
+                    config.getAdaptiveConcurrencyRttTolerance(),
+                    config.getAdaptiveConcurrencyBackoffRatio()
+            );
+        }
         return new ProviderRuntimeState(
                 providerId,
                 config.getWindowBucketCount(),
                 config.getWindowBucketDurationMs(),
-                config.getMaxConcurrentRequestsPerProvider()
+                new ProviderBulkhead(maxConcurrent, adaptiveLimit)
         );
     }
 
@@ -92,8 +105,13 @@ public class ProviderStateRegistry {
         return new java.util.ArrayList<>(stateMap.values());
     }
 
+    public long getGeneration() {
+        return generation.get();
+    }
+
     public void clear() {
         stateMap.clear();
+        generation.incrementAndGet();
     }
 
     /**
@@ -102,6 +120,7 @@ public class ProviderStateRegistry {
      */
     public void remove(String providerId) {
         stateMap.remove(providerId);
+        generation.incrementAndGet();
     }
 
     /**
@@ -110,6 +129,7 @@ public class ProviderStateRegistry {
      */
     public void removeAll(Collection<String> providerIds) {
         providerIds.forEach(stateMap::remove);
+        generation.incrementAndGet();
     }
 
     private boolean isTableNotExists(Throwable e) {
@@ -111,7 +111,7 @@ public class ProviderStatsPersistenceJob {
                     ModelGroupConfig config = groupService.getModelGroupConfig(group.getName());
                     if (config != null && config.getItems() != null) {
                         for (ModelGroupConfigItem item : config.getItems()) {
-                            String providerId = generateProviderId(item);
+                            String providerId = item.getProviderKey().id();
                             validIds.add(providerId);
                         }
                     }
@@ -128,19 +128,6 @@ public class ProviderStatsPersistenceJob {
         return validIds;
     }
 
-    /**
-     * 生成 Provider ID
-     * 与 FailoverService 中的逻辑保持一致
-     * @param item ModelGroupConfigItem
-     * @return Provider ID
-     */
-    private String generateProviderId(ModelGroupConfigItem item) {
-        return String.format("%s_%s_%s",
-                item.getBaseUrl(),
-                item.getApiKey() != null ? item.getApiKey().hashCode() : "null",
-                item.getModelName());
-    }
-
     private boolean shouldRunCleanup() {
         return System.currentTimeMillis() - lastCleanupAt >= CLEANUP_INTERVAL_MS;
     }
@@ -0,0 +1,72 @@
+package com.lumina.state;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 额外请求预算（对冲 / 重试）
+ *
+ * 每个正常请求存入 ratio 个令牌，每次额外请求消耗 1 个令牌，令牌积累上限为 maxTokens，
+ * 使额外请求量长期不超过正常请求量的 ratio 倍，上游变慢时不会因对冲或重试放大负载。
+ */
+public class RequestBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    public RequestBudget(double ratio, int maxTokens) {
+        this.depositPerRequest = Math.max(0, Math.round(ratio * SCALE));
+        this.capacity = Math.max(1, maxTokens) * SCALE;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    /**
+     * 记录一次正常请求
+     */
+    public void deposit() {
+        while (true) {
+            long current = balance.get();
+            long next = Math.min(capacity, current + depositPerRequest);
+            if (next == current || balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 尝试消耗一次额外请求的预算
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还一次已消耗的预算（多级预算中后一级不足时回滚前一级）
+     */
+    public void refund() {
+        while (true) {
+            long current = balance.get();
+            long next = Math.min(capacity, current + SCALE);
+            if (next == current || balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 当前可用的额外请求次数
+     */
+    public long available() {
+        return balance.get() / SCALE;
+    }
+}
@@ -0,0 +1,164 @@
+package com.lumina.state;
+
+import org.springframework.http.HttpHeaders;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 上游限流状态
+ *
+ * 从上游响应头解析限流信息，得出 Provider 的冷却截止时间，冷却期间选路跳过该 Provider：
+ * - 429：优先取 retry-after-ms / Retry-After，其次取已耗尽维度的重置时间，都没有时按默认冷却时间
+ * - 成功响应：剩余请求数或 Token 数已为 0 时，冷却到对应维度的重置时间
+ * 支持 OpenAI（x-ratelimit-*）与 Anthropic（anthropic-ratelimit-*）两种格式，冷却时间不超过上限。
+ */
+public class UpstreamRateLimit {
+
+    // 剩余额度与重置时间的响应头对
+    private static final String[][] QUOTA_HEADERS = {
+            {"x-ratelimit-remaining-requests", "x-ratelimit-reset-requests"},
+            {"x-ratelimit-remaining-tokens", "x-ratelimit-reset-tokens"},
+            {"anthropic-ratelimit-requests-remaining", "anthropic-ratelimit-requests-reset"},
+            {"anthropic-ratelimit-tokens-remaining", "anthropic-ratelimit-tokens-reset"},
+            {"anthropic-ratelimit-input-tokens-remaining", "anthropic-ratelimit-input-tokens-reset"},
+            {"anthropic-ratelimit-output-tokens-remaining", "anthropic-ratelimit-output-tokens-reset"},
+            {"x-ratelimit-remaining", "x-ratelimit-reset"}
+    };
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+    private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+    private static final long EPOCH_MILLIS_THRESHOLD = 1_000_000_000_000L;
+
+    private volatile long blockedUntil;
+
+    public boolean isBlocked(long now) {
+        return blockedUntil > now;
+    }
+
+    public long getBlockedUntil() {
+        return blockedUntil;
+    }
+
+    /**
+     * 根据上游响应更新冷却时间
+     * @param defaultCooldownMs 429 未携带任何时间提示时的冷却时间
+     * @param maxCooldownMs 冷却时间上限，防止异常响应头导致长期不可用
+     */
+    public void onResponse(int status, HttpHeaders headers, long now, long defaultCooldownMs, long maxCooldownMs) {
+        long until;
+        if (status == 429) {
+            long retryAfterMs = retryAfterMs(headers, now);
+            if (retryAfterMs > 0) {
+                until = now + retryAfterMs;
+            } else {
+                until = exhaustedUntil(headers, now);
+                if (until <= now) {
+                    until = now + defaultCooldownMs;
+                }
+            }
+        } else if (status >= 200 && status < 300) {
+            until = exhaustedUntil(headers, now);
+        } else {
+            return;
+        }
+
+        if (until > now) {
+            long capped = Math.min(until, now + maxCooldownMs);
+            if (capped > blockedUntil) {
+                blockedUntil = capped;
+            }
+        }
+    }
+
+    private static long retryAfterMs(HttpHeaders headers, long now) {
+        String millis = headers.getFirst("retry-after-ms");
+        if (millis != null) {
+            try {
+                return (long) Double.parseDouble(millis.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        return value != null ? Math.max(0, parseResetAt(value, now) - now) : 0;
+    }
+
+    /**
+     * 已耗尽（剩余为 0）维度中最晚的重置时间，没有耗尽的维度时返回 0
+     */
+    private static long exhaustedUntil(HttpHeaders headers, long now) {
+        long until = 0;
+        for (String[] pair : QUOTA_HEADERS) {
+            String remaining = headers.getFirst(pair[0]);
+            if (remaining == null || !isExhausted(remaining)) {
+                continue;
+            }
+            String reset = headers.getFirst(pair[1]);
+            if (reset != null) {
+                until = Math.max(until, parseResetAt(reset, now));
+            }
+        }
+        return until;
+    }
+
+    private static boolean isExhausted(String remaining) {
+        try {
+            return Double.parseDouble(remaining.trim()) <= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 解析重置时间，支持：秒数、Unix 时间戳（秒或毫秒）、Go 风格时长（如 6m0s、20ms）、
+     * RFC 3339 时间（Anthropic）与 HTTP 日期（Retry-After）
+     * @return 重置时刻（毫秒时间戳），无法解析时返回 0
+     */
+    private static long parseResetAt(String value, long now) {
+        String text = value.trim();
+        if (text.isEmpty()) {
+            return 0;
+        }
+        try {
+            double number = Double.parseDouble(text);
+            if (number >= EPOCH_MILLIS_THRESHOLD) {
+                return (long) number;
+            }
+            if (number >= EPOCH_SECONDS_THRESHOLD) {
+                return (long) (number * 1000);
+            }
+            return now + (long) (number * 1000);
+        } catch (NumberFormatException ignored) {
+        }
+
+        Matcher matcher = DURATION_PART.matcher(text);
+        long durationMs = 0;
+        int end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            double amount = Double.parseDouble(matcher.group(1));
+            durationMs += (long) switch (matcher.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1000;
+                default -> amount;
+            };
+            end = matcher.end();
+        }
+        if (end > 0 && end == text.length()) {
+            return now + durationMs;
+        }
+
+        try {
+            return Instant.parse(text).toEpochMilli();
+        } catch (Exception ignored) {
+        }
+        try {
+            return ZonedDateTime.parse(text, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (Exception ignored) {
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,311 @@
+package com.lumina.stats;
+
+import com.lumina.entity.ApiKeyUsage;
+import com.lumina.entity.RequestLog;
+import com.lumina.mapper.ApiKeyUsageMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * API Key 消费账本
+ *
+ * 在内存中按 Key 增量维护累计消费（单位：百万分之一），请求完成时即时记账，
+ * 定期将增量 checkpoint 到 api_key_usage 表，并回读数据库总量以合并其他节点的消费。
+ * 额度校验只读内存，不再对 request_logs 做聚合查询。
+ *
+ * 为避免并发请求同时通过额度检查后集体超支，请求发起前按最坏情况预估费用预占额度，
+ * 请求结束后释放预占，实际费用由 charge 记入。
+ *
+ * 启动加载失败时由定时 checkpoint 重试；加载完成前账本未就绪（健康检查为 OUT_OF_SERVICE），
+ * 设置了额度上限的 Key 一律拒绝预占，避免在消费未知时放行超额请求。
+ *
+ * 多节点部署时，一个节点从 request_logs 重建 api_key_usage 后通过缓存失效通道广播，
+ * 其他节点收到后同样把已写入 request_logs 的记账视为已落盘（{@link #adoptRebuild}），
+ * 避免下次 checkpoint 把已包含在重建结果中的增量再加一遍。
+ */
+@Slf4j
+@Component
+@Order(2) // 在 DatabaseInitializer 完成迁移之后加载
+@RequiredArgsConstructor
+public class ApiKeySpendLedger implements CommandLineRunner, HealthIndicator {
+
+    private static final BigDecimal MICROS_PER_UNIT = BigDecimal.valueOf(1_000_000);
+
+    private final ApiKeyUsageMapper apiKeyUsageMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Object checkpointLock = new Object();
+    // 区分重建广播是否来自本节点
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile boolean loaded;
+
+    @Override
+    public void run(String... args) {
+        if (!load()) {
+            log.error("API Key 消费账本未就绪，设置了额度的 Key 将被拒绝，定时 checkpoint 会重试加载");
+        }
+    }
+
+    private boolean load() {
+        try {
+            Long rows = apiKeyUsageMapper.selectCount(null);
+            if (rows == null || rows == 0) {
+                log.info("api_key_usage 为空，从 request_logs 重建 API Key 消费账本");
+                rebuildFromRequestLogs();
+            } else {
+                reloadPersisted();
+            }
+            loaded = true;
+            log.info("API Key 消费账本加载完成，共 {} 个 Key", accounts.size());
+            return true;
+        } catch (Exception e) {
+            log.error("加载 API Key 消费账本失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 账本是否已从数据库加载
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override
+    public Health health() {
+        return loaded ? Health.up().build() : Health.outOfService().withDetail("reason", "ledger not loaded").build();
+    }
+
+    /**
+     * 记入一次请求的实际费用
+     */
+    public void charge(String apiKey, BigDecimal cost) {
+        if (apiKey == null || apiKey.isEmpty()) {
+            return;
+        }
+        long micros = toMicros(cost);
+        if (micros != 0) {
+            account(apiKey).chargedMicros.addAndGet(micros);
+        }
+    }
+
+    /**
+     * 由 LogWriter 在一批请求日志写入 request_logs 后调用，记录其中已包含的本节点费用
+     */
+    public void recordWritten(List<RequestLog> logs) {
+        for (RequestLog requestLog : logs) {
+            String apiKey = requestLog.getApiKey();
+            if (apiKey == null || apiKey.isEmpty()) {
+                continue;
+            }
+            long micros = toMicros(requestLog.getCost());
+            if (micros != 0) {
+                account(apiKey).writtenMicros.addAndGet(micros);
+            }
+        }
+    }
+
+    /**
+     * 按预估费用预占额度（无锁 CAS）
+     *
+     * 已消费 + 已预占 + 预估 不超过上限时全额预占；没有其他在途预占时，只要还有剩余额度，
+     * 就预占剩余部分放行，保证串行请求的行为与预占前一致，超支最多为单个请求的差额。
+     *
+     * @return 实际预占量（百万分之一单位），额度不足时返回 -1
+     */
+    public long tryReserve(String apiKey, long limitMicros, long estimatedMicros) {
+        if (!loaded) {
+            return -1;
+        }
+        Account account = account(apiKey);
+        long estimate = Math.max(0, estimatedMicros);
+        while (true) {
+            long reserved = account.reservedMicros.get();
+            long spent = account.persistedMicros.get() + account.pendingMicros();
+            long remaining = limitMicros - spent - reserved;
+            if (remaining <= 0) {
+                return -1;
+            }
+            long granted = Math.min(estimate, remaining);
+            if (granted < estimate && reserved > 0) {
+                return -1;
+            }
+            if (account.reservedMicros.compareAndSet(reserved, reserved + granted)) {
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * 释放预占额度
+     */
+    public void release(String apiKey, long reservedMicros) {
+        if (reservedMicros <= 0) {
+            return;
+        }
+        Account account = accounts.get(apiKey);
+        if (account != null) {
+            account.reservedMicros.addAndGet(-reservedMicros);
+        }
+    }
+
+    /**
+     * 获取 Key 当前在途预占额度（百万分之一单位）
+     */
+    public long getReservedMicros(String apiKey) {
+        Account account = accounts.get(apiKey);
+        return account == null ? 0 : account.reservedMicros.get();
+    }
+
+    /**
+     * 获取 Key 的累计消费（百万分之一单位），O(1) 内存读取
+     */
+    public long getSpentMicros(String apiKey) {
+        Account account = accounts.get(apiKey);
+        if (account == null) {
+            return 0;
+        }
+        return account.persistedMicros.get() + account.pendingMicros();
+    }
+
+    public static long toMicros(BigDecimal amount) {
+        if (amount == null) {
+            return 0;
+        }
+        return amount.multiply(MICROS_PER_UNIT).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    /**
+     * 将内存增量落盘，并回读数据库总量
+     */
+    @Scheduled(fixedDelay = 5_000)
+    public void checkpoint() {
+        // 启动加载失败时在这里重试，加载前的增量保留在内存中
+        if (!loaded && !load()) {
+            return;
+        }
+        synchronized (checkpointLock) {
+            Map<String, Long> drained = new HashMap<>();
+            List<ApiKeyUsage> rows = new ArrayList<>();
+            accounts.forEach((apiKey, account) -> {
+                long charged = account.chargedMicros.get();
+                long delta = charged - account.checkpointedMicros;
+                if (delta == 0) {
+                    return;
+                }
+                account.persistedMicros.addAndGet(delta);
+                account.checkpointedMicros = charged;
+                drained.put(apiKey, delta);
+
+                ApiKeyUsage row = new ApiKeyUsage();
+                row.setApiKey(apiKey);
+                row.setTotalCost(BigDecimal.valueOf(delta).divide(MICROS_PER_UNIT, 6, RoundingMode.UNNECESSARY));
+                rows.add(row);
+            });
+
+            try {
+                if (!rows.isEmpty()) {
+                    apiKeyUsageMapper.upsertIncrementBatch(rows);
+                }
+            } catch (Exception e) {
+                log.error("API Key 消费账本落盘失败，增量将在下次重试", e);
+                drained.forEach((apiKey, delta) -> {
+                    Account account = account(apiKey);
+                    account.persistedMicros.addAndGet(-delta);
+                    account.checkpointedMicros -= delta;
+                });
+                return;
+            }
+
+            try {
+                reloadPersisted();
+            } catch (Exception e) {
+                log.warn("回读 API Key 消费总量失败（不影响本地计数）", e);
+            }
+        }
+    }
+
+    /**
+     * 从 request_logs 全量重建账本
+     *
+     * 本节点已写入 request_logs 的费用视为已落盘，尚未写入的（仍在 LogWriter 队列中、写入失败或被丢弃）
+     * 保留为待落盘增量。调用方需保证重建期间没有请求日志写入，见 {@link com.lumina.logging.LogWriter#runExclusive}。
+     */
+    public void rebuildFromRequestLogs() {
+        synchronized (checkpointLock) {
+            transactionTemplate.executeWithoutResult(status -> {
+                apiKeyUsageMapper.deleteAll();
+                apiKeyUsageMapper.rebuildFromRequestLogs();
+            });
+            resetToWritten();
+        }
+    }
+
+    /**
+     * 其他节点重建了 api_key_usage：本节点已写入 request_logs 的记账已包含在重建结果中，不再落盘。
+     * 与 {@link #rebuildFromRequestLogs} 一样需在没有请求日志写入时调用
+     */
+    public void adoptRebuild() {
+        synchronized (checkpointLock) {
+            resetToWritten();
+        }
+    }
+
+    private void resetToWritten() {
+        accounts.values().forEach(account -> {
+            account.checkpointedMicros = account.writtenMicros.get();
+            account.persistedMicros.set(0);
+        });
+        reloadPersisted();
+    }
+
+    private void reloadPersisted() {
+        for (ApiKeyUsage row : apiKeyUsageMapper.selectList(null)) {
+            account(row.getApiKey()).persistedMicros.set(toMicros(row.getTotalCost()));
+        }
+    }
+
+    private Account account(String apiKey) {
+        return accounts.computeIfAbsent(apiKey, k -> new Account());
+    }
+
+    private static class Account {
+        // 已落盘（含其他节点）的累计消费
+        final AtomicLong persistedMicros = new AtomicLong();
+        // 本节点累计记账，只增不减
+        final AtomicLong chargedMicros = new AtomicLong();
+        // 已计入 persistedMicros 的记账量，只在 checkpointLock 内修改
+        volatile long checkpointedMicros;
+        // 已写入 request_logs 的记账量，重建后视为已落盘
+        final AtomicLong writtenMicros = new AtomicLong();
+        // 本节点在途请求的预占额度，不落盘
+        final AtomicLong reservedMicros = new AtomicLong();
+
+        // 本节点尚未落盘的增量
+        long pendingMicros() {
+            return chargedMicros.get() - checkpointedMicros;
+        }
+    }
+}
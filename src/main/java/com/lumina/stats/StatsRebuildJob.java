@@ -4,14 +4,18 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.lumina.entity.RequestLog;
 import com.lumina.entity.StatsDaily;
+import com.lumina.logging.LogWriter;
 import com.lumina.mapper.RequestLogMapper;
 import com.lumina.mapper.StatsDailyMapper;
 import com.lumina.mapper.StatsHourlyMapper;
+import com.lumina.service.HotPathCacheService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -34,6 +38,9 @@ public class StatsRebuildJob {
     private final StatsDailyMapper statsDailyMapper;
     private final StatsHourlyMapper statsHourlyMapper;
     private final RedisTemplate<String, String> redisTemplate;
+    private final ApiKeySpendLedger apiKeySpendLedger;
+    private final LogWriter logWriter;
+    private final HotPathCacheService hotPathCacheService;
 
     private static final DateTimeFormatter HOUR_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00:00");
     private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
@@ -105,6 +112,9 @@ public class StatsRebuildJob {
             }
 
             rebuildRedisCounters();
+            // 重建期间暂停写入请求日志，保证账本区分得出哪些费用已包含在 request_logs 中
+            logWriter.runExclusive(apiKeySpendLedger::rebuildFromRequestLogs);
+            hotPathCacheService.notifySpendLedgerRebuilt(apiKeySpendLedger.getNodeId());
 
             long elapsed = System.currentTimeMillis() - startTime;
             log.info("统计重建完成，共处理 {} 条记录，耗时 {}ms", totalProcessed, elapsed);
@@ -115,6 +125,26 @@ public class StatsRebuildJob {
         }
     }
 
+    /**
+     * 其他节点重建了消费账本：在请求日志写入线程上把本节点已写入的记账视为已落盘，
+     * 否则本节点下一次 checkpoint 会把已包含在重建结果中的增量再累加一遍
+     */
+    @EventListener
+    public void onSpendLedgerRebuilt(HotPathCacheService.SpendLedgerRebuiltEvent event) {
+        if (apiKeySpendLedger.getNodeId().equals(event.nodeId())) {
+            return;
+        }
+        // 失效消息在 Redis 监听线程上处理，等待写入线程放到 boundedElastic
+        Schedulers.boundedElastic().schedule(() -> {
+            try {
+                logWriter.runExclusive(apiKeySpendLedger::adoptRebuild);
+                log.info("节点 {} 重建了 API Key 消费账本，本节点已同步落盘基线", event.nodeId());
+            } catch (Exception e) {
+                log.error("同步 API Key 消费账本重建失败", e);
+            }
+        });
+    }
+
     private void processBatch(List<RequestLog> batch) {
         Map<String, AggBucket> hourlyAgg = new HashMap<>();
         Map<String, AggBucket> dailyAgg = new HashMap<>();
@@ -0,0 +1,53 @@
+package com.lumina.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.JsonNodeFeature;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 请求指纹：属性按字段名排序后序列化，字段顺序不同的相同请求得到相同的哈希
+ */
+public final class CanonicalJson {
+
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(JsonNodeFeature.WRITE_PROPERTIES_SORTED, true);
+
+    private CanonicalJson() {
+    }
+
+    /**
+     * @param scopes 参与哈希的作用域（请求类型、模型分组等），null 视为空串
+     * @return SHA-256 十六进制串
+     */
+    public static String sha256(JsonNode body, String... scopes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String scope : scopes) {
+                if (scope != null) {
+                    digest.update(scope.getBytes(StandardCharsets.UTF_8));
+                }
+                digest.update((byte) 0);
+            }
+            digest.update(CANONICAL_MAPPER.writeValueAsBytes(body));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("计算请求指纹失败", e);
+        }
+    }
+
+    /**
+     * 请求是否为确定性采样（temperature 为 0），Gemini 的采样参数位于 generationConfig
+     */
+    public static boolean isDeterministic(JsonNode params) {
+        JsonNode temperature = params.has("temperature")
+                ? params.get("temperature")
+                : params.path("generationConfig").get("temperature");
+        return temperature != null && temperature.isNumber() && temperature.doubleValue() == 0;
+    }
+}
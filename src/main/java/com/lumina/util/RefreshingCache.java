@@ -0,0 +1,233 @@
+package com.lumina.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 有界、带预刷新的加载缓存
+ *
+ * 存储基于 {@link TinyLfuCache}，容量受限且按访问频率淘汰，大量一次性键无法挤掉热点条目。
+ * - 单飞加载：同一个键同时只有一个 loader 在执行，其余调用者等待其结果
+ * - 预刷新：条目存活超过 TTL 的 refreshAheadRatio 后，下一次命中在后台重新加载，读取方仍返回旧值，
+ *   TTL 到期前热点条目不会在请求路径上同步加载
+ * - 失效：remove / clear 会使进行中的加载结果作废，避免旧值在失效后被写回
+ * - 预热：putAll 批量写入由调用方一次查出的条目，之后与单键加载的条目一样预刷新
+ * loader 返回 null 时不缓存。
+ */
+public class RefreshingCache<V> {
+
+    /**
+     * 查询与加载结果回调，用于记录指标
+     */
+    public interface Listener {
+        /**
+         * @param result hit / miss / expired
+         */
+        void onLookup(String result);
+
+        /**
+         * @param result loaded / null / shared（等待其他调用者的加载）/ refreshed / refresh_failed
+         */
+        void onLoad(String result, long durationNanos);
+    }
+
+    private final TinyLfuCache<String, Entry<V>> entries;
+    private final int maximumSize;
+    private final long ttlMs;
+    private final long refreshAfterMs;
+    private final Executor refreshExecutor;
+    private final Listener listener;
+    private final ConcurrentHashMap<String, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    // 每次失效递增，加载开始后发生过失效则结果不写入
+    private final AtomicLong generation = new AtomicLong();
+
+    public RefreshingCache(int maximumSize, long ttlMs, double refreshAheadRatio, Executor refreshExecutor, Listener listener) {
+        this.entries = new TinyLfuCache<>(maximumSize);
+        this.maximumSize = maximumSize;
+        this.ttlMs = ttlMs;
+        this.refreshAfterMs = refreshAheadRatio > 0 && refreshAheadRatio < 1 ? (long) (ttlMs * refreshAheadRatio) : ttlMs;
+        this.refreshExecutor = refreshExecutor;
+        this.listener = listener;
+    }
+
+    /**
+     * 只读缓存，不加载；命中且到达预刷新时间时在后台刷新
+     * @return 不存在或已过期时返回 null
+     */
+    public V getIfPresent(String key) {
+        long now = System.currentTimeMillis();
+        // 过期由这里判断，以区分未缓存与已过期
+        Entry<V> entry = entries.get(key, now);
+        if (entry == null) {
+            listener.onLookup("miss");
+            return null;
+        }
+        if (now >= entry.expiresAt) {
+            entries.remove(key);
+            listener.onLookup("expired");
+            return null;
+        }
+        listener.onLookup("hit");
+        if (now >= entry.refreshAt && entry.refreshing.compareAndSet(false, true)) {
+            // 调度前记录代数，排队期间发生失效则放弃刷新
+            long observedGeneration = generation.get();
+            try {
+                refreshExecutor.execute(() -> refresh(key, entry, observedGeneration));
+            } catch (RuntimeException e) {
+                // 刷新线程池饱和时放弃本次预刷新，到期后由请求路径同步加载
+                entry.refreshing.set(false);
+            }
+        }
+        return entry.value;
+    }
+
+    /**
+     * 读取缓存，未命中时同步加载，同一键的并发加载只执行一次
+     */
+    public V get(String key, Supplier<V> loader) {
+        V cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            long start = System.nanoTime();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            } finally {
+                listener.onLoad("shared", System.nanoTime() - start);
+            }
+        }
+
+        try {
+            V loaded = load(key, loader, false, generation.get());
+            future.complete(loaded);
+            return loaded;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * 批量写入预热条目，超出容量的部分不写入
+     * @param loader             单键加载函数，用于条目的预刷新
+     * @param observedGeneration 批量查询开始前通过 {@link #generation()} 取得的代数，期间发生失效则整批放弃
+     * @return 写入的条目数，整批放弃时返回 -1
+     */
+    public int putAll(Map<String, V> values, Function<String, V> loader, long observedGeneration) {
+        long now = System.currentTimeMillis();
+        int written = 0;
+        for (Map.Entry<String, V> value : values.entrySet()) {
+            if (written >= maximumSize) {
+                break;
+            }
+            if (generation.get() != observedGeneration) {
+                return -1;
+            }
+            String key = value.getKey();
+            if (value.getValue() != null) {
+                entries.put(key, new Entry<>(value.getValue(), () -> loader.apply(key), now + refreshAfterMs, now + ttlMs),
+                        Long.MAX_VALUE);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    public void remove(String key) {
+        generation.incrementAndGet();
+        entries.remove(key);
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private V load(String key, Supplier<V> loader, boolean refresh, long observedGeneration) {
+        long start = System.nanoTime();
+        V loaded = loader.get();
+        long duration = System.nanoTime() - start;
+        if (loaded == null) {
+            listener.onLoad("null", duration);
+            if (refresh && generation.get() == observedGeneration) {
+                entries.remove(key);
+            }
+            return null;
+        }
+        listener.onLoad(refresh ? "refreshed" : "loaded", duration);
+        if (generation.get() == observedGeneration) {
+            long now = System.currentTimeMillis();
+            entries.put(key, new Entry<>(loaded, loader, now + refreshAfterMs, now + ttlMs), Long.MAX_VALUE);
+        }
+        return loaded;
+    }
+
+    private void refresh(String key, Entry<V> entry, long observedGeneration) {
+        if (generation.get() != observedGeneration) {
+            return;
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, future) != null) {
+            return;
+        }
+        try {
+            future.complete(load(key, entry.loader, true, observedGeneration));
+        } catch (RuntimeException | Error e) {
+            // 刷新失败保留旧值直到 TTL 到期，期间允许下一次命中再次尝试
+            entry.refreshing.set(false);
+            listener.onLoad("refresh_failed", 0);
+            future.completeExceptionally(e);
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return e;
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final Supplier<V> loader;
+        final long refreshAt;
+        final long expiresAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(V value, Supplier<V> loader, long refreshAt, long expiresAt) {
+            this.value = value;
+            this.loader = loader;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.lumina.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 有界 W-TinyLFU 缓存
+ *
+ * 新条目先进入占容量 1% 的 LRU 窗口区，被挤出窗口后与主区（SLRU：试用区 + 保护区）的淘汰候选
+ * 比较访问频率（Count-Min Sketch 估算），频率更高者留下，使偶发的一次性访问无法冲掉热点条目。
+ * 条目可带过期时间，读取时惰性清除。所有操作在同一把锁内完成，适合单次操作成本远低于调用方业务的场景。
+ */
+public class TinyLfuCache<K, V> {
+
+    private static final int SEGMENT_WINDOW = 0;
+    private static final int SEGMENT_PROBATION = 1;
+    private static final int SEGMENT_PROTECTED = 2;
+
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    private final FrequencySketch sketch;
+
+    private final Map<K, Node<V>> data = new HashMap<>();
+    // accessOrder 的 LinkedHashMap 作为各分区的 LRU 队列，迭代顺序即淘汰顺序
+    private final LinkedHashMap<K, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Node<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Node<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+    public TinyLfuCache(int maximumSize) {
+        this.maximumSize = Math.max(1, maximumSize);
+        this.windowMaximum = Math.max(1, this.maximumSize / 100);
+        int mainMaximum = Math.max(1, this.maximumSize - windowMaximum);
+        this.protectedMaximum = Math.max(1, mainMaximum * 4 / 5);
+        this.sketch = new FrequencySketch(this.maximumSize);
+    }
+
+    /**
+     * @return 不存在或已过期时返回 null
+     */
+    public synchronized V get(K key, long now) {
+        sketch.increment(key);
+        Node<V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (node.isExpired(now)) {
+            removeNode(key, node);
+            return null;
+        }
+        onHit(key, node);
+        return node.value;
+    }
+
+    /**
+     * @param expiresAt 过期时刻（毫秒），Long.MAX_VALUE 表示不过期
+     */
+    public synchronized void put(K key, V value, long expiresAt) {
+        sketch.increment(key);
+        Node<V> node = data.get(key);
+        if (node != null) {
+            node.value = value;
+            node.expiresAt = expiresAt;
+            onHit(key, node);
+            return;
+        }
+        node = new Node<>(value, expiresAt);
+        data.put(key, node);
+        window.put(key, node);
+        if (window.size() > windowMaximum) {
+            evictFromWindow();
+        }
+    }
+
+    public synchronized V remove(K key) {
+        Node<V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        removeNode(key, node);
+        return node.value;
+    }
+
+    public synchronized void clear() {
+        data.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    public synchronized int size() {
+        return data.size();
+    }
+
+    private void onHit(K key, Node<V> node) {
+        switch (node.segment) {
+            case SEGMENT_WINDOW -> window.get(key);
+            case SEGMENT_PROTECTED -> protectedSegment.get(key);
+            default -> {
+                // 试用区条目再次命中后晋升保护区，保护区超限时其 LRU 条目降回试用区
+                probation.remove(key);
+                node.segment = SEGMENT_PROTECTED;
+                protectedSegment.put(key, node);
+                if (protectedSegment.size() > protectedMaximum) {
+                    Iterator<Map.Entry<K, Node<V>>> it = protectedSegment.entrySet().iterator();
+                    Map.Entry<K, Node<V>> demoted = it.next();
+                    it.remove();
+                    demoted.getValue().segment = SEGMENT_PROBATION;
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * 窗口区溢出：主区有空位时直接进入试用区，否则与试用区的淘汰候选比较频率
+     */
+    private void evictFromWindow() {
+        Iterator<Map.Entry<K, Node<V>>> it = window.entrySet().iterator();
+        Map.Entry<K, Node<V>> candidate = it.next();
+        it.remove();
+        K candidateKey = candidate.getKey();
+        Node<V> candidateNode = candidate.getValue();
+        candidateNode.segment = SEGMENT_PROBATION;
+
+        if (data.size() <= maximumSize) {
+            probation.put(candidateKey, candidateNode);
+            return;
+        }
+
+        Map.Entry<K, Node<V>> victim = firstEntry(probation);
+        if (victim == null) {
+            victim = firstEntry(protectedSegment);
+        }
+        if (victim == null || sketch.frequency(candidateKey) > sketch.frequency(victim.getKey())) {
+            if (victim != null) {
+                removeNode(victim.getKey(), victim.getValue());
+            }
+            probation.put(candidateKey, candidateNode);
+        } else {
+            data.remove(candidateKey);
+        }
+    }
+
+    private void removeNode(K key, Node<V> node) {
+        data.remove(key);
+        switch (node.segment) {
+            case SEGMENT_WINDOW -> window.remove(key);
+            case SEGMENT_PROBATION -> probation.remove(key);
+            default -> protectedSegment.remove(key);
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> firstEntry(LinkedHashMap<K, V> map) {
+        Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    private static final class Node<V> {
+        V value;
+        long expiresAt;
+        int segment = SEGMENT_WINDOW;
+
+        Node(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    /**
+     * 4 位计数器的 Count-Min Sketch，累计访问次数达到容量 10 倍时所有计数减半，使频率随时间衰减
+     */
+    static final class FrequencySketch {
+
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int size = Integer.highestOneBit(Math.max(64, maximumSize) - 1) << 1;
+            this.table = new long[size];
+            this.tableMask = size - 1;
+            this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * maximumSize);
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, counter(hash, i));
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                added |= incrementAt(hash, i);
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private int counter(int hash, int row) {
+            int index = indexOf(hash, row);
+            int offset = counterOffset(hash, row);
+            return (int) ((table[index] >>> offset) & 0xfL);
+        }
+
+        private boolean incrementAt(int hash, int row) {
+            int index = indexOf(hash, row);
+            int offset = counterOffset(hash, row);
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        private int indexOf(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return (int) h & tableMask;
+        }
+
+        private static int counterOffset(int hash, int row) {
+            // 每个 long 含 16 个 4 位计数器，各行取不同的计数器位置
+            return (((hash >>> (row << 3)) & 3) << 2 | row) << 2;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+-- Migration V007: Add incrementally maintained per-key spend ledger
+-- 由 ApiKeySpendLedger 定期增量落盘，替代额度校验时对 request_logs 的全表聚合
+CREATE TABLE IF NOT EXISTS api_key_usage (
+    api_key VARCHAR(255) NOT NULL PRIMARY KEY COMMENT '客户端API密钥',
+    total_cost DECIMAL(14,6) NOT NULL DEFAULT 0 COMMENT '累计消费金额',
+    updated_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='API密钥累计消费表';
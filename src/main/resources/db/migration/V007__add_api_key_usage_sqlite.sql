@@ -0,0 +1,6 @@
+-- Migration V007 (SQLite): Add incrementally maintained per-key spend ledger
+CREATE TABLE IF NOT EXISTS api_key_usage (
+    api_key TEXT NOT NULL PRIMARY KEY,
+    total_cost REAL NOT NULL DEFAULT 0,
+    updated_at TEXT NOT NULL DEFAULT (datetime('now'))
+);
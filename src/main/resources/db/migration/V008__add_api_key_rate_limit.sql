@@ -0,0 +1,2 @@
+-- Migration V008: Add per API key request rate limit
+ALTER TABLE `api_keys` ADD COLUMN `rate_limit_rpm` int DEFAULT NULL COMMENT '每分钟请求数上限，NULL表示使用全局默认值';
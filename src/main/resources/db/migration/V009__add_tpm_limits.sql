@@ -0,0 +1,3 @@
+-- Migration V009: Add token-per-minute limits for API keys and model groups
+ALTER TABLE `api_keys` ADD COLUMN `rate_limit_tpm` int DEFAULT NULL COMMENT '每分钟Token数上限，NULL表示使用全局默认值';
+ALTER TABLE `model_groups` ADD COLUMN `tpm_limit` int DEFAULT NULL COMMENT '分组每分钟Token数上限，NULL表示不限制';
@@ -0,0 +1,3 @@
+-- Migration V009: Add token-per-minute limits for API keys and model groups for SQLite
+ALTER TABLE `api_keys` ADD COLUMN `rate_limit_tpm` INTEGER DEFAULT NULL;
+ALTER TABLE `model_groups` ADD COLUMN `tpm_limit` INTEGER DEFAULT NULL;
@@ -0,0 +1,2 @@
+-- Migration V010: Add hedged request switch for model groups
+ALTER TABLE `model_groups` ADD COLUMN `hedge_enabled` tinyint NOT NULL DEFAULT 0 COMMENT '是否启用对冲请求：0-关闭，1-开启';
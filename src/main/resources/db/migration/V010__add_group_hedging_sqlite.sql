@@ -0,0 +1,2 @@
+-- Migration V010: Add hedged request switch for model groups for SQLite
+ALTER TABLE `model_groups` ADD COLUMN `hedge_enabled` INTEGER NOT NULL DEFAULT 0;
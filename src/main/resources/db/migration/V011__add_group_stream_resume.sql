@@ -0,0 +1,2 @@
+-- Migration V011: Add stream resumption switch for model groups
+ALTER TABLE `model_groups` ADD COLUMN `stream_resume_enabled` tinyint NOT NULL DEFAULT 0 COMMENT '是否启用流式续传：0-关闭，1-开启';
@@ -0,0 +1,2 @@
+-- Migration V011: Add stream resumption switch for model groups for SQLite
+ALTER TABLE `model_groups` ADD COLUMN `stream_resume_enabled` INTEGER NOT NULL DEFAULT 0;
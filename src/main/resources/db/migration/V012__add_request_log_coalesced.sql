@@ -0,0 +1,2 @@
+-- Migration V012: Mark request logs served by a coalesced in-flight request
+ALTER TABLE `request_logs` ADD COLUMN `coalesced` tinyint(1) NOT NULL DEFAULT 0 COMMENT '是否合并到相同的在途请求（未产生上游调用）' AFTER `api_key`;
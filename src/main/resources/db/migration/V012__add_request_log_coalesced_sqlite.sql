@@ -0,0 +1,2 @@
+-- Migration V012: Mark request logs served by a coalesced in-flight request for SQLite
+ALTER TABLE `request_logs` ADD COLUMN `coalesced` INTEGER NOT NULL DEFAULT 0;
@@ -0,0 +1,3 @@
+-- Migration V013: Add per-group response cache TTL and cache hit flag for request logs
+ALTER TABLE `model_groups` ADD COLUMN `response_cache_ttl_seconds` int DEFAULT NULL COMMENT '响应缓存有效期（秒），为空或 0 表示不缓存' AFTER `stream_resume_enabled`;
+ALTER TABLE `request_logs` ADD COLUMN `cache_hit` tinyint(1) NOT NULL DEFAULT 0 COMMENT '是否命中响应缓存（未产生上游调用）' AFTER `coalesced`;
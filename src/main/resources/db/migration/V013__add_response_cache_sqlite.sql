@@ -0,0 +1,3 @@
+-- Migration V013: Add per-group response cache TTL and cache hit flag for request logs for SQLite
+ALTER TABLE `model_groups` ADD COLUMN `response_cache_ttl_seconds` INTEGER DEFAULT NULL;
+ALTER TABLE `request_logs` ADD COLUMN `cache_hit` INTEGER NOT NULL DEFAULT 0;
@@ -47,6 +47,8 @@ CREATE TABLE `api_keys` (
   `is_enabled` tinyint(1) NOT NULL DEFAULT '1' COMMENT '是否启用：0-禁用，1-启用',
   `expired_at` bigint DEFAULT NULL COMMENT '过期时间戳（秒），NULL表示永不过期',
   `max_amount` decimal(10,4) DEFAULT NULL COMMENT '最大消费额度，NULL表示无限制',
+  `rate_limit_rpm` int DEFAULT NULL COMMENT '每分钟请求数上限，NULL表示使用全局默认值',
+  `rate_limit_tpm` int DEFAULT NULL COMMENT '每分钟Token数上限，NULL表示使用全局默认值',
   `supported_models` text COLLATE utf8mb4_unicode_ci COMMENT '支持的模型列表（逗号分隔），NULL表示无限制',
   `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
@@ -88,6 +90,10 @@ CREATE TABLE `model_groups` (
   `balance_mode` tinyint NOT NULL COMMENT '负载均衡模式：1-轮询，2-随机，3-故障转移，4-加权',
   `match_regex` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '匹配正则表达式',
   `first_token_timeout` int DEFAULT '45000' COMMENT '首个Token超时时间（毫秒）',
+  `tpm_limit` int DEFAULT NULL COMMENT '分组每分钟Token数上限，NULL表示不限制',
+  `hedge_enabled` tinyint NOT NULL DEFAULT 0 COMMENT '是否启用对冲请求：0-关闭，1-开启',
+  `stream_resume_enabled` tinyint NOT NULL DEFAULT 0 COMMENT '是否启用流式续传：0-关闭，1-开启',
+  `response_cache_ttl_seconds` int DEFAULT NULL COMMENT '响应缓存有效期（秒），为空或 0 表示不缓存',
   `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
@@ -202,6 +208,8 @@ CREATE TABLE `request_logs` (
   `error_stage` varchar(32) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT 'CONNECT / HTTP / DECODE / TIMEOUT',
   `retry_count` int DEFAULT '0' COMMENT '故障转移次数',
   `api_key` varchar(255) DEFAULT NULL COMMENT '客户端API密钥',
+  `coalesced` tinyint(1) NOT NULL DEFAULT 0 COMMENT '是否合并到相同的在途请求（未产生上游调用）',
+  `cache_hit` tinyint(1) NOT NULL DEFAULT 0 COMMENT '是否命中响应缓存（未产生上游调用）',
   `created_at` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   PRIMARY KEY (`id`),
   KEY `idx_request_time` (`request_time`),
@@ -260,6 +268,17 @@ CREATE TABLE `stats_hourly` (
   KEY `idx_provider_id` (`provider_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='按小时聚合统计表';
 
+-- ----------------------------
+-- Table structure for api_key_usage (V007 migration)
+-- ----------------------------
+DROP TABLE IF EXISTS `api_key_usage`;
+CREATE TABLE `api_key_usage` (
+  `api_key` varchar(255) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '客户端API密钥',
+  `total_cost` decimal(14,6) NOT NULL DEFAULT 0 COMMENT '累计消费金额',
+  `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`api_key`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='API密钥累计消费表';
+
 -- ----------------------------
 -- Table structure for migration_records
 -- ----------------------------
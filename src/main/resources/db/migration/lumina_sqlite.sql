@@ -40,6 +40,8 @@ CREATE TABLE IF NOT EXISTS `api_keys` (
   `is_enabled` INTEGER NOT NULL DEFAULT 1,
   `expired_at` INTEGER,
   `max_amount` REAL,
+  `rate_limit_rpm` INTEGER,
+  `rate_limit_tpm` INTEGER,
   `supported_models` TEXT,
   `created_at` DATETIME NOT NULL DEFAULT (datetime('now')),
   `updated_at` DATETIME NOT NULL DEFAULT (datetime('now'))
@@ -77,6 +79,10 @@ CREATE TABLE IF NOT EXISTS `model_groups` (
   `balance_mode` INTEGER NOT NULL,
   `match_regex` TEXT,
   `first_token_timeout` INTEGER DEFAULT 45000,
+  `tpm_limit` INTEGER,
+  `hedge_enabled` INTEGER NOT NULL DEFAULT 0,
+  `stream_resume_enabled` INTEGER NOT NULL DEFAULT 0,
+  `response_cache_ttl_seconds` INTEGER DEFAULT NULL,
   `created_at` DATETIME NOT NULL DEFAULT (datetime('now')),
   `updated_at` DATETIME NOT NULL DEFAULT (datetime('now'))
 );
@@ -185,6 +191,8 @@ CREATE TABLE IF NOT EXISTS `request_logs` (
   `error_stage` TEXT,
   `retry_count` INTEGER DEFAULT 0,
   `api_key` TEXT DEFAULT NULL,
+  `coalesced` INTEGER NOT NULL DEFAULT 0,
+  `cache_hit` INTEGER NOT NULL DEFAULT 0,
   `created_at` DATETIME DEFAULT (datetime('now'))
 );
 
@@ -239,6 +247,15 @@ CREATE TABLE IF NOT EXISTS `stats_hourly` (
 CREATE UNIQUE INDEX IF NOT EXISTS `uk_hourly_hour_provider_model` ON `stats_hourly` (`stat_hour`, `provider_id`, `model_name`);
 CREATE INDEX IF NOT EXISTS `idx_hourly_stat_hour` ON `stats_hourly` (`stat_hour`);
 
+-- ----------------------------
+-- Table: api_key_usage (V007)
+-- ----------------------------
+CREATE TABLE IF NOT EXISTS `api_key_usage` (
+  `api_key` TEXT NOT NULL PRIMARY KEY,
+  `total_cost` REAL NOT NULL DEFAULT 0,
+  `updated_at` TEXT NOT NULL DEFAULT (datetime('now'))
+);
+
 -- ----------------------------
 -- Table: migration_records
 -- ----------------------------
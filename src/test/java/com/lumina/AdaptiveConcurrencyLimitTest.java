@@ -0,0 +1,111 @@
+package com.lumina;
+
+import com.lumina.state.AdaptiveConcurrencyLimit;
+import com.lumina.state.ProviderBulkhead;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    void testDropShrinksPermits() {
+        ProviderBulkhead bulkhead = new ProviderBulkhead(10, new AdaptiveConcurrencyLimit(10, 2, 2.0, 0.5));
+        bulkhead.recordDrop();
+        assertEquals(5, bulkhead.getLimit());
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bulkhead.tryAcquire());
+        }
+        assertFalse(bulkhead.tryAcquire());
+    }
+
+    @Test
+    void testRttInflationShrinksAndRecoveryGrowsUpToCeiling() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(40, 2, 2.0, 0.9);
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(100, 40, 40);
+        }
+        assertEquals(40, limit.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(1_000, 40, 40);
+        }
+        int shrunk = limit.getLimit();
+        assertTrue(shrunk < 30, "limit should shrink under RTT inflation: " + shrunk);
+
+        // 在途请求很少时不因 RTT 平稳而提升
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(100, 1, 40);
+        }
+        assertTrue(limit.getLimit() <= shrunk);
+
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(100, limit.getLimit(), 40);
+        }
+        assertEquals(40, limit.getLimit());
+    }
+
+    @Test
+    void testSuccessWithoutRttGrowsOnlyWhileRttIsStable() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(40, 2, 2.0, 0.5);
+        limit.onDrop(40);
+        assertEquals(20, limit.getLimit());
+
+        // 没有流式 RTT 样本时，非流式请求顺利完成即可恢复
+        for (int i = 0; i < 20; i++) {
+            limit.onSuccess(limit.getLimit(), 40);
+        }
+        assertEquals(40, limit.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(100, 40, 40);
+        }
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(1_000, 40, 40);
+        }
+        int shrunk = limit.getLimit();
+        for (int i = 0; i < 20; i++) {
+            limit.onSuccess(shrunk, 40);
+        }
+        assertEquals(shrunk, limit.getLimit());
+    }
+
+    @Test
+    void testCeilingChangeDoesNotResetLearnedLimit() {
+        ProviderBulkhead bulkhead = new ProviderBulkhead(50, new AdaptiveConcurrencyLimit(50, 2, 2.0, 0.5));
+        bulkhead.recordDrop();
+        assertEquals(25, bulkhead.getLimit());
+
+        // 不同分组对同一 Provider 配置了不同的最大并发数，每次尝试都会重新设置
+        for (int i = 0; i < 5; i++) {
+            bulkhead.setMaxConcurrent(20);
+            assertEquals(20, bulkhead.getLimit());
+            bulkhead.setMaxConcurrent(50);
+            assertEquals(25, bulkhead.getLimit());
+        }
+        assertEquals(50, bulkhead.getMaxConcurrent());
+    }
+
+    @Test
+    void testGrowthStopsAtCeilingAndRaisedCeilingIsLearned() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(50, 2, 2.0, 0.9);
+        for (int i = 0; i < 20; i++) {
+            limit.onSuccess(50, 50);
+        }
+        assertEquals(50, limit.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            limit.onSuccess(limit.getLimit(), 100);
+        }
+        assertEquals(100, limit.getLimit());
+
+        // 暂时调低的 ceiling 不会压低已学到的上限，收缩以较小值为基准立即生效
+        limit.onSuccess(10, 10);
+        assertEquals(100, limit.getLimit());
+        limit.onDrop(10);
+        assertEquals(9, limit.getLimit());
+    }
+}
@@ -0,0 +1,187 @@
+package com.lumina;
+
+import com.lumina.entity.ApiKeyUsage;
+import com.lumina.entity.RequestLog;
+import com.lumina.mapper.ApiKeyUsageMapper;
+import com.lumina.stats.ApiKeySpendLedger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class ApiKeySpendLedgerTest {
+
+    @Mock
+    private ApiKeyUsageMapper apiKeyUsageMapper;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private ApiKeySpendLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ApiKeyUsage persisted = new ApiKeyUsage();
+        persisted.setApiKey("sk-a");
+        persisted.setTotalCost(new BigDecimal("1.5"));
+        when(apiKeyUsageMapper.selectCount(null)).thenReturn(1L);
+        when(apiKeyUsageMapper.selectList(null)).thenReturn(List.of(persisted));
+        ledger.run();
+    }
+
+    @Test
+    void testChargeAddsToPersistedTotal() {
+        ledger.charge("sk-a", new BigDecimal("0.25"));
+        ledger.charge("sk-a", new BigDecimal("0.25"));
+        ledger.charge(null, new BigDecimal("9"));
+
+        assertEquals(2_000_000L, ledger.getSpentMicros("sk-a"));
+        assertEquals(0L, ledger.getSpentMicros("sk-unknown"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCheckpointWritesOnlyDeltas() {
+        ledger.charge("sk-b", new BigDecimal("0.1234"));
+
+        ledger.checkpoint();
+
+        ArgumentCaptor<List<ApiKeyUsage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(apiKeyUsageMapper).upsertIncrementBatch(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals("sk-b", captor.getValue().get(0).getApiKey());
+        assertEquals(0, new BigDecimal("0.1234").compareTo(captor.getValue().get(0).getTotalCost()));
+
+        // 没有新增量时不再写库
+        ledger.checkpoint();
+        verify(apiKeyUsageMapper, times(1)).upsertIncrementBatch(anyList());
+    }
+
+    @Test
+    void testFailedCheckpointKeepsDeltaPending() {
+        ledger.charge("sk-a", new BigDecimal("0.5"));
+        when(apiKeyUsageMapper.upsertIncrementBatch(anyList())).thenThrow(new RuntimeException("db down"));
+
+        ledger.checkpoint();
+
+        assertEquals(2_000_000L, ledger.getSpentMicros("sk-a"));
+    }
+
+    @Test
+    void testRebuildKeepsChargesNotYetWrittenToRequestLogs() {
+        ledger.charge("sk-a", new BigDecimal("0.1"));
+        ledger.charge("sk-a", new BigDecimal("0.2"));
+        ledger.checkpoint();
+        // 只有 0.1 那条请求日志已写入，0.2 仍在 LogWriter 队列中
+        RequestLog written = new RequestLog();
+        written.setApiKey("sk-a");
+        written.setCost(new BigDecimal("0.1"));
+        ledger.recordWritten(List.of(written));
+
+        ApiKeyUsage rebuilt = new ApiKeyUsage();
+        rebuilt.setApiKey("sk-a");
+        rebuilt.setTotalCost(new BigDecimal("1.6"));
+        when(apiKeyUsageMapper.selectList(null)).thenReturn(List.of(rebuilt));
+        ledger.rebuildFromRequestLogs();
+
+        assertEquals(1_800_000L, ledger.getSpentMicros("sk-a"));
+
+        // 未写入的部分在下次 checkpoint 重新落盘
+        ledger.checkpoint();
+        verify(apiKeyUsageMapper).upsertIncrementBatch(argThat(rows -> rows.size() == 1
+                && new BigDecimal("0.2").compareTo(rows.get(0).getTotalCost()) == 0));
+    }
+
+    @Test
+    void testRebuildOnAnotherNodeIsNotCountedTwice() {
+        // 两个节点共用同一张 api_key_usage，B 记了 0.2 且日志已写入，但还没有 checkpoint
+        ApiKeySpendLedger other = new ApiKeySpendLedger(apiKeyUsageMapper, transactionTemplate);
+        other.run();
+        other.charge("sk-a", new BigDecimal("0.2"));
+        RequestLog written = new RequestLog();
+        written.setApiKey("sk-a");
+        written.setCost(new BigDecimal("0.2"));
+        other.recordWritten(List.of(written));
+
+        // A 从 request_logs 重建，结果已包含 B 的 0.2
+        ApiKeyUsage rebuilt = new ApiKeyUsage();
+        rebuilt.setApiKey("sk-a");
+        rebuilt.setTotalCost(new BigDecimal("1.7"));
+        when(apiKeyUsageMapper.selectList(null)).thenReturn(List.of(rebuilt));
+        ledger.rebuildFromRequestLogs();
+        assertEquals(1_700_000L, ledger.getSpentMicros("sk-a"));
+
+        // B 收到重建广播后不再落盘这 0.2
+        other.adoptRebuild();
+        other.checkpoint();
+
+        verify(apiKeyUsageMapper, never()).upsertIncrementBatch(anyList());
+        assertEquals(1_700_000L, other.getSpentMicros("sk-a"));
+    }
+
+    @Test
+    void testFailedStartupLoadIsRetriedByCheckpoint() {
+        ApiKeySpendLedger fresh = new ApiKeySpendLedger(apiKeyUsageMapper, transactionTemplate);
+        when(apiKeyUsageMapper.selectCount(null)).thenThrow(new RuntimeException("db down")).thenReturn(1L);
+        fresh.run();
+
+        // 未加载时消费未知，设置了额度的 Key 不放行，增量保留在内存中
+        assertFalse(fresh.isLoaded());
+        assertEquals(Status.OUT_OF_SERVICE, fresh.health().getStatus());
+        assertEquals(-1L, fresh.tryReserve("sk-a", 2_000_000L, 1L));
+        fresh.charge("sk-a", new BigDecimal("0.1"));
+
+        fresh.checkpoint();
+
+        assertTrue(fresh.isLoaded());
+        assertEquals(Status.UP, fresh.health().getStatus());
+        verify(apiKeyUsageMapper).upsertIncrementBatch(argThat(rows -> rows.size() == 1
+                && new BigDecimal("0.1").compareTo(rows.get(0).getTotalCost()) == 0));
+        assertEquals(500_000L, fresh.tryReserve("sk-a", 2_000_000L, 500_000L));
+    }
+
+    @Test
+    void testConcurrentReservationsCannotOvershootLimit() {
+        // 上限 2.0，已消费 1.5，剩余 0.5
+        long limit = 2_000_000L;
+
+        assertEquals(300_000L, ledger.tryReserve("sk-a", limit, 300_000L));
+        assertEquals(-1L, ledger.tryReserve("sk-a", limit, 300_000L));
+        assertEquals(200_000L, ledger.tryReserve("sk-a", limit, 200_000L));
+        assertEquals(500_000L, ledger.getReservedMicros("sk-a"));
+
+        ledger.release("sk-a", 300_000L);
+        ledger.charge("sk-a", new BigDecimal("0.1"));
+        assertEquals(200_000L, ledger.getReservedMicros("sk-a"));
+        assertEquals(200_000L, ledger.tryReserve("sk-a", limit, 200_000L));
+    }
+
+    @Test
+    void testSingleRequestIsAdmittedWithRemainingBudget() {
+        long limit = 2_000_000L;
+
+        // 没有在途预占时，预估超出剩余额度也放行，只预占剩余部分
+        assertEquals(500_000L, ledger.tryReserve("sk-a", limit, 5_000_000L));
+        assertEquals(-1L, ledger.tryReserve("sk-a", limit, 1L));
+
+        ledger.release("sk-a", 500_000L);
+        ledger.charge("sk-a", new BigDecimal("0.5"));
+        assertEquals(-1L, ledger.tryReserve("sk-a", limit, 0L));
+    }
+}
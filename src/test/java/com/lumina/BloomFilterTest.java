@@ -0,0 +1,29 @@
+package com.lumina;
+
+import com.lumina.util.BloomFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test
+    void testNoFalseNegativesAndBoundedFalsePositives() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.001);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("sk-valid-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("sk-valid-" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("sk-unknown-" + i)) {
+                falsePositives++;
+            }
+        }
+        // 目标误判率 0.1%，留出余量
+        assertTrue(falsePositives < 500, "false positives: " + falsePositives);
+    }
+}
@@ -0,0 +1,655 @@
+package com.lumina;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.CircuitBreakerConfig;
+import com.lumina.config.CircuitBreakerConfigResolver;
+import com.lumina.config.LuminaProperties;
+import com.lumina.converter.ProtocolType;
+import com.lumina.dto.ModelGroupConfig;
+import com.lumina.dto.ModelGroupConfigItem;
+import com.lumina.entity.LlmModel;
+import com.lumina.mapper.ProviderRuntimeStatsMapper;
+import com.lumina.metrics.RelayMetrics;
+import com.lumina.logging.LogWriter;
+import com.lumina.ratelimit.TokenRateLimiter;
+import com.lumina.service.FailoverService;
+import com.lumina.service.LlmModelService;
+import com.lumina.service.PromptAffinity;
+import com.lumina.service.ProviderWebClientFactory;
+import com.lumina.service.StreamResumption;
+import com.lumina.service.impl.OpenAiRequestExecutor;
+import com.lumina.state.*;
+import com.lumina.stats.ApiKeySpendLedger;
+import com.lumina.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FailoverRoutingTest {
+
+    @Mock
+    private ProviderRuntimeStatsMapper providerRuntimeStatsMapper;
+
+    @Mock
+    private CircuitBreakerEventLogger eventLogger;
+
+    private ProviderStateRegistry registry;
+    private LuminaProperties properties;
+    private FailoverService failoverService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        registry = new ProviderStateRegistry(providerRuntimeStatsMapper, config);
+        properties = new LuminaProperties();
+        properties.getFailover().setTopK(1);
+        failoverService = new FailoverService(
+                registry,
+                new ProviderScoreCalculator(config),
+                new CircuitBreaker(config, eventLogger),
+                new CircuitBreakerConfigResolver(config),
+                new RelayMetrics(new SimpleMeterRegistry()),
+                properties
+        );
+    }
+
+    @Test
+    void testSelectsHighestScoreAndSkipsExcludedOrOpen() {
+        ModelGroupConfigItem a = item("a", 1);
+        ModelGroupConfigItem b = item("b", 1);
+        ModelGroupConfigItem c = item("c", 1);
+        ModelGroupConfig group = group(a, b, c);
+        failoverService.selectAvailableProvider(group);
+
+        registry.getAllProviders().forEach(state -> state.setScore(50));
+        stateOf("b").setScore(90);
+        stateOf("c").setScore(70);
+        assertSame(b, failoverService.selectAvailableProvider(group));
+
+        stateOf("b").setCircuitState(CircuitState.OPEN);
+        stateOf("b").setNextProbeAt(Long.MAX_VALUE);
+        assertSame(c, failoverService.selectAvailableProvider(group));
+
+        assertSame(a, failoverService.selectAvailableProvider(group, Set.of(providerId(c))));
+    }
+
+    @Test
+    void testRoutingTableFollowsReplacedConfig() {
+        ModelGroupConfigItem a = item("a", 1);
+        assertSame(a, failoverService.selectAvailableProvider(group(a)));
+
+        // 缓存失效后加载出新的配置对象，路由表随之重建
+        ModelGroupConfigItem b = item("b", 1);
+        assertSame(b, failoverService.selectAvailableProvider(group(b)));
+
+        // 运行态被清理后路由表不再持有旧的运行态引用
+        registry.remove(providerId(b));
+        failoverService.selectAvailableProvider(group(b));
+        assertNotNull(registry.getIfExists(providerId(b)));
+    }
+
+    @Test
+    void testHedgedRequestReturnsFasterProviderAndCancelsPrimary() {
+        ModelGroupConfigItem slow = item("slow", 1);
+        ModelGroupConfigItem fast = item("fast", 1);
+        ModelGroupConfig group = group(slow, fast);
+        group.setHedgeEnabled(true);
+        properties.getFailover().getHedge().setMinSamples(1);
+        properties.getFailover().getHedge().setMinDelayMs(50);
+        failoverService.selectAvailableProvider(group);
+
+        stateOf("slow").setScore(90);
+        stateOf("fast").setScore(50);
+        stateOf("slow").getResponseLatency().record(50);
+
+        ObjectNode fastResponse = JsonNodeFactory.instance.objectNode().put("from", "fast");
+        ObjectNode result = failoverService.executeWithFailoverMono(
+                provider -> provider == slow
+                        ? Mono.delay(Duration.ofSeconds(10)).map(ignored -> JsonNodeFactory.instance.objectNode())
+                        : Mono.just(fastResponse),
+                group,
+                30_000
+        ).block(Duration.ofSeconds(5));
+
+        assertSame(fastResponse, result);
+        assertEquals(0, stateOf("slow").getBulkhead().getCurrentConcurrent());
+        assertEquals(0, stateOf("fast").getBulkhead().getCurrentConcurrent());
+    }
+
+    @Test
+    void testStreamHedgeCommitsFirstStreamWithContent() {
+        ModelGroupConfigItem stalled = item("stalled", 1);
+        ModelGroupConfigItem fast = item("fast", 1);
+        ModelGroupConfig group = group(stalled, fast);
+        group.setHedgeEnabled(true);
+        properties.getFailover().getHedge().setMinSamples(1);
+        properties.getFailover().getHedge().setMinDelayMs(50);
+        failoverService.selectAvailableProvider(group);
+
+        stateOf("stalled").setScore(90);
+        stateOf("fast").setScore(50);
+        stateOf("stalled").getFirstTokenLatency().record(50);
+
+        List<String> events = failoverService.executeWithFailoverFlux(
+                provider -> provider == stalled
+                        ? Flux.concat(Flux.just(ServerSentEvent.<String>builder().comment("keep-alive").build()), Flux.never())
+                        : Flux.just(sse("a"), sse("b")),
+                group,
+                30_000
+        ).map(event -> String.valueOf(event.data())).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("a", "b"), events);
+        assertEquals(0, stateOf("stalled").getBulkhead().getCurrentConcurrent());
+        assertEquals(0, stateOf("fast").getBulkhead().getCurrentConcurrent());
+    }
+
+    @Test
+    void testStreamHedgeIgnoresPreambleEvents() {
+        ModelGroupConfigItem stalled = item("stalled", 1);
+        ModelGroupConfigItem healthy = item("healthy", 1);
+        ModelGroupConfig group = hedgedGroup(stalled, healthy);
+
+        // message_start 不代表模型已开始输出，主流此后卡住时仍应发起对冲
+        List<String> events = failoverService.executeWithFailoverFlux(
+                provider -> provider == stalled
+                        ? Flux.concat(Flux.just(sse("{\"type\":\"message_start\"}")), Flux.never())
+                        : Flux.just(sse("{\"type\":\"message_start\"}"),
+                                sse("{\"type\":\"content_block_delta\",\"delta\":{\"type\":\"text_delta\",\"text\":\"hi\"}}"),
+                                sse("{\"type\":\"message_stop\"}")),
+                group,
+                30_000
+        ).map(event -> String.valueOf(event.data())).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("{\"type\":\"message_start\"}",
+                "{\"type\":\"content_block_delta\",\"delta\":{\"type\":\"text_delta\",\"text\":\"hi\"}}",
+                "{\"type\":\"message_stop\"}"), events);
+        assertEquals(0, stateOf("stalled").getBulkhead().getCurrentConcurrent());
+        assertEquals(0, stateOf("healthy").getBulkhead().getCurrentConcurrent());
+    }
+
+    @Test
+    void testStreamHedgeErrorEventDoesNotWin() {
+        ModelGroupConfigItem slow = item("slow", 1);
+        ModelGroupConfigItem failing = item("failing", 1);
+        ModelGroupConfig group = hedgedGroup(slow, failing);
+
+        // 备份流立即返回错误事件后失败，不能取消仍在生成的主流
+        List<String> events = failoverService.executeWithFailoverFlux(
+                provider -> provider == slow
+                        ? Mono.delay(Duration.ofMillis(300)).thenMany(Flux.just(
+                                sse("{\"choices\":[{\"delta\":{\"content\":\"hi\"}}]}"),
+                                sse("[DONE]")))
+                        : Flux.concat(Flux.just(sse("{\"error\":{\"message\":\"overloaded\"}}")),
+                                Flux.error(new java.io.IOException("connection reset"))),
+                group,
+                30_000
+        ).map(event -> String.valueOf(event.data())).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("{\"choices\":[{\"delta\":{\"content\":\"hi\"}}]}", "[DONE]"), events);
+        assertEquals(0, stateOf("slow").getBulkhead().getCurrentConcurrent());
+        assertEquals(0, stateOf("failing").getBulkhead().getCurrentConcurrent());
+    }
+
+    @Test
+    void testStreamHedgePropagatesBackpressureToWinner() throws Exception {
+        ModelGroupConfigItem fast = item("fast", 1);
+        ModelGroupConfigItem other = item("other", 1);
+        ModelGroupConfig group = hedgedGroup(fast, other);
+        java.util.concurrent.atomic.AtomicLong upstreamRequested = new java.util.concurrent.atomic.AtomicLong();
+
+        java.util.concurrent.CountDownLatch received = new java.util.concurrent.CountDownLatch(5);
+        reactor.core.Disposable subscription = failoverService.executeWithFailoverFlux(
+                provider -> Flux.range(0, 10_000)
+                        .map(i -> sse("{\"choices\":[{\"delta\":{\"content\":\"" + i + "\"}}]}"))
+                        .doOnRequest(n -> upstreamRequested.getAndUpdate(total -> reactor.core.publisher.Operators.addCap(total, n))),
+                group,
+                30_000
+        ).subscribe(event -> received.countDown(), error -> { }, () -> { },
+                s -> s.request(5));
+
+        assertTrue(received.await(5, java.util.concurrent.TimeUnit.SECONDS));
+        Thread.sleep(100);
+        // 客户端只请求了 5 个事件，上游不应被无界拉取
+        assertTrue(upstreamRequested.get() < 100, "upstream requested: " + upstreamRequested.get());
+        subscription.dispose();
+    }
+
+    private ModelGroupConfig hedgedGroup(ModelGroupConfigItem primary, ModelGroupConfigItem backup) {
+        ModelGroupConfig group = group(primary, backup);
+        group.setHedgeEnabled(true);
+        properties.getFailover().getHedge().setMinSamples(1);
+        properties.getFailover().getHedge().setMinDelayMs(50);
+        failoverService.selectAvailableProvider(group);
+        registry.get(providerId(primary)).setScore(90);
+        registry.get(providerId(backup)).setScore(50);
+        registry.get(providerId(primary)).getFirstTokenLatency().record(50);
+        return group;
+    }
+
+    @Test
+    void testLatencyModeRoutesByExpectedCompletionTime() {
+        ModelGroupConfigItem quickStart = item("quick-start", 1);
+        ModelGroupConfigItem fastDecode = item("fast-decode", 1);
+        ModelGroupConfig group = group(quickStart, fastDecode);
+        group.setBalanceMode(6);
+        properties.getFailover().setLatencyMinSamples(1);
+        failoverService.selectAvailableProvider(group);
+
+        // quick-start 首包快但吞吐低，fast-decode 首包慢但吞吐高
+        stateOf("quick-start").getFirstTokenLatency().record(100);
+        stateOf("quick-start").recordOutputThroughput(400, 20_000);
+        stateOf("fast-decode").getFirstTokenLatency().record(800);
+        stateOf("fast-decode").recordOutputThroughput(400, 2_000);
+
+        assertEquals("quick-start", routedProvider(group, 10));
+        assertEquals("fast-decode", routedProvider(group, 0));
+
+        // 并发占满后预计完成时间翻倍，短请求也改走另一个 Provider
+        stateOf("quick-start").getBulkhead().setMaxConcurrent(1);
+        stateOf("quick-start").getBulkhead().tryAcquire();
+        assertEquals("fast-decode", routedProvider(group, 10));
+    }
+
+    @Test
+    void testPowerOfTwoChoicesPrefersLessLoadedProvider() {
+        ModelGroupConfigItem a = item("a", 1);
+        ModelGroupConfigItem b = item("b", 1);
+        ModelGroupConfig group = group(a, b);
+        group.setBalanceMode(7);
+        failoverService.selectAvailableProvider(group);
+
+        ProviderBulkhead busy = stateOf("a").getBulkhead();
+        busy.setMaxConcurrent(10);
+        stateOf("b").getBulkhead().setMaxConcurrent(10);
+        for (int i = 0; i < 5; i++) {
+            busy.tryAcquire();
+        }
+        assertSame(b, failoverService.selectAvailableProvider(group));
+
+        // 在途数相同时按健康分区分
+        for (int i = 0; i < 5; i++) {
+            busy.release();
+        }
+        stateOf("a").setScore(100);
+        stateOf("b").setScore(20);
+        assertSame(a, failoverService.selectAvailableProvider(group));
+    }
+
+    @Test
+    void testUpstreamRateLimitHeadersCoolDownProvider() {
+        ModelGroupConfigItem a = item("a", 1);
+        ModelGroupConfigItem b = item("b", 1);
+        ModelGroupConfig group = group(a, b);
+        failoverService.selectAvailableProvider(group);
+        stateOf("a").setScore(90);
+        stateOf("b").setScore(50);
+        long now = System.currentTimeMillis();
+
+        HttpHeaders throttled = new HttpHeaders();
+        throttled.set(HttpHeaders.RETRY_AFTER, "30");
+        stateOf("a").getUpstreamRateLimit().onResponse(429, throttled, now, 1000, 60_000);
+        assertSame(b, failoverService.selectAvailableProvider(group));
+
+        // 成功响应中剩余请求数耗尽，冷却到重置时间
+        HttpHeaders exhausted = new HttpHeaders();
+        exhausted.set("x-ratelimit-remaining-requests", "0");
+        exhausted.set("x-ratelimit-reset-requests", "1m30s");
+        stateOf("b").getUpstreamRateLimit().onResponse(200, exhausted, now, 1000, 60_000);
+        assertEquals(now + 60_000, stateOf("b").getUpstreamRateLimit().getBlockedUntil());
+
+        HttpHeaders remaining = new HttpHeaders();
+        remaining.set("anthropic-ratelimit-requests-remaining", "12");
+        remaining.set("anthropic-ratelimit-requests-reset", "2030-01-01T00:00:00Z");
+        ProviderRuntimeState fresh = new ProviderRuntimeState("fresh");
+        fresh.getUpstreamRateLimit().onResponse(200, remaining, now, 1000, 60_000);
+        assertFalse(fresh.getUpstreamRateLimit().isBlocked(now));
+    }
+
+    @Test
+    void testRetryBudgetExhaustionReturnsCurrentError() {
+        ModelGroupConfigItem broken = item("broken", 1);
+        ModelGroupConfigItem healthy = item("healthy", 1);
+        ModelGroupConfig group = group(broken, healthy);
+        properties.getFailover().getRetryBudget().setRatio(0);
+        properties.getFailover().getRetryBudget().setGroupMaxTokens(1);
+        failoverService.selectAvailableProvider(group);
+
+        WebClientResponseException upstreamError = WebClientResponseException.create(502, "Bad Gateway", null, null, null);
+        java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> call = provider -> {
+            stateOf("broken").setScore(90);
+            stateOf("healthy").setScore(50);
+            return provider == broken
+                    ? Mono.error(upstreamError)
+                    : Mono.just(JsonNodeFactory.instance.objectNode().put("from", "healthy"));
+        };
+
+        // 首次失败消耗唯一的重试预算，Failover 到 healthy
+        ObjectNode result = failoverService.executeWithFailoverMono(call, group, 30_000).block(Duration.ofSeconds(5));
+        assertEquals("healthy", result.get("from").asText());
+
+        // 预算耗尽后不再 Failover，直接返回上游错误
+        Throwable error = assertThrows(WebClientResponseException.class,
+                () -> failoverService.executeWithFailoverMono(call, group, 30_000).block(Duration.ofSeconds(5)));
+        assertSame(upstreamError, error);
+    }
+
+    @Test
+    void testBulkheadSkipDoesNotConsumeRetryBudget() {
+        ModelGroupConfigItem busy = item("busy", 1);
+        ModelGroupConfigItem idle = item("idle", 1);
+        ModelGroupConfig group = group(busy, idle);
+        properties.getFailover().getRetryBudget().setRatio(0);
+        properties.getFailover().getRetryBudget().setGroupMaxTokens(1);
+        failoverService.selectAvailableProvider(group);
+        stateOf("busy").setScore(90);
+        stateOf("idle").setScore(50);
+        ProviderBulkhead bulkhead = stateOf("busy").getBulkhead();
+        while (bulkhead.tryAcquire()) {
+            // 占满 busy 的舱壁
+        }
+
+        // 跳过已满的舱壁没有访问上游，预算只有 1 个令牌也不影响后续请求切到空闲 Provider
+        for (int i = 0; i < 10; i++) {
+            ObjectNode result = failoverService.executeWithFailoverMono(
+                    provider -> Mono.just(JsonNodeFactory.instance.objectNode().put("from", provider.getProviderName())),
+                    group,
+                    30_000
+            ).block(Duration.ofSeconds(5));
+            assertEquals("idle", result.get("from").asText());
+        }
+    }
+
+    @Test
+    void testMidStreamFailureResumesWithAssistantPrefill() throws Exception {
+        ModelGroupConfigItem broken = item("broken", 1);
+        ModelGroupConfigItem healthy = item("healthy", 1);
+        ModelGroupConfig group = group(broken, healthy);
+        failoverService.selectAvailableProvider(group);
+        stateOf("broken").setScore(90);
+        stateOf("healthy").setScore(50);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode params = (ObjectNode) objectMapper.readTree("{\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}");
+        StreamResumption resumption = StreamResumption.create(ProtocolType.OPENAI_CHAT, params, objectMapper);
+        List<String> prefills = new java.util.ArrayList<>();
+
+        List<String> events = failoverService.executeWithFailoverFlux(
+                provider -> {
+                    ObjectNode request = resumption.applyPrefill(params.deepCopy());
+                    prefills.add(request.get("messages").get(request.get("messages").size() - 1).path("content").asText());
+                    return provider == broken
+                            ? Flux.concat(Flux.just(sse("{\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}"),
+                                    sse("{\"choices\":[{\"delta\":{\"content\":\"Hel\"}}]}")),
+                                    Flux.error(new java.io.IOException("connection reset")))
+                            : Flux.just(sse("{\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}"),
+                                    sse("{\"choices\":[{\"delta\":{\"content\":\"lo\"},\"finish_reason\":\"stop\"}]}"),
+                                    sse("[DONE]"));
+                },
+                group,
+                30_000,
+                0,
+                resumption
+        ).map(event -> String.valueOf(event.data())).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("hi", "Hel"), prefills);
+        assertEquals(List.of(
+                "{\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}",
+                "{\"choices\":[{\"delta\":{\"content\":\"Hel\"}}]}",
+                "{\"choices\":[{\"delta\":{\"content\":\"lo\"},\"finish_reason\":\"stop\"}]}",
+                "[DONE]"), events);
+    }
+
+    @Test
+    void testAnthropicMidStreamFailureResumesAndDropsRepeatedPreamble() throws Exception {
+        ModelGroupConfigItem broken = item("broken", 1);
+        ModelGroupConfigItem healthy = item("healthy", 1);
+        ModelGroupConfig group = group(broken, healthy);
+        failoverService.selectAvailableProvider(group);
+        stateOf("broken").setScore(90);
+        stateOf("healthy").setScore(50);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode params = (ObjectNode) objectMapper.readTree("{\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}");
+        StreamResumption resumption = StreamResumption.create(ProtocolType.ANTHROPIC, params, objectMapper);
+        List<String> prefills = new java.util.ArrayList<>();
+        String messageStart = "{\"type\":\"message_start\",\"message\":{\"content\":[],\"usage\":{\"input_tokens\":3}}}";
+        // 字段顺序不固定：delta 可能位于 type 之前
+        String blockStart = "{\"content_block\":{\"text\":\"\",\"type\":\"text\"},\"index\":0,\"type\":\"content_block_start\"}";
+
+        List<String> events = failoverService.executeWithFailoverFlux(
+                provider -> {
+                    ObjectNode request = resumption.applyPrefill(params.deepCopy());
+                    prefills.add(request.get("messages").get(request.get("messages").size() - 1).path("content").asText());
+                    return provider == broken
+                            ? Flux.concat(Flux.just(sse(messageStart), sse(blockStart),
+                                    sse("{\"delta\":{\"text\":\"Hel\",\"type\":\"text_delta\"},\"type\":\"content_block_delta\",\"index\":0}")),
+                                    Flux.error(new java.io.IOException("connection reset")))
+                            : Flux.just(sse(messageStart), sse(blockStart),
+                                    sse("{\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\"lo\"}}"),
+                                    sse("{\"type\":\"message_stop\"}"));
+                },
+                group,
+                30_000,
+                0,
+                resumption
+        ).map(event -> String.valueOf(event.data())).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("hi", "Hel"), prefills);
+        assertEquals(List.of(
+                messageStart,
+                blockStart,
+                "{\"delta\":{\"text\":\"Hel\",\"type\":\"text_delta\"},\"type\":\"content_block_delta\",\"index\":0}",
+                "{\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\"lo\"}}",
+                "{\"type\":\"message_stop\"}"), events);
+    }
+
+    @Test
+    void testMidStreamFailureThroughOpenAiExecutorHidesUpstreamError() throws Exception {
+        ModelGroupConfigItem broken = item("broken", 1);
+        ModelGroupConfigItem healthy = item("healthy", 1);
+        ModelGroupConfig group = group(broken, healthy);
+        failoverService.selectAvailableProvider(group);
+        stateOf("broken").setScore(90);
+        stateOf("healthy").setScore(50);
+
+        ProviderWebClientFactory webClientFactory = mock(ProviderWebClientFactory.class);
+        when(webClientFactory.getClient(broken)).thenReturn(sseClient(Flux.concat(
+                Flux.just("data: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}\n\n",
+                        "data: {\"choices\":[{\"delta\":{\"content\":\"Hel\"}}]}\n\n"),
+                Flux.error(new java.io.IOException("connection reset")))));
+        when(webClientFactory.getClient(healthy)).thenReturn(sseClient(Flux.just(
+                "data: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}\n\n",
+                "data: {\"choices\":[{\"delta\":{\"content\":\"lo\"},\"finish_reason\":\"stop\"}]}\n\n",
+                "data: [DONE]\n\n")));
+        OpenAiRequestExecutor executor = openAiExecutor(webClientFactory);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode params = (ObjectNode) objectMapper.readTree("{\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}");
+        StreamResumption resumption = StreamResumption.create(ProtocolType.OPENAI_CHAT, params, objectMapper);
+
+        List<String> events = failoverService.executeWithFailoverFlux(
+                provider -> executor.executeStream(resumption.applyPrefill(params.deepCopy()), provider,
+                        Map.of(), "", "openai_chat_completions", null),
+                group,
+                30_000,
+                0,
+                resumption
+        ).map(event -> String.valueOf(event.data())).collectList().block(Duration.ofSeconds(5));
+
+        // 中断的上游不应向客户端下发任何错误事件，续写内容直接接在已下发内容之后
+        assertEquals(List.of(
+                "{\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}",
+                "{\"choices\":[{\"delta\":{\"content\":\"Hel\"}}]}",
+                "{\"choices\":[{\"delta\":{\"content\":\"lo\"},\"finish_reason\":\"stop\"}]}",
+                "[DONE]"), events);
+    }
+
+    @Test
+    void testFailedStreamAttemptIsChargedForCapturedUsage() {
+        ModelGroupConfigItem broken = item("broken", 1);
+        ProviderWebClientFactory webClientFactory = mock(ProviderWebClientFactory.class);
+        when(webClientFactory.getClient(broken)).thenReturn(sseClient(Flux.concat(
+                Flux.just("data: {\"model\":\"gpt\",\"choices\":[],\"usage\":{\"prompt_tokens\":1000,\"completion_tokens\":500}}\n\n"),
+                Flux.error(new java.io.IOException("connection reset")))));
+        OpenAiRequestExecutor executor = openAiExecutor(webClientFactory);
+        LlmModel model = new LlmModel();
+        model.setInputPrice(new BigDecimal("2"));
+        model.setOutputPrice(new BigDecimal("8"));
+        LlmModelService llmModelService = (LlmModelService) ReflectionTestUtils.getField(executor, "llmModelService");
+        when(llmModelService.findLatestByModelName("gpt")).thenReturn(model);
+
+        assertThrows(Exception.class, () -> executor.executeStream(JsonNodeFactory.instance.objectNode(), broken,
+                Map.of("_lumina_api_key", "sk-a"), "", "openai_chat_completions", null)
+                .blockLast(Duration.ofSeconds(5)));
+
+        // 上游已产出的部分照常计费：1000 * 2 / 1M + 500 * 8 / 1M
+        ApiKeySpendLedger ledger = (ApiKeySpendLedger) ReflectionTestUtils.getField(executor, "apiKeySpendLedger");
+        verify(ledger).charge(eq("sk-a"), argThat(cost -> new BigDecimal("0.006").compareTo(cost) == 0));
+    }
+
+    private static OpenAiRequestExecutor openAiExecutor(ProviderWebClientFactory webClientFactory) {
+        OpenAiRequestExecutor executor = new OpenAiRequestExecutor();
+        SnowflakeIdGenerator idGenerator = mock(SnowflakeIdGenerator.class);
+        when(idGenerator.nextId()).thenReturn(1L);
+        ReflectionTestUtils.setField(executor, "snowflakeIdGenerator", idGenerator);
+        ReflectionTestUtils.setField(executor, "logWriter", mock(LogWriter.class));
+        ReflectionTestUtils.setField(executor, "llmModelService", mock(LlmModelService.class));
+        ReflectionTestUtils.setField(executor, "providerWebClientFactory", webClientFactory);
+        ReflectionTestUtils.setField(executor, "luminaProperties", new LuminaProperties());
+        ReflectionTestUtils.setField(executor, "apiKeySpendLedger", mock(ApiKeySpendLedger.class));
+        ReflectionTestUtils.setField(executor, "tokenRateLimiter", mock(TokenRateLimiter.class));
+        ReflectionTestUtils.setField(executor, "providerStateRegistry", mock(ProviderStateRegistry.class));
+        ReflectionTestUtils.setField(executor, "relayMetrics", new RelayMetrics(new SimpleMeterRegistry()));
+        return executor;
+    }
+
+    private static WebClient sseClient(Flux<String> body) {
+        return WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_EVENT_STREAM_VALUE)
+                        .body(body.map(chunk -> DefaultDataBufferFactory.sharedInstance
+                                .wrap(chunk.getBytes(StandardCharsets.UTF_8))))
+                        .build()))
+                .build();
+    }
+
+    @Test
+    void testPrefixAffinityRoutesSharedPromptToSameProvider() {
+        ModelGroupConfig group = group(item("a", 1), item("b", 1), item("c", 1));
+        properties.getFailover().setTopK(3);
+        properties.getFailover().getPrefixAffinity().setEnabled(true);
+        failoverService.selectAvailableProvider(group);
+        registry.getAllProviders().forEach(state -> state.setScore(80));
+
+        PromptAffinity promptAffinity = new PromptAffinity(properties);
+        ObjectNode params = JsonNodeFactory.instance.objectNode().put("system", "x".repeat(5000));
+        params.putArray("messages").addObject().put("role", "user").put("content", "hi");
+        long affinityKey = promptAffinity.key(params);
+        assertNotEquals(0, affinityKey);
+
+        String affine = routedProvider(group, affinityKey);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(affine, routedProvider(group, affinityKey));
+        }
+
+        // 亲和 Provider 熔断后顺延到环上的下一个 Provider，同样保持稳定
+        stateOf(affine).setCircuitState(CircuitState.OPEN);
+        stateOf(affine).setNextProbeAt(Long.MAX_VALUE);
+        String next = routedProvider(group, affinityKey);
+        assertNotEquals(affine, next);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(next, routedProvider(group, affinityKey));
+        }
+
+        // 前缀过短时上游不会缓存，不做亲和
+        assertEquals(0, promptAffinity.key(JsonNodeFactory.instance.objectNode().put("system", "short")));
+    }
+
+    private String routedProvider(ModelGroupConfig group, long affinityKey) {
+        ObjectNode result = failoverService.executeWithFailoverMono(
+                provider -> Mono.just(JsonNodeFactory.instance.objectNode().put("from", provider.getProviderName())),
+                group,
+                30_000,
+                0,
+                affinityKey
+        ).block(Duration.ofSeconds(5));
+        return result.get("from").asText();
+    }
+
+    private String routedProvider(ModelGroupConfig group, int maxOutputTokens) {
+        ObjectNode result = failoverService.executeWithFailoverMono(
+                provider -> Mono.just(JsonNodeFactory.instance.objectNode().put("from", provider.getProviderName())),
+                group,
+                30_000,
+                maxOutputTokens
+        ).block(Duration.ofSeconds(5));
+        return result.get("from").asText();
+    }
+
+    private static ServerSentEvent<String> sse(String data) {
+        return ServerSentEvent.<String>builder().data(data).build();
+    }
+
+    private ProviderRuntimeState stateOf(String name) {
+        return registry.get("https://" + name + ".example.com_" + ("sk-" + name).hashCode() + "_m");
+    }
+
+    private static String providerId(ModelGroupConfigItem item) {
+        return item.getBaseUrl() + "_" + item.getApiKey().hashCode() + "_" + item.getModelName();
+    }
+
+    private static ModelGroupConfigItem item(String name, int weight) {
+        ModelGroupConfigItem item = new ModelGroupConfigItem();
+        item.setProviderName(name);
+        item.setBaseUrl("https://" + name + ".example.com");
+        item.setApiKey("sk-" + name);
+        item.setModelName("m");
+        item.setWeight(weight);
+        return item;
+    }
+
+    private static ModelGroupConfig group(ModelGroupConfigItem... items) {
+        ModelGroupConfig group = new ModelGroupConfig();
+        group.setId("g1");
+        group.setName("g1");
+        group.setItems(List.of(items));
+        return group;
+    }
+}
@@ -0,0 +1,70 @@
+package com.lumina;
+
+import com.lumina.state.ProviderBulkhead;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProviderBulkheadTest {
+
+    @Test
+    void testQueuedAcquirersAreGrantedInOrderOnRelease() throws InterruptedException {
+        ProviderBulkhead bulkhead = new ProviderBulkhead(1);
+        assertTrue(bulkhead.tryAcquire());
+
+        BlockingQueue<String> granted = new LinkedBlockingQueue<>();
+        bulkhead.acquire(5_000, 10).subscribe(acquired -> granted.add("first:" + acquired));
+        bulkhead.acquire(5_000, 10).subscribe(acquired -> granted.add("second:" + acquired));
+        assertEquals(2, bulkhead.getQueueDepth());
+        assertFalse(bulkhead.acquire(5_000, 2).block(Duration.ofSeconds(1)));
+
+        bulkhead.release();
+        assertEquals("first:true", granted.poll(1, TimeUnit.SECONDS));
+        assertNull(granted.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals(1, bulkhead.getCurrentConcurrent());
+
+        bulkhead.release();
+        assertEquals("second:true", granted.poll(1, TimeUnit.SECONDS));
+        assertEquals(0, bulkhead.getQueueDepth());
+    }
+
+    @Test
+    void testGrantIsNotDeliveredOnReleasingThread() throws InterruptedException {
+        ProviderBulkhead bulkhead = new ProviderBulkhead(1);
+        assertTrue(bulkhead.tryAcquire());
+
+        BlockingQueue<Thread> grantedOn = new LinkedBlockingQueue<>();
+        bulkhead.acquire(5_000, 10).subscribe(acquired -> grantedOn.add(Thread.currentThread()));
+
+        bulkhead.release();
+        assertNotEquals(Thread.currentThread(), grantedOn.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testWaitTimesOutAndCancelledWaiterLeavesQueue() {
+        ProviderBulkhead bulkhead = new ProviderBulkhead(1);
+        assertTrue(bulkhead.tryAcquire());
+
+        assertFalse(bulkhead.acquire(50, 10).block(Duration.ofSeconds(1)));
+        assertEquals(0, bulkhead.getQueueDepth());
+
+        Disposable waiting = bulkhead.acquire(5_000, 10).subscribe();
+        assertEquals(1, bulkhead.getQueueDepth());
+        waiting.dispose();
+        assertEquals(0, bulkhead.getQueueDepth());
+
+        // 取消的等待者不会占用移交的许可
+        bulkhead.release();
+        assertEquals(0, bulkhead.getCurrentConcurrent());
+    }
+}
@@ -1,24 +1,35 @@
 package com.lumina;
 
 import com.lumina.config.LuminaProperties;
+import com.lumina.entity.ApiKey;
 import com.lumina.filter.RateLimitFilter;
+import com.lumina.ratelimit.LeasedRateLimiter;
+import com.lumina.ratelimit.RateLimitDecision;
+import com.lumina.service.HotPathCacheService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
-import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.http.HttpStatus;
 import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
 import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
-import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 public class RateLimitFilterTest {
@@ -26,14 +37,11 @@ public class RateLimitFilterTest {
     @Mock
     private LuminaProperties luminaProperties;
 
-    @Mock
-    private LuminaProperties.RateLimit rateLimit;
-
     @Mock
     private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
 
     @Mock
-    private ReactiveValueOperations<String, String> valueOperations;
+    private HotPathCacheService hotPathCacheService;
 
     @Mock
     private WebFilterChain filterChain;
@@ -41,32 +49,37 @@ public class RateLimitFilterTest {
     @InjectMocks
     private RateLimitFilter rateLimitFilter;
 
+    private final LuminaProperties.RateLimit rateLimit = new LuminaProperties.RateLimit();
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
         when(luminaProperties.getRateLimit()).thenReturn(rateLimit);
-        when(reactiveStringRedisTemplate.opsForValue()).thenReturn(valueOperations);
         when(filterChain.filter(any())).thenReturn(Mono.empty());
+        ReflectionTestUtils.setField(rateLimitFilter, "leasedRateLimiter",
+                new LeasedRateLimiter(reactiveStringRedisTemplate, luminaProperties));
     }
 
     @Test
     void testRateLimitNotEnabled() {
-        when(rateLimit.isEnabled()).thenReturn(false);
+        rateLimit.setEnabled(false);
 
         MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/models"));
-        
+        exchange.getAttributes().put("API_KEY", "test-key");
+
         rateLimitFilter.filter(exchange, filterChain).block();
 
         verify(filterChain, times(1)).filter(exchange);
-        verify(reactiveStringRedisTemplate, never()).opsForValue();
+        verifyNoInteractions(reactiveStringRedisTemplate);
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     void testRateLimitEnabledBelowLimit() {
-        when(rateLimit.isEnabled()).thenReturn(true);
-        when(rateLimit.getRequestsPerMinute()).thenReturn(5);
-        when(valueOperations.increment(anyString())).thenReturn(Mono.just(1L));
-        when(reactiveStringRedisTemplate.expire(anyString(), any(Duration.class))).thenReturn(Mono.just(true));
+        rateLimit.setEnabled(true);
+        rateLimit.setRequestsPerMinute(5);
+        when(reactiveStringRedisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Flux.just(List.of(1L, 4L, 0L)));
 
         MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/models"));
         exchange.getAttributes().put("API_KEY", "test-key");
@@ -74,15 +87,16 @@ public class RateLimitFilterTest {
         rateLimitFilter.filter(exchange, filterChain).block();
 
         verify(filterChain, times(1)).filter(exchange);
-        verify(valueOperations, times(1)).increment(anyString());
-        verify(reactiveStringRedisTemplate, times(1)).expire(anyString(), any(Duration.class));
+        assertEquals("4", exchange.getResponse().getHeaders().getFirst("x-ratelimit-remaining-requests"));
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     void testRateLimitExceeded() {
-        when(rateLimit.isEnabled()).thenReturn(true);
-        when(rateLimit.getRequestsPerMinute()).thenReturn(5);
-        when(valueOperations.increment(anyString())).thenReturn(Mono.just(6L));
+        rateLimit.setEnabled(true);
+        rateLimit.setRequestsPerMinute(5);
+        when(reactiveStringRedisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Flux.just(List.of(0L, 0L, 11_500L)));
 
         MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/models"));
         exchange.getAttributes().put("API_KEY", "test-key");
@@ -90,6 +104,84 @@ public class RateLimitFilterTest {
         rateLimitFilter.filter(exchange, filterChain).block();
 
         verify(filterChain, never()).filter(exchange);
-        assert exchange.getResponse().getStatusCode() == HttpStatus.TOO_MANY_REQUESTS;
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exchange.getResponse().getStatusCode());
+        assertEquals("12", exchange.getResponse().getHeaders().getFirst("Retry-After"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testLeasedTokensServeRequestsWithoutRedis() {
+        rateLimit.setEnabled(true);
+        rateLimit.setRequestsPerMinute(100);
+        // 每次租借 5 个令牌
+        when(reactiveStringRedisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Flux.just(List.of(5L, 95L, 0L)));
+
+        for (int i = 0; i < 5; i++) {
+            MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/models"));
+            exchange.getAttributes().put("API_KEY", "test-key");
+            rateLimitFilter.filter(exchange, filterChain).block();
+        }
+
+        verify(filterChain, times(5)).filter(any());
+        verify(reactiveStringRedisTemplate, times(1)).execute(any(RedisScript.class), anyList(), anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPerKeyLimitOverridesDisabledDefault() {
+        rateLimit.setEnabled(false);
+        ApiKey key = new ApiKey();
+        key.setApiKey("test-key");
+        key.setRateLimitRpm(10);
+        when(hotPathCacheService.getCachedApiKeyQuota("test-key")).thenReturn(key);
+        when(reactiveStringRedisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Flux.just(List.of(1L, 9L, 0L)));
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/models"));
+        exchange.getAttributes().put("API_KEY", "test-key");
+
+        rateLimitFilter.filter(exchange, filterChain).block();
+
+        verify(filterChain, times(1)).filter(exchange);
+        assertEquals("10", exchange.getResponse().getHeaders().getFirst("x-ratelimit-limit-requests"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testTokenDebtIsRepaidOnNextLease() {
+        LeasedRateLimiter limiter = new LeasedRateLimiter(reactiveStringRedisTemplate, luminaProperties);
+        when(reactiveStringRedisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Flux.just(List.of(1_000L, 9_000L, 0L)));
+
+        // 预估 1000 Token，实际多用了 500
+        limiter.tryAcquire("tpm:key:test-key", 10_000, 1_000).block();
+        limiter.adjust("tpm:key:test-key", 500);
+        limiter.tryAcquire("tpm:key:test-key", 10_000, 100).block();
+
+        ArgumentCaptor<List<String>> args = ArgumentCaptor.forClass(List.class);
+        verify(reactiveStringRedisTemplate, times(2)).execute(any(RedisScript.class), anyList(), args.capture());
+        // 第二次租借的最低需求 = 本次 100 + 欠账 500
+        assertEquals("600", args.getValue().get(3));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testConcurrentLocalMissesShareOneLease() {
+        LeasedRateLimiter limiter = new LeasedRateLimiter(reactiveStringRedisTemplate, luminaProperties);
+        Sinks.One<List> reply = Sinks.one();
+        when(reactiveStringRedisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(reply.asMono().flux());
+
+        List<RateLimitDecision> decisions = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire("rpm:key:test-key", 1_000, 1).subscribe(decisions::add);
+        }
+        reply.tryEmitValue(List.of(50L, 950L, 0L));
+
+        // 租借在途期间的本地不足请求等待同一个结果，只访问一次 Redis
+        verify(reactiveStringRedisTemplate, times(1)).execute(any(RedisScript.class), anyList(), anyList());
+        assertEquals(5, decisions.size());
+        assertTrue(decisions.stream().allMatch(RateLimitDecision::allowed));
     }
 }
@@ -0,0 +1,124 @@
+package com.lumina;
+
+import com.lumina.util.RefreshingCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RefreshingCacheTest {
+
+    private final List<String> loads = new ArrayList<>();
+
+    private final RefreshingCache.Listener listener = new RefreshingCache.Listener() {
+        @Override
+        public void onLookup(String result) {
+        }
+
+        @Override
+        public synchronized void onLoad(String result, long durationNanos) {
+            loads.add(result);
+        }
+    };
+
+    @Test
+    void testConcurrentMissesShareOneLoader() throws Exception {
+        RefreshingCache<String> cache = new RefreshingCache<>(100, 60_000, 0.8, Runnable::run, listener);
+        AtomicInteger loaderCalls = new AtomicInteger();
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(pool.submit(() -> cache.get("g", () -> {
+                loaderCalls.incrementAndGet();
+                loaderStarted.countDown();
+                await(release);
+                return "v1";
+            })));
+            assertTrue(loaderStarted.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                results.add(pool.submit(() -> cache.get("g", () -> {
+                    loaderCalls.incrementAndGet();
+                    return "other";
+                })));
+            }
+            // 等待其余调用者进入等待状态后再放行首个加载
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("v1", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loaderCalls.get());
+        assertEquals("v1", cache.getIfPresent("g"));
+    }
+
+    @Test
+    void testRefreshAheadServesStaleValueAndInvalidationWins() throws Exception {
+        List<Runnable> refreshes = new ArrayList<>();
+        RefreshingCache<String> cache = new RefreshingCache<>(100, 200, 0.1, refreshes::add, listener);
+        AtomicInteger version = new AtomicInteger();
+
+        assertEquals("v1", cache.get("g", () -> "v" + version.incrementAndGet()));
+        Thread.sleep(50);
+
+        // 超过预刷新时间后仍返回旧值，刷新只调度一次
+        assertEquals("v1", cache.getIfPresent("g"));
+        assertEquals("v1", cache.getIfPresent("g"));
+        assertEquals(1, refreshes.size());
+        refreshes.remove(0).run();
+        assertEquals("v2", cache.getIfPresent("g"));
+
+        // 刷新排队期间发生失效，不再写回旧数据
+        Thread.sleep(50);
+        cache.getIfPresent("g");
+        cache.clear();
+        refreshes.remove(0).run();
+        assertNull(cache.getIfPresent("g"));
+        assertTrue(loads.contains("refreshed"));
+    }
+
+    @Test
+    void testPutAllWarmsEntriesUnlessInvalidatedDuringLoad() {
+        RefreshingCache<String> cache = new RefreshingCache<>(2, 60_000, 0.8, Runnable::run, listener);
+
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("a", "1");
+        values.put("b", "2");
+        values.put("c", "3");
+        // 超出容量的部分不写入
+        assertEquals(2, cache.putAll(values, key -> "reloaded", cache.generation()));
+        assertEquals("1", cache.getIfPresent("a"));
+        assertEquals("2", cache.getIfPresent("b"));
+
+        // 批量查询期间发生失效，整批放弃
+        long generation = cache.generation();
+        cache.clear();
+        assertEquals(-1, cache.putAll(values, key -> "reloaded", generation));
+        assertNull(cache.getIfPresent("a"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
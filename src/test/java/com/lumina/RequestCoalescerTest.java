@@ -0,0 +1,96 @@
+package com.lumina;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.LuminaProperties;
+import com.lumina.logging.LogWriter;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.metrics.RelayMetrics;
+import com.lumina.service.RequestCoalescer;
+import com.lumina.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class RequestCoalescerTest {
+
+    @Mock
+    private LogWriter logWriter;
+
+    @Mock
+    private SnowflakeIdGenerator snowflakeIdGenerator;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private LuminaProperties properties;
+    private RequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        properties = new LuminaProperties();
+        properties.getRelay().getCoalescing().setEnabled(true);
+        coalescer = new RequestCoalescer(properties, new RelayMetrics(new SimpleMeterRegistry()), logWriter, snowflakeIdGenerator);
+    }
+
+    @Test
+    void testKeyIgnoresFieldOrderAndRequiresZeroTemperature() throws Exception {
+        ObjectNode a = (ObjectNode) objectMapper.readTree("{\"model\":\"g\",\"temperature\":0,\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}");
+        ObjectNode b = (ObjectNode) objectMapper.readTree("{\"messages\":[{\"content\":\"hi\",\"role\":\"user\"}],\"temperature\":0,\"model\":\"g\"}");
+        assertEquals(coalescer.key("chat", null, "g", "sk-1", a), coalescer.key("chat", null, "g", "sk-1", b));
+        assertNotEquals(coalescer.key("chat", null, "g", "sk-1", a), coalescer.key("chat", null, "g", "sk-2", a));
+
+        a.put("temperature", 0.7);
+        assertNull(coalescer.key("chat", null, "g", "sk-1", a));
+    }
+
+    @Test
+    void testConcurrentDuplicatesShareOneUpstreamCall() {
+        ObjectNode params = JsonNodeFactory.instance.objectNode().put("temperature", 0);
+        RequestCoalescer.Key key = coalescer.key("chat", null, "g", "sk-1", params);
+        ObjectNode response = JsonNodeFactory.instance.objectNode().put("model", "m");
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Mono<ObjectNode> call = Mono.defer(() -> {
+            upstreamCalls.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(100)).thenReturn(response);
+        });
+        AtomicInteger followersDone = new AtomicInteger();
+
+        List<ObjectNode> results = Mono.zip(
+                coalescer.execute(key, call, followersDone::incrementAndGet),
+                coalescer.execute(key, call, followersDone::incrementAndGet),
+                (first, second) -> List.of(first, second)
+        ).block(Duration.ofSeconds(5));
+
+        assertEquals(1, upstreamCalls.get());
+        assertSame(response, results.get(0));
+        assertSame(response, results.get(1));
+
+        ArgumentCaptor<RequestLogContext> logged = ArgumentCaptor.forClass(RequestLogContext.class);
+        verify(logWriter, times(1)).submit(logged.capture());
+        assertTrue(logged.getValue().isCoalesced());
+        assertEquals(0, logged.getValue().getOutputTokens());
+
+        // 在途请求结束后，新的相同请求重新发起上游调用
+        coalescer.execute(key, call, followersDone::incrementAndGet).block(Duration.ofSeconds(5));
+        assertEquals(2, upstreamCalls.get());
+        // zip 收到两个结果即返回，follower 的结束回调可能稍后执行，这里在后续请求完成后再检查
+        assertEquals(1, followersDone.get());
+    }
+}
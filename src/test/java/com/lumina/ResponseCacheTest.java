@@ -0,0 +1,157 @@
+package com.lumina;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.LuminaProperties;
+import com.lumina.dto.ModelGroupConfig;
+import com.lumina.logging.LogWriter;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.service.ResponseCache;
+import com.lumina.util.SnowflakeIdGenerator;
+import com.lumina.util.TinyLfuCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+
+public class ResponseCacheTest {
+
+    @Mock
+    private ReactiveStringRedisTemplate redisTemplate;
+
+    @Mock
+    private LogWriter logWriter;
+
+    @Mock
+    private SnowflakeIdGenerator snowflakeIdGenerator;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ResponseCache cache;
+    private ModelGroupConfig group;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        cache = new ResponseCache(new LuminaProperties(), redisTemplate, logWriter, snowflakeIdGenerator, new SimpleMeterRegistry());
+        group = new ModelGroupConfig();
+        group.setName("g");
+        group.setResponseCacheTtlSeconds(60);
+    }
+
+    @Test
+    void testNormalResponseIsReplayedAsCacheHit() throws Exception {
+        ObjectNode params = (ObjectNode) objectMapper.readTree(
+                "{\"model\":\"g\",\"temperature\":0,\"user\":\"u-1\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}");
+        ResponseCache.Key key = cache.key("chat", null, group, params, false);
+        assertNotNull(key);
+
+        ObjectNode response = (ObjectNode) objectMapper.readTree("{\"model\":\"gpt\",\"choices\":[]}");
+        cache.cacheNormal(key, Mono.just(response)).block(Duration.ofSeconds(1));
+
+        // user 字段不参与缓存键
+        params.put("user", "u-2");
+        ResponseCache.Key sameKey = cache.key("chat", null, group, params, false);
+        ResponseCache.CachedResponse cached = cache.lookup(sameKey).block(Duration.ofSeconds(1));
+        assertNotNull(cached);
+        assertEquals(response, cache.replayNormal(sameKey, cached, "sk-1").block(Duration.ofSeconds(1)));
+
+        ArgumentCaptor<RequestLogContext> ctx = ArgumentCaptor.forClass(RequestLogContext.class);
+        verify(logWriter).submit(ctx.capture());
+        assertTrue(ctx.getValue().isCacheHit());
+        assertEquals(0, ctx.getValue().getCost().signum());
+
+        group.setResponseCacheTtlSeconds(null);
+        assertNull(cache.key("chat", null, group, params, false));
+    }
+
+    @Test
+    void testStreamIsReplayedAfterCompletion() throws Exception {
+        ObjectNode params = (ObjectNode) objectMapper.readTree("{\"model\":\"g\",\"temperature\":0,\"stream\":true}");
+        ResponseCache.Key key = cache.key("chat", null, group, params, true);
+        List<ServerSentEvent<String>> events = List.of(
+                ServerSentEvent.<String>builder().data("{\"choices\":[]}").build(),
+                ServerSentEvent.<String>builder().data("[DONE]").build());
+
+        cache.cacheStream(key, Flux.fromIterable(events).concatWith(Flux.error(new RuntimeException("boom"))))
+                .onErrorResume(e -> Flux.empty())
+                .collectList().block(Duration.ofSeconds(1));
+        assertNull(cache.lookup(key).block(Duration.ofSeconds(1)));
+
+        cache.cacheStream(key, Flux.fromIterable(events)).collectList().block(Duration.ofSeconds(1));
+        ResponseCache.CachedResponse cached = cache.lookup(key).block(Duration.ofSeconds(1));
+        List<String> replayed = cache.replayStream(key, cached, "sk-1")
+                .map(ServerSentEvent::data)
+                .collectList().block(Duration.ofSeconds(1));
+        assertEquals(List.of("{\"choices\":[]}", "[DONE]"), replayed);
+    }
+
+    @Test
+    void testStreamWithErrorOrWithoutTerminalEventIsNotCached() throws Exception {
+        ObjectNode params = (ObjectNode) objectMapper.readTree("{\"model\":\"g\",\"temperature\":0,\"stream\":true}");
+        ResponseCache.Key key = cache.key("messages", null, group, params, true);
+
+        // Anthropic 在 200 流中下发 error 事件后正常结束
+        cache.cacheStream(key, Flux.just(
+                        ServerSentEvent.<String>builder().event("message_start").data("{\"type\":\"message_start\"}").build(),
+                        ServerSentEvent.<String>builder().event("error")
+                                .data("{\"type\":\"error\",\"error\":{\"type\":\"overloaded_error\"}}").build()))
+                .collectList().block(Duration.ofSeconds(1));
+        assertNull(cache.lookup(key).block(Duration.ofSeconds(1)));
+
+        // 上游提前关闭连接，没有 message_stop
+        cache.cacheStream(key, Flux.just(
+                        ServerSentEvent.<String>builder().event("message_start").data("{\"type\":\"message_start\"}").build(),
+                        ServerSentEvent.<String>builder().event("content_block_delta")
+                                .data("{\"type\":\"content_block_delta\",\"delta\":{\"text\":\"hi\"}}").build()))
+                .collectList().block(Duration.ofSeconds(1));
+        assertNull(cache.lookup(key).block(Duration.ofSeconds(1)));
+
+        cache.cacheStream(key, Flux.just(
+                        ServerSentEvent.<String>builder().event("content_block_delta")
+                                .data("{\"type\":\"content_block_delta\",\"delta\":{\"text\":\"hi\"}}").build(),
+                        ServerSentEvent.<String>builder().event("message_stop").data("{\"type\":\"message_stop\"}").build()))
+                .collectList().block(Duration.ofSeconds(1));
+        assertEquals(2, cache.lookup(key).block(Duration.ofSeconds(1)).events().size());
+    }
+
+    @Test
+    void testTinyLfuKeepsFrequentEntries() {
+        TinyLfuCache<String, String> lfu = new TinyLfuCache<>(100);
+        for (int i = 0; i < 100; i++) {
+            lfu.put("hot-" + i, "v", Long.MAX_VALUE);
+            for (int j = 0; j < 5; j++) {
+                lfu.get("hot-" + i, 0);
+            }
+        }
+        // 一次性访问的扫描流量不应冲掉热点条目
+        for (int i = 0; i < 1000; i++) {
+            lfu.put("scan-" + i, "v", Long.MAX_VALUE);
+        }
+        int retained = 0;
+        for (int i = 0; i < 100; i++) {
+            if (lfu.get("hot-" + i, 0) != null) {
+                retained++;
+            }
+        }
+        assertTrue(lfu.size() <= 100);
+        assertTrue(retained >= 90, "retained=" + retained);
+
+        lfu.put("expiring", "v", 10);
+        assertNull(lfu.get("expiring", 10));
+    }
+}
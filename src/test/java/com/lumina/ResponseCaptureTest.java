@@ -0,0 +1,28 @@
+package com.lumina;
+
+import com.lumina.logging.ResponseCapture;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ResponseCaptureTest {
+
+    @Test
+    void testTruncateKeepsPrefixAndMarksDroppedChars() {
+        ResponseCapture capture = ResponseCapture.create(5);
+        capture.append("abc");
+        capture.append("defg");
+        capture.append("hij");
+
+        assertEquals("abcde\n...[truncated 5 chars]", capture.content());
+    }
+
+    @Test
+    void testDisabledCaptureCopiesNothing() {
+        ResponseCapture capture = ResponseCapture.disabled();
+        capture.append("ignored");
+
+        assertNull(capture.content());
+    }
+}
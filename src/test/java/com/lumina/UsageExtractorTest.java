@@ -0,0 +1,86 @@
+package com.lumina;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.logging.UsageExtractor;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class UsageExtractorTest {
+
+    @Test
+    void testOpenAiStreamChunks() {
+        RequestLogContext ctx = new RequestLogContext();
+
+        UsageExtractor.extract(ctx, "{\"id\":\"1\",\"model\":\"gpt-4o\",\"choices\":[{\"delta\":{\"content\":\"{\\\"model\\\":\\\"x\\\"}\"}}],\"usage\":null}");
+        assertEquals("gpt-4o", ctx.getActualModel());
+        assertNull(ctx.getInputTokens());
+
+        UsageExtractor.extract(ctx, "{\"model\":\"gpt-4o\",\"choices\":[],\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":34,\"prompt_tokens_details\":{\"cached_tokens\":0}}}");
+        assertEquals(12, ctx.getInputTokens());
+        assertEquals(34, ctx.getOutputTokens());
+    }
+
+    @Test
+    void testAnthropicMessageStartAndDelta() {
+        RequestLogContext ctx = new RequestLogContext();
+
+        UsageExtractor.extract(ctx, "{\"type\":\"message_start\",\"message\":{\"id\":\"m\",\"content\":[],\"model\":\"claude-x\",\"usage\":{\"input_tokens\":25,\"output_tokens\":1}}}");
+        UsageExtractor.extract(ctx, "{\"type\":\"content_block_delta\",\"delta\":{\"type\":\"text_delta\",\"text\":\"hi\"}}");
+        UsageExtractor.extract(ctx, "{\"type\":\"message_delta\",\"usage\":{\"output_tokens\":15}}");
+
+        assertEquals("claude-x", ctx.getActualModel());
+        assertEquals(25, ctx.getInputTokens());
+    }
+
+    @Test
+    void testGeminiResponseTree() throws Exception {
+        RequestLogContext ctx = new RequestLogContext();
+        ObjectMapper mapper = new ObjectMapper();
+
+        UsageExtractor.extract(ctx, mapper.readTree("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"hi\"}]}}],"
+                + "\"usageMetadata\":{\"promptTokenCount\":7,\"candidatesTokenCount\":3},\"modelVersion\":\"gemini-2.0\"}"));
+
+        assertEquals("gemini-2.0", ctx.getActualModel());
+        assertEquals(7, ctx.getInputTokens());
+        assertEquals(3, ctx.getOutputTokens());
+    }
+
+    @Test
+    void testGeminiStreamUsageAfterModelIsKnown() {
+        RequestLogContext ctx = new RequestLogContext();
+
+        UsageExtractor.extract(ctx, "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"hi\"}]}}],\"modelVersion\":\"gemini-2.0\"}");
+        UsageExtractor.extract(ctx, "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"!\"}]},\"finishReason\":\"STOP\"}],"
+                + "\"usageMetadata\":{\"promptTokenCount\":7,\"candidatesTokenCount\":4},\"modelVersion\":\"gemini-2.0\"}");
+
+        assertEquals("gemini-2.0", ctx.getActualModel());
+        assertEquals(7, ctx.getInputTokens());
+        assertEquals(4, ctx.getOutputTokens());
+    }
+
+    @Test
+    void testPromptCacheReadTokens() {
+        RequestLogContext openAi = new RequestLogContext();
+        UsageExtractor.extract(openAi, "{\"model\":\"gpt-4o\",\"usage\":{\"prompt_tokens\":2048,\"completion_tokens\":5,\"prompt_tokens_details\":{\"cached_tokens\":1920,\"audio_tokens\":0}}}");
+        assertEquals(2048, openAi.getInputTokens());
+        assertEquals(1920, openAi.getCacheReadTokens());
+        assertEquals(5, openAi.getOutputTokens());
+
+        RequestLogContext anthropic = new RequestLogContext();
+        UsageExtractor.extract(anthropic, "{\"type\":\"message_start\",\"message\":{\"model\":\"claude-x\",\"usage\":{\"input_tokens\":12,\"cache_read_input_tokens\":3000,\"output_tokens\":1}}}");
+        assertEquals(12, anthropic.getInputTokens());
+        assertEquals(3000, anthropic.getCacheReadTokens());
+    }
+
+    @Test
+    void testMalformedChunkIsIgnored() {
+        RequestLogContext ctx = new RequestLogContext();
+
+        UsageExtractor.extract(ctx, "{\"usage\":{\"prompt_tokens\":");
+
+        assertNull(ctx.getActualModel());
+    }
+}